@@ -20,14 +20,26 @@ package com.frostwire;
 
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 import javax.imageio.ImageIO;
 
-import org.limewire.concurrent.ThreadExecutor;
+import org.limewire.concurrent.ExecutorsHelper;
+import org.limewire.util.FileUtils;
 
 import com.frostwire.logging.Logger;
 import com.frostwire.util.HttpClient;
@@ -35,6 +47,12 @@ import com.frostwire.util.HttpClientFactory;
 import com.limegroup.gnutella.settings.SharingSettings;
 
 /**
+ * Images by URL, decoded ones in memory, the bytes as downloaded on disk.
+ * <p>
+ * The images in memory are bounded by their decoded size, the least recently used go
+ * first. Downloads run in a small pool, and requests for a URL already being downloaded
+ * wait for that download instead of starting another one.
+ * 
  * @author gubatron
  * @author aldenml
  *
@@ -43,6 +61,9 @@ public class ImageCache {
 
     private static final Logger LOG = Logger.getLogger(ImageCache.class);
 
+    private static final int MAX_FETCH_THREADS = 4;
+    private static final long MAX_MEMORY_BYTES = 16 * 1024 * 1024;
+
     private static ImageCache instance;
 
     public synchronized static ImageCache instance() {
@@ -52,10 +73,33 @@ public class ImageCache {
         return instance;
     }
 
+    private final ExecutorService fetchPool;
+
+    /**
+     * Keyed by the URL string, URL.equals would resolve the hosts. Guarded by itself,
+     * like memoryBytes.
+     */
+    private final LinkedHashMap<String, BufferedImage> memory;
+    private long memoryBytes;
+
+    /**
+     * Listeners of the downloads in progress, guarded by itself.
+     */
+    private final Map<String, List<OnLoadedListener>> inflight;
+
     private ImageCache() {
+        fetchPool = ExecutorsHelper.newFixedSizeThreadPool(MAX_FETCH_THREADS, "ImageCache");
+        memory = new LinkedHashMap<String, BufferedImage>(16, 0.75f, true);
+        inflight = new HashMap<String, List<OnLoadedListener>>();
     }
 
     public BufferedImage getImage(URL url, OnLoadedListener listener) {
+        BufferedImage image = getFromMemory(url);
+        if (image != null) {
+            notifyLoaded(listener, url, image, true, false);
+            return image;
+        }
+
         if (isCached(url)) {
             return loadFromCache(url, listener);
         } else if (!url.getProtocol().equals("http")) {
@@ -99,84 +143,198 @@ public class ImageCache {
         return file.exists();
     }
 
+    /**
+     * A cached file that can't be decoded is deleted and the image fetched again,
+     * otherwise it would fail the same way on every lookup.
+     */
     private BufferedImage loadFromCache(URL url, OnLoadedListener listener) {
+        File file = getCacheFile(url);
+        InputStream is = null;
         try {
-            File file = getCacheFile(url);
-            BufferedImage image = ImageIO.read(file);
-            listener.onLoaded(url, image, true, false);
+            is = new FileInputStream(file);
+            BufferedImage image = decode(readBytes(is));
+            putInMemory(url, image);
+            notifyLoaded(listener, url, image, true, false);
             return image;
+        } catch (IOException e) {
+            LOG.warn("Discarding unreadable cached image: " + url + " (" + e.getMessage() + ")");
         } catch (Throwable e) {
             LOG.error("Failed to load image from cache: " + url, e);
             if (e instanceof OutOfMemoryError) {
                 e.printStackTrace(); // this is a special condition
             }
-            listener.onLoaded(url, null, false, true);
+            notifyLoaded(listener, url, null, false, true);
             return null;
+        } finally {
+            FileUtils.close(is);
         }
+
+        file.delete();
+        if (!url.getProtocol().equals("http")) {
+            return loadFromResource(url, listener);
+        }
+        loadFromUrl(url, listener);
+        return null;
     }
 
     private BufferedImage loadFromResource(URL url, OnLoadedListener listener) {
+        InputStream is = null;
         try {
-            BufferedImage image = ImageIO.read(url);
-            saveToCache(url, image, 0);
+            is = url.openStream();
+            byte[] data = readBytes(is);
+            BufferedImage image = decode(data);
+            saveToCache(url, data, 0);
+            putInMemory(url, image);
             listener.onLoaded(url, image, false, false);
             return image;
         } catch (Throwable e) {
             LOG.error("Failed to load image from resource: " + url, e);
             listener.onLoaded(url, null, false, true);
             return null;
+        } finally {
+            FileUtils.close(is);
         }
     }
 
-    private void loadFromUrl(final URL url, final OnLoadedListener listener) {
-        ThreadExecutor.startThread(new Thread(new Runnable() {
+    private void loadFromUrl(final URL url, OnLoadedListener listener) {
+        final String key = url.toString();
+
+        synchronized (inflight) {
+            List<OnLoadedListener> listeners = inflight.get(key);
+            if (listeners != null) {
+                listeners.add(listener);
+                return;
+            }
+
+            listeners = new ArrayList<OnLoadedListener>(1);
+            listeners.add(listener);
+            inflight.put(key, listeners);
+        }
+
+        fetchPool.execute(new Runnable() {
             public void run() {
+                BufferedImage image = null;
                 try {
-                    BufferedImage image = null;
                     HttpClient newInstance = HttpClientFactory.newInstance();
-                    byte[] data = newInstance.getBytes(url.toString());
-                    
+                    byte[] data = newInstance.getBytes(key);
+
                     if (data == null) {
-                        throw new IOException("ImageCache.loadUrl() got nothing at " + url.toString());
+                        throw new IOException("ImageCache.loadUrl() got nothing at " + key);
                     }
 
-                    if (data != null) {
-                        image = ImageIO.read(new ByteArrayInputStream(data));
-                        saveToCache(url, image, System.currentTimeMillis());
-                    }
-                    
-                    if (listener != null && image != null) {
-                        listener.onLoaded(url, image, false, false);
-                    }
+                    image = decode(data);
+                    saveToCache(url, data, System.currentTimeMillis());
+                    putInMemory(url, image);
                 } catch (Throwable e) {
                     LOG.error("Failed to load image from: " + url, e);
-                    listener.onLoaded(url, null, false, true);
+                    image = null;
+                }
+
+                List<OnLoadedListener> listeners;
+                synchronized (inflight) {
+                    listeners = inflight.remove(key);
+                }
+
+                for (OnLoadedListener l : listeners) {
+                    notifyLoaded(l, url, image, false, image == null);
                 }
             }
-        }),"ImageCache.loadFromUrl");
+        });
     }
 
-    private void saveToCache(URL url, BufferedImage image, long date) {
+    /**
+     * The bytes as received, written to a temporary file first so a half written
+     * image is never taken for a cached one.
+     */
+    private void saveToCache(URL url, byte[] data, long date) {
+        FileOutputStream fos = null;
         try {
             File file = getCacheFile(url);
 
+            if (!file.getParentFile().exists()) {
+                file.getParentFile().mkdirs();
+            }
+
+            File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+            fos = new FileOutputStream(temp);
+            fos.write(data);
+            fos.close();
+            fos = null;
+
             if (file.exists()) {
                 file.delete();
             }
+            if (!temp.renameTo(file)) {
+                temp.delete();
+                return;
+            }
 
-            String filename = file.getName();
-            int dotIndex = filename.lastIndexOf('.');
-            String ext = filename.substring(dotIndex + 1);
+            file.setLastModified(date);
+        } catch (Throwable e) {
+            LOG.error("Failed to save image to cache: " + url, e);
+        } finally {
+            FileUtils.close(fos);
+        }
+    }
+
+    private BufferedImage getFromMemory(URL url) {
+        synchronized (memory) {
+            return memory.get(url.toString());
+        }
+    }
 
-            String formatName = ImageIO.getImageReadersBySuffix(ext).next().getFormatName();
+    private void putInMemory(URL url, BufferedImage image) {
+        long size = sizeOf(image);
+        if (size > MAX_MEMORY_BYTES / 4) {
+            // a few big images would push everything else out
+            return;
+        }
 
-            if (!file.getParentFile().exists()) {
-                file.mkdirs();
+        synchronized (memory) {
+            BufferedImage previous = memory.put(url.toString(), image);
+            if (previous != null) {
+                memoryBytes -= sizeOf(previous);
             }
-            ImageIO.write(image, formatName, file);
-            file.setLastModified(date);
+            memoryBytes += size;
+
+            Iterator<BufferedImage> it = memory.values().iterator();
+            while (memoryBytes > MAX_MEMORY_BYTES && it.hasNext()) {
+                memoryBytes -= sizeOf(it.next());
+                it.remove();
+            }
+        }
+    }
+
+    private static long sizeOf(BufferedImage image) {
+        return (long) image.getWidth() * image.getHeight() * 4;
+    }
+
+    private static BufferedImage decode(byte[] data) throws IOException {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(data));
+        if (image == null) {
+            throw new IOException("Unable to decode image");
+        }
+        return image;
+    }
+
+    private static byte[] readBytes(InputStream is) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = is.read(buffer)) != -1) {
+            baos.write(buffer, 0, n);
+        }
+        return baos.toByteArray();
+    }
+
+    private static void notifyLoaded(OnLoadedListener listener, URL url, BufferedImage image, boolean fromCache, boolean fail) {
+        if (listener == null) {
+            return;
+        }
+        try {
+            listener.onLoaded(url, image, fromCache, fail);
         } catch (Throwable e) {
-            LOG.error("Failed to save image to cache: " + url, e);
+            LOG.error("Error notifying image loaded: " + url, e);
         }
     }
 
@@ -10,9 +10,15 @@ import com.frostwire.alexandria.db.LibraryDB;
 import com.frostwire.alexandria.db.LibraryDatabase;
 import com.frostwire.alexandria.db.LibraryDatabaseEntity;
 import com.frostwire.alexandria.db.PlaylistDB;
+import com.frostwire.alexandria.db.PlaylistItemDB;
 
 public class Library extends LibraryDatabaseEntity {
 
+    /**
+     * Search totals are counted up to this.
+     */
+    public static final int MAX_SEARCH_COUNT = 10000;
+
     private int _id;
     private String _name;
     private int _version;
@@ -107,4 +113,39 @@ public class Library extends LibraryDatabaseEntity {
     public void restoreDefaultRadioStations() {
         InternetRadioStationDB.restoreDefaultRadioStations(db);
     }
+
+    /**
+     * Full text search of the items of the playlist, or of all the starred items for the
+     * starred playlist, best matches first. Only the hits up to the end of the page are
+     * ranked, so the first pages are fast however many items match.
+     * 
+     * @param playlist
+     * @param query the text typed by the user
+     * @param offset 0, or the next offset of the previous page
+     * @param limit the number of results wanted
+     * @return
+     */
+    public SearchPage<PlaylistItem> searchPlaylistItems(Playlist playlist, String query, int offset, int limit) {
+        return PlaylistItemDB.search(db, playlist, LibraryUtils.wildcardLuceneQuery(query), offset, limit);
+    }
+
+    /**
+     * The total number of results of {@link #searchPlaylistItems(Playlist, String, int, int)},
+     * counted up to a few thousands.
+     */
+    public int countPlaylistItems(Playlist playlist, String query) {
+        return PlaylistItemDB.count(db, playlist, LibraryUtils.wildcardLuceneQuery(query));
+    }
+
+    /**
+     * Full text search of the radio stations, best matches first, like
+     * {@link #searchPlaylistItems(Playlist, String, int, int)}.
+     */
+    public SearchPage<InternetRadioStation> searchInternetRadioStations(String query, int offset, int limit) {
+        return InternetRadioStationDB.search(db, LibraryUtils.wildcardLuceneQuery(query), offset, limit);
+    }
+
+    public int countInternetRadioStations(String query) {
+        return InternetRadioStationDB.count(db, LibraryUtils.wildcardLuceneQuery(query));
+    }
 }
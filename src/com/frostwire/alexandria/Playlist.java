@@ -17,9 +17,16 @@
 
 package com.frostwire.alexandria;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.frostwire.alexandria.db.LibraryDatabase;
 import com.frostwire.alexandria.db.LibraryDatabaseEntity;
@@ -34,19 +41,40 @@ import com.frostwire.alexandria.db.PlaylistItemDB;
  */
 public class Playlist extends LibraryDatabaseEntity {
 
+    /**
+     * Distance between the sort indexes of consecutive items when they are numbered,
+     * leaving room to move or insert items by touching only their own rows.
+     */
+    public static final int SORT_INDEX_GAP = 1024;
+
+    /**
+     * Number of items read from the database at a time.
+     */
+    public static final int PAGE_SIZE = 500;
+
     private int _id;
     private String _name;
     private String _description;
 
     private boolean deleted;
+    private boolean dirty;
 
     private List<PlaylistItem> _items;
 
+    // playlists read from the database start as headers, with only the number of items
+    private volatile boolean loaded;
+    private int itemCount;
+
+    // item id to 1-based position in the list, as of the last refresh or sort index update
+    private volatile Map<Integer, Integer> positions;
+
     public Playlist(LibraryDatabase libraryDB) {
         super(libraryDB);
         _id = LibraryDatabase.OBJECT_INVALID_ID;
         _items = Collections.synchronizedList(new LinkedList<PlaylistItem>());
         this.deleted = false;
+        this.positions = Collections.emptyMap();
+        this.loaded = false;
     }
 
     public Playlist(LibraryDatabase libraryDB, int id, String name, String description) {
@@ -56,6 +84,8 @@ public class Playlist extends LibraryDatabaseEntity {
         _description = description;
         _items = new LinkedList<PlaylistItem>();
         this.deleted = false;
+        this.positions = Collections.emptyMap();
+        this.loaded = true;
     }
 
     public boolean isStarred() {
@@ -76,6 +106,7 @@ public class Playlist extends LibraryDatabaseEntity {
 
     public void setName(String name) {
         _name = name;
+        dirty = true;
     }
 
     public String getDescription() {
@@ -84,33 +115,224 @@ public class Playlist extends LibraryDatabaseEntity {
 
     public void setDescription(String description) {
         _description = description;
+        dirty = true;
     }
 
+    /**
+     * The items are read from the database the first time they are needed.
+     * 
+     * @return
+     */
     public List<PlaylistItem> getItems() {
+        if (!loaded) {
+            load();
+        }
         return _items;
     }
 
+    /**
+     * The number of items, without loading them.
+     * 
+     * @return
+     */
+    public int getItemCount() {
+        return loaded ? _items.size() : itemCount;
+    }
+
+    public void setItemCount(int itemCount) {
+        this.itemCount = itemCount;
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
     public boolean isDeleted() {
         return deleted;
     }
 
+    /**
+     * @return true if the name or the description changed since it was loaded or saved
+     */
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    public void clearDirty() {
+        dirty = false;
+    }
+
+    /**
+     * The 1-based position of the item in this playlist, 0 if unknown.
+     * 
+     * @param item
+     * @return
+     */
+    public int getPosition(PlaylistItem item) {
+        Integer position = positions.get(item.getId());
+        return position != null ? position : 0;
+    }
+
+    /**
+     * Writes the playlist and the differences between its items and their rows: new
+     * items are inserted, changed items updated and rows no longer in the list deleted,
+     * all in one transaction.
+     */
     public synchronized void save() {
         if (db != null) {
             PlaylistDB.save(db, this);
+            updatePositions(_items);
         }
     }
 
-    public synchronized void delete() {
+    /**
+     * Like {@link #save()}, but only inserts new items and updates changed ones, without
+     * looking for removed rows. For adding or moving a few items in a big playlist.
+     */
+    public synchronized void saveItems() {
         if (db != null) {
-            PlaylistDB.delete(db, this);
-            deleted = true;
+            PlaylistDB.saveItems(db, this);
+            updatePositions(_items);
+        }
+    }
+
+    /**
+     * Makes the sort indexes follow the order of the list, changing as few items as
+     * possible. The longest run of saved items already in order keeps its indexes, the
+     * items in between get indexes spread evenly in the gaps, and only if some gap
+     * is too small everything is numbered again, {@link #SORT_INDEX_GAP} apart.
+     * <p>
+     * Items whose index changed are marked, so only their rows are written.
+     */
+    public synchronized void updateSortIndexes() {
+        List<PlaylistItem> items = getItems();
+        synchronized (items) {
+            items = new ArrayList<PlaylistItem>(items);
+        }
+
+        int n = items.size();
+        boolean[] keep = longestOrderedRun(items);
+
+        long lower = 0;
+        int i = 0;
+        while (i < n) {
+            if (keep[i]) {
+                lower = items.get(i).getSortIndex();
+                i++;
+                continue;
+            }
+
+            int j = i;
+            while (j < n && !keep[j]) {
+                j++;
+            }
+
+            int count = j - i;
+            long upper = j < n ? items.get(j).getSortIndex() : lower + (long) (count + 1) * SORT_INDEX_GAP;
+            long step = (upper - lower) / (count + 1);
+
+            if (step < 1 || upper > Integer.MAX_VALUE) {
+                renumber(items);
+                return;
+            }
+
+            for (int k = i; k < j; k++) {
+                lower += step;
+                items.get(k).setSortIndex((int) lower);
+            }
+
+            i = j;
+        }
+
+        updatePositions(items);
+    }
+
+    /**
+     * For the starred playlist, whose items keep the indexes of their own playlists: the
+     * items not saved yet get indexes after all the others, in list order.
+     */
+    public synchronized void appendSortIndexes() {
+        List<PlaylistItem> items = getItems();
+        synchronized (items) {
+            items = new ArrayList<PlaylistItem>(items);
+        }
+
+        long last = 0;
+        for (PlaylistItem item : items) {
+            if (item.getId() != LibraryDatabase.OBJECT_NOT_SAVED_ID) {
+                last = Math.max(last, item.getSortIndex());
+            }
+        }
+
+        for (PlaylistItem item : items) {
+            if (item.getId() == LibraryDatabase.OBJECT_NOT_SAVED_ID) {
+                last = Math.min(last + SORT_INDEX_GAP, Integer.MAX_VALUE);
+                item.setSortIndex((int) last);
+            }
         }
     }
 
-    public synchronized void refresh() {
+    public void refresh() {
+        refresh(null);
+    }
+
+    /**
+     * Reads the items again, {@link #PAGE_SIZE} at a time, handing every page to
+     * <code>listener</code> as soon as it's read. The pages are read without holding the
+     * playlist, and the items of the playlist are replaced once all of them are read,
+     * keeping the items added or removed in the meantime.
+     * 
+     * @param listener can be null
+     */
+    public void refresh(PageListener listener) {
+        if (db == null) {
+            return;
+        }
+
+        Map<Integer, Integer> loadingPositions = new ConcurrentHashMap<Integer, Integer>();
+        List<PlaylistItem> before;
+
+        synchronized (this) {
+            positions = loadingPositions;
+            synchronized (_items) {
+                before = new ArrayList<PlaylistItem>(_items);
+            }
+        }
+
+        List<PlaylistItem> items = new ArrayList<PlaylistItem>(Math.max(itemCount, 16));
+        List<PlaylistItem> page;
+        int afterSortIndex = Integer.MIN_VALUE;
+        int afterId = Integer.MIN_VALUE;
+        do {
+            page = PlaylistItemDB.getPlaylistItems(db, this, afterSortIndex, afterId, PAGE_SIZE);
+            for (PlaylistItem item : page) {
+                items.add(item);
+                loadingPositions.put(item.getId(), items.size());
+            }
+            if (!page.isEmpty()) {
+                PlaylistItem last = page.get(page.size() - 1);
+                afterSortIndex = last.getSortIndex();
+                afterId = last.getId();
+
+                if (listener != null) {
+                    listener.onPage(page);
+                }
+            }
+        } while (page.size() == PAGE_SIZE);
+
+        synchronized (this) {
+            if (merge(before, items)) {
+                updatePositions(_items);
+            }
+            itemCount = _items.size();
+            loaded = true;
+        }
+    }
+
+    public synchronized void delete() {
         if (db != null) {
-            _items.clear();
-            _items.addAll(PlaylistItemDB.getPlaylistItems(db, this));
+            PlaylistDB.delete(db, this);
+            deleted = true;
         }
     }
 
@@ -119,6 +341,130 @@ public class Playlist extends LibraryDatabaseEntity {
         return new PlaylistItem(this, LibraryDatabase.OBJECT_NOT_SAVED_ID, filePath, fileName, fileSize, fileExtension, trackTitle, trackDurationInSecs, trackArtist, trackAlbum, coverArtPath, trackBitrate, trackComment, trackGenre, trackNumber, trackYear, starred);
     }
 
+    private void load() {
+        if (!loaded) {
+            refresh();
+        }
+    }
+
+    /**
+     * Replaces the items with the ones read, keeping the changes made to the list while
+     * they were read: the items added stay, after the others, and the items removed
+     * stay out. Called holding the lock.
+     * 
+     * @return true if the list differs from the items read
+     */
+    private boolean merge(List<PlaylistItem> before, List<PlaylistItem> read) {
+        synchronized (_items) {
+            Set<PlaylistItem> previous = Collections.newSetFromMap(new IdentityHashMap<PlaylistItem, Boolean>());
+            previous.addAll(before);
+            Set<PlaylistItem> current = Collections.newSetFromMap(new IdentityHashMap<PlaylistItem, Boolean>());
+            current.addAll(_items);
+
+            Set<Integer> removedIds = new HashSet<Integer>();
+            for (PlaylistItem item : before) {
+                if (!current.contains(item)) {
+                    removedIds.add(item.getId());
+                }
+            }
+
+            Set<Integer> readIds = new HashSet<Integer>();
+            List<PlaylistItem> items = new ArrayList<PlaylistItem>(read.size());
+            for (PlaylistItem item : read) {
+                readIds.add(item.getId());
+                if (!removedIds.contains(item.getId())) {
+                    items.add(item);
+                }
+            }
+
+            boolean changed = items.size() != read.size();
+            for (PlaylistItem item : _items) {
+                // saved while reading, the row may have been read already
+                if (!previous.contains(item) && (item.getId() == LibraryDatabase.OBJECT_NOT_SAVED_ID || !readIds.contains(item.getId()))) {
+                    items.add(item);
+                    changed = true;
+                }
+            }
+
+            _items.clear();
+            _items.addAll(items);
+
+            return changed;
+        }
+    }
+
+    private void renumber(List<PlaylistItem> items) {
+        int gap = (int) Math.min(SORT_INDEX_GAP, Integer.MAX_VALUE / (items.size() + 1L));
+        for (int i = 0; i < items.size(); i++) {
+            items.get(i).setSortIndex((i + 1) * gap);
+        }
+
+        updatePositions(items);
+    }
+
+    private void updatePositions(List<PlaylistItem> items) {
+        Map<Integer, Integer> map = new HashMap<Integer, Integer>();
+        synchronized (items) {
+            int position = 1;
+            for (PlaylistItem item : items) {
+                map.put(item.getId(), position++);
+            }
+        }
+        positions = map;
+    }
+
+    /**
+     * Marks the longest strictly increasing subsequence of sort indexes among the saved
+     * items, O(n log n).
+     */
+    private static boolean[] longestOrderedRun(List<PlaylistItem> items) {
+        int n = items.size();
+
+        int[] tails = new int[n]; // index of the last item of the best run of each length
+        int[] previous = new int[n];
+        int length = 0;
+
+        for (int i = 0; i < n; i++) {
+            PlaylistItem item = items.get(i);
+            if (item.getId() == LibraryDatabase.OBJECT_NOT_SAVED_ID || item.getSortIndex() <= 0) {
+                continue;
+            }
+
+            int s = item.getSortIndex();
+            int lo = 0;
+            int hi = length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (items.get(tails[mid]).getSortIndex() < s) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+
+            previous[i] = lo > 0 ? tails[lo - 1] : -1;
+            tails[lo] = i;
+            if (lo == length) {
+                length++;
+            }
+        }
+
+        boolean[] keep = new boolean[n];
+        for (int i = length > 0 ? tails[length - 1] : -1; i != -1; i = previous[i]) {
+            keep[i] = true;
+        }
+
+        return keep;
+    }
+
+    public interface PageListener {
+
+        /**
+         * Called from the thread refreshing the playlist, for each page read.
+         */
+        void onPage(List<PlaylistItem> page);
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (obj == null || !(obj instanceof Playlist)) {
@@ -0,0 +1,34 @@
+package com.frostwire.alexandria;
+
+import java.util.List;
+
+/**
+ * A page of full text search results, in score order.
+ * <p>
+ * Offsets count full text hits, not results, since hits of other tables or playlists
+ * are skipped. The next page starts at {@link #getNextOffset()}.
+ */
+public class SearchPage<T> {
+
+    private final List<T> items;
+    private final int nextOffset;
+    private final boolean more;
+
+    public SearchPage(List<T> items, int nextOffset, boolean more) {
+        this.items = items;
+        this.nextOffset = nextOffset;
+        this.more = more;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    public int getNextOffset() {
+        return nextOffset;
+    }
+
+    public boolean hasMore() {
+        return more;
+    }
+}
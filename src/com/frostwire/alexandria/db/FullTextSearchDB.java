@@ -0,0 +1,141 @@
+package com.frostwire.alexandria.db;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.frostwire.alexandria.Library;
+import com.frostwire.alexandria.SearchPage;
+import com.frostwire.database.Cursor;
+import com.frostwire.database.RowMapper;
+
+/**
+ * Pages over the full text index in score order.
+ * <p>
+ * The select statements left join the hits to their table, filtered, so every hit
+ * is a row and the ones of other tables or rows come with a null first column.
+ * Their first three parameters are the query, the limit and the offset, in hits.
+ * <p>
+ * The filters are columns the index doesn't have, and the index works out all the hits
+ * before the offset again on every call, so the hits are read in windows that double
+ * while too few of them match, continuing from the last one read, never from the start.
+ */
+final class FullTextSearchDB {
+
+    /**
+     * The largest window of hits asked for at once.
+     */
+    private static final int MAX_WINDOW = Library.MAX_SEARCH_COUNT;
+
+    /**
+     * Counting reads no rows, only the index keeps the window in memory.
+     */
+    private static final int MAX_COUNT_WINDOW = 10 * Library.MAX_SEARCH_COUNT;
+
+    private FullTextSearchDB() {
+    }
+
+    /**
+     * Reads windows of hits from <code>offset</code> until there are <code>limit</code>
+     * results or no more hits. The next offset is the hit after the last result.
+     */
+    public static <T> SearchPage<T> search(LibraryDatabase db, RowMapper<T> mapper, String sql, String luceneQuery, int offset, int limit, Object... filterArgs) {
+        List<T> items = new ArrayList<T>();
+
+        int hitOffset = offset;
+        int window = Math.max(limit, 1);
+        boolean more = true;
+
+        while (more && items.size() < limit) {
+            HitMapper<T> hitMapper = new HitMapper<T>(mapper, limit - items.size());
+
+            items.addAll(db.query(hitMapper, sql, arguments(luceneQuery, window, hitOffset, filterArgs)));
+
+            hitOffset += hitMapper.consumed;
+            more = hitMapper.consumed < hitMapper.hits || hitMapper.hits == window;
+            window = Math.min(window * 2, MAX_WINDOW);
+        }
+
+        return new SearchPage<T>(items, hitOffset, more);
+    }
+
+    /**
+     * @param sql the number of hits and of the ones that joined, over the hits left joined
+     * to their table, with the same parameters as the select
+     * @return the number of results, up to {@link Library#MAX_SEARCH_COUNT}
+     */
+    public static int count(LibraryDatabase db, String sql, String luceneQuery, Object... filterArgs) {
+        int count = 0;
+
+        int hitOffset = 0;
+        int window = Library.MAX_SEARCH_COUNT;
+
+        while (count < Library.MAX_SEARCH_COUNT) {
+            List<List<Object>> result = db.query(sql, arguments(luceneQuery, window, hitOffset, filterArgs));
+            if (result.isEmpty()) {
+                break;
+            }
+
+            int hits = ((Number) result.get(0).get(0)).intValue();
+            count += ((Number) result.get(0).get(1)).intValue();
+
+            if (hits < window) {
+                break;
+            }
+
+            hitOffset += hits;
+            window = Math.min(window * 2, MAX_COUNT_WINDOW);
+        }
+
+        return Math.min(count, Library.MAX_SEARCH_COUNT);
+    }
+
+    private static Object[] arguments(String luceneQuery, int limit, int offset, Object... filterArgs) {
+        Object[] arguments = new Object[filterArgs.length + 3];
+        arguments[0] = luceneQuery;
+        arguments[1] = limit;
+        arguments[2] = offset;
+        System.arraycopy(filterArgs, 0, arguments, 3, filterArgs.length);
+        return arguments;
+    }
+
+    /**
+     * Counts every hit, maps only the ones that joined, up to <code>wanted</code>.
+     */
+    private static final class HitMapper<T> implements RowMapper<T> {
+
+        private final RowMapper<T> mapper;
+        private int wanted;
+
+        int hits;
+
+        /**
+         * The hits up to the last one mapped, or all of them if fewer were wanted.
+         */
+        int consumed;
+
+        public HitMapper(RowMapper<T> mapper, int wanted) {
+            this.mapper = mapper;
+            this.wanted = wanted;
+        }
+
+        @Override
+        public T map(Cursor c) {
+            hits++;
+
+            if (wanted == 0) {
+                return null;
+            }
+
+            if (c.isNull(1)) {
+                consumed = hits;
+                return null;
+            }
+
+            T obj = mapper.map(c);
+
+            wanted--;
+            consumed = hits;
+            return obj;
+        }
+    }
+}
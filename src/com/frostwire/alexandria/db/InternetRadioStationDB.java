@@ -4,9 +4,16 @@ import java.util.ArrayList;
 import java.util.List;
 
 import com.frostwire.alexandria.InternetRadioStation;
+import com.frostwire.alexandria.SearchPage;
+import com.frostwire.database.Cursor;
+import com.frostwire.database.RowMapper;
 
 public class InternetRadioStationDB {
 
+    private static final String SEARCH_SELECT = "SELECT T.internetRadioStationId, T.name, T.description, T.url, T.bitrate, T.type, T.website, T.genre, T.pls, T.bookmarked "
+            + "FROM FTL_SEARCH_DATA(?, ?, ?) FT LEFT JOIN InternetRadioStations T ON FT.TABLE = 'INTERNETRADIOSTATIONS' AND T.internetRadioStationId = FT.KEYS[0] ORDER BY FT.SCORE DESC";
+    private static final String SEARCH_COUNT = "SELECT COUNT(*), COUNT(T.internetRadioStationId) FROM FTL_SEARCH_DATA(?, ?, ?) FT LEFT JOIN InternetRadioStations T ON FT.TABLE = 'INTERNETRADIOSTATIONS' AND T.internetRadioStationId = FT.KEYS[0]";
+
     private InternetRadioStationDB() {} // don't allow instantiation of this class
 
     public static void fill(LibraryDatabase db, InternetRadioStation obj) {
@@ -97,6 +104,22 @@ public class InternetRadioStationDB {
         }
     }
 
+    /**
+     * A page of the stations matching the full text query.
+     * @param db
+     * @param luceneQuery
+     * @param offset the offset in hits, from the previous page
+     * @param limit
+     * @return
+     */
+    public static SearchPage<InternetRadioStation> search(LibraryDatabase db, String luceneQuery, int offset, int limit) {
+        return FullTextSearchDB.search(db, new InternetRadioStationMapper(db), SEARCH_SELECT, luceneQuery, offset, limit);
+    }
+
+    public static int count(LibraryDatabase db, String luceneQuery) {
+        return FullTextSearchDB.count(db, SEARCH_COUNT, luceneQuery);
+    }
+
     private static Object[] createInternetRadioStationInsertStatement(InternetRadioStation obj) {
         String sql = "INSERT INTO InternetRadioStations (name, description, url, bitrate, type, website, genre, pls, bookmarked) VALUES (LEFT(?, 10000), LEFT(?, 10000), LEFT(?, 10000), LEFT(?, 100), LEFT(?, 100), LEFT(?, 10000), LEFT(?, 10000), LEFT(?, 100000), ?)";
         Object[] values = new Object[] { obj.getName(), obj.getDescription(), obj.getUrl(), obj.getBitrate(), obj.getType(), obj.getWebsite(), obj.getGenre(), obj.getPls(), obj.isBookmarked() };
@@ -108,4 +131,31 @@ public class InternetRadioStationDB {
         Object[] values = new Object[] { obj.getName(), obj.getDescription(), obj.getUrl(), obj.getBitrate(), obj.getType(), obj.getWebsite(), obj.getGenre(), obj.getPls(), obj.isBookmarked(), obj.getId() };
         return new Object[] { sql, values };
     }
+
+    private static final class InternetRadioStationMapper implements RowMapper<InternetRadioStation> {
+
+        private final LibraryDatabase db;
+
+        public InternetRadioStationMapper(LibraryDatabase db) {
+            this.db = db;
+        }
+
+        @Override
+        public InternetRadioStation map(Cursor c) {
+            InternetRadioStation obj = new InternetRadioStation(db);
+
+            obj.setId(c.getInt(1));
+            obj.setName(c.getString(2));
+            obj.setDescription(c.getString(3));
+            obj.setUrl(c.getString(4));
+            obj.setBitrate(c.getString(5));
+            obj.setType(c.getString(6));
+            obj.setWebsite(c.getString(7));
+            obj.setGenre(c.getString(8));
+            obj.setPls(c.getString(9));
+            obj.setBookmarked(c.getBoolean(10));
+
+            return obj;
+        }
+    }
 }
@@ -9,11 +9,15 @@ import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
 
 import com.frostwire.alexandria.Playlist;
 import com.frostwire.alexandria.PlaylistItem;
+import com.frostwire.database.ConnectionPool;
+import com.frostwire.database.ConnectionPool.PooledConnection;
+import com.frostwire.database.Cursor;
+import com.frostwire.database.RowMapper;
+import com.frostwire.database.StatementCache;
 
 public class LibraryDatabase {
 
@@ -22,14 +26,17 @@ public class LibraryDatabase {
     public static final int STARRED_PLAYLIST_ID = -3;
 
     public static final int LIBRARY_VERSION_PLAYLIST_SORT_INDEXES = 4; // indicates db version when playlist sort indexes were added
-    public static final int LIBRARY_DATABASE_VERSION = 4;
+    public static final int LIBRARY_VERSION_PLAYLIST_ID_INDEX = 5; // indicates db version when the index of items by playlist was added
+    public static final int LIBRARY_DATABASE_VERSION = 5;
+
+    private static final int MAX_READ_CONNECTIONS = 4;
     
     private final File _databaseFile;
     private final String _name;
     
-    private Connection _connection;
+    private ConnectionPool _pool;
 
-    private boolean _closed;
+    private volatile boolean _closed;
 
     static {
         try {
@@ -45,7 +52,8 @@ public class LibraryDatabase {
         File path = databaseFile;
         _name = databaseFile.getName();
 
-        _connection = openOrCreateDatabase(path, _name);
+        Connection connection = openOrCreateDatabase(path, _name);
+        _pool = connection != null ? new ConnectionPool(getUrl(path, _name, false), "SA", "", connection, MAX_READ_CONNECTIONS) : null;
     }
 
     public File getDatabaseFile() {
@@ -57,38 +65,104 @@ public class LibraryDatabase {
     }
 
     public boolean isClosed() {
-        return _closed;
+        return _closed || _pool == null;
     }
 
-    public synchronized List<List<Object>> query(String statementSql, Object... arguments) {
+    /**
+     * Runs in one of the read connections, concurrently with other reads and the writes.
+     * @param statementSql
+     * @param arguments
+     * @return
+     */
+    public List<List<Object>> query(String statementSql, Object... arguments) {
         if (isClosed()) {
             return new ArrayList<List<Object>>();
         }
 
-        return query(_connection, statementSql, arguments);
+        PooledConnection c = null;
+
+        try {
+            c = _pool.acquireRead();
+            return query(c.getConnection(), c.getStatements(), statementSql, arguments);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        } finally {
+            _pool.release(c);
+        }
+
+        return new ArrayList<List<Object>>();
+    }
+
+    /**
+     * Maps the rows as they are read, rows mapped to null are left out.
+     * Runs in one of the read connections, like {@link #query(String, Object...)}.
+     * @param mapper
+     * @param statementSql
+     * @param arguments
+     * @return
+     */
+    public <T> List<T> query(RowMapper<T> mapper, String statementSql, Object... arguments) {
+        List<T> result = new ArrayList<T>();
+
+        if (isClosed()) {
+            return result;
+        }
+
+        PooledConnection c = null;
+        ResultSet resultSet = null;
+
+        try {
+            c = _pool.acquireRead();
+
+            PreparedStatement statement = c.getStatements().prepare(statementSql);
+            bind(statement, arguments);
+
+            resultSet = statement.executeQuery();
+
+            Cursor cursor = new Cursor(statement, resultSet);
+            while (resultSet.next()) {
+                T obj = mapper.map(cursor);
+                if (obj != null) {
+                    result.add(obj);
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            close(resultSet);
+            _pool.release(c);
+        }
+
+        return result;
     }
 
     /**
-     * This method is synchronized due to possible concurrent issues, specially
-     * during recently generated id retrieval.
-     * @param expression
+     * Runs in the write connection, after the writes queued before it.
+     * @param statementSql
+     * @param arguments
      * @return
      */
-    public synchronized int update(String statementSql, Object... arguments) {
+    public int update(String statementSql, Object... arguments) {
         if (isClosed()) {
             return -1;
         }
 
-        return update(_connection, statementSql, arguments);
+        PooledConnection c = _pool.acquireWrite();
+        try {
+            return update(c.getConnection(), c.getStatements(), statementSql, arguments);
+        } finally {
+            _pool.release(c);
+        }
     }
 
     /**
-     * This method is synchronized due to possible concurrent issues, specially
-     * during recently generated id retrieval.
-     * @param expression
+     * The insert and the retrieval of the generated id run together in the write
+     * connection, without other writes in between.
+     * @param statementSql
+     * @param arguments
      * @return
      */
-    public synchronized int insert(String statementSql, Object... arguments) {
+    public int insert(String statementSql, Object... arguments) {
         if (isClosed()) {
             return OBJECT_INVALID_ID;
         }
@@ -97,30 +171,129 @@ public class LibraryDatabase {
             return OBJECT_INVALID_ID;
         }
 
-        if (update(statementSql, arguments) != -1) {
-            return getIdentity();
+        PooledConnection c = _pool.acquireWrite();
+        try {
+            if (update(c.getConnection(), c.getStatements(), statementSql, arguments) != -1) {
+                return getIdentity(c);
+            }
+        } finally {
+            _pool.release(c);
         }
 
         return OBJECT_INVALID_ID;
     }
 
-    public synchronized void close() {
+    /**
+     * Runs the same statement once per arguments array, as a single JDBC batch.
+     * @param statementSql
+     * @param argumentsList
+     * @return false if the batch failed
+     */
+    public boolean updateBatch(String statementSql, List<Object[]> argumentsList) {
+        if (isClosed()) {
+            return false;
+        }
+
+        if (argumentsList.isEmpty()) {
+            return true;
+        }
+
+        PooledConnection c = _pool.acquireWrite();
+
+        try {
+            PreparedStatement statement = c.getStatements().prepare(statementSql);
+
+            for (Object[] arguments : argumentsList) {
+                bind(statement, arguments);
+                statement.addBatch();
+            }
+
+            statement.executeBatch();
+
+            return true;
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            _pool.release(c);
+        }
+
+        return false;
+    }
+
+    /**
+     * Starts a transaction in the write connection, to be ended with {@link #endTransaction(boolean)}
+     * in a finally block. The calling thread keeps the write connection for the whole transaction,
+     * so writes of other threads wait, and its own queries run in it and see the changes so far.
+     */
+    public void beginTransaction() {
+        // even if closed, so it always pairs with endTransaction
+        if (_pool == null) {
+            return;
+        }
+
+        PooledConnection c = _pool.acquireWrite();
+
+        try {
+            c.getConnection().setAutoCommit(false);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Commits or rolls back the transaction started with {@link #beginTransaction()}.
+     * @param successful
+     */
+    public void endTransaction(boolean successful) {
+        if (_pool == null) {
+            return;
+        }
+
+        PooledConnection c = _pool.acquireWrite();
+
+        try {
+            if (successful) {
+                c.getConnection().commit();
+            } else {
+                c.getConnection().rollback();
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        } finally {
+            try {
+                c.getConnection().setAutoCommit(true);
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            // the one acquired here and the one from beginTransaction
+            _pool.release(c);
+            _pool.release(c);
+        }
+    }
+
+    public void close() {
         if (isClosed()) {
             return;
         }
 
         _closed = true;
 
+        _pool.close();
+
+        PooledConnection c = _pool.acquireWrite();
+
         try {
-            Statement statement = _connection.createStatement();
+            Statement statement = c.getConnection().createStatement();
             statement.execute("SHUTDOWN");
-            _connection.close();
+            c.getConnection().close();
         } catch (Exception e) {
             e.printStackTrace();
+        } finally {
+            _pool.release(c);
         }
     }
 
-    public synchronized void dump() {
+    public void dump() {
         if (isClosed()) {
             return;
         }
@@ -139,27 +312,38 @@ public class LibraryDatabase {
             setupLuceneIndex(connection);
         }
 
-        if (oldVersion == 2 && newVersion == 3) {
+        if (oldVersion == 2 && newVersion >= 3) {
             setupLuceneIndex(connection);
         }
         
-        if (newVersion == 4) {
+        if (oldVersion < LIBRARY_VERSION_PLAYLIST_SORT_INDEXES && newVersion >= LIBRARY_VERSION_PLAYLIST_SORT_INDEXES) {
             setupPlaylistIndexes(connection);
         }
 
+        if (oldVersion < LIBRARY_VERSION_PLAYLIST_ID_INDEX && newVersion >= LIBRARY_VERSION_PLAYLIST_ID_INDEX) {
+            setupPlaylistIdIndex(connection);
+        }
+
         update(connection, "UPDATE Library SET version = ?", LIBRARY_DATABASE_VERSION);
     }
 
+    /**
+     * All the connections use MVCC, so reads don't wait for the locks of the writes.
+     */
+    private String getUrl(File path, String name, boolean createIfNotExists) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("jdbc:h2:");
+        sb.append(new File(path, name).getAbsolutePath());
+
+        if (!createIfNotExists) {
+            sb.append(";ifexists=true");
+        }
+        return ConnectionPool.mvccUrl(sb.toString());
+    }
+
     private Connection openConnection(File path, String name, boolean createIfNotExists) {
         try {
-            StringBuilder sb = new StringBuilder();
-            sb.append("jdbc:h2:");
-            sb.append(new File(path, name).getAbsolutePath());
-
-            if (!createIfNotExists) {
-                sb.append(";ifexists=true");
-            }
-            return DriverManager.getConnection(sb.toString(), "SA", "");
+            return DriverManager.getConnection(getUrl(path, name, createIfNotExists), "SA", "");
         } catch (Exception e) {
             return null;
         }
@@ -182,6 +366,7 @@ public class LibraryDatabase {
                 "CREATE TABLE PlaylistItems (playlistItemId INTEGER IDENTITY, filePath VARCHAR(10000), fileName VARCHAR(500), fileSize BIGINT, fileExtension VARCHAR(10), trackTitle VARCHAR(500), trackDurationInSecs REAL, trackArtist VARCHAR(500), trackAlbum VARCHAR(500), coverArtPath VARCHAR(10000), trackBitrate VARCHAR(10), trackComment VARCHAR(500), trackGenre VARCHAR(20), trackNumber VARCHAR(6), trackYear VARCHAR(6), playlistId INTEGER, starred BOOLEAN, sortIndex INTEGER)");
         update(connection, "CREATE INDEX idx_PlaylistItems_filePath ON PlaylistItems (filePath)");
         update(connection, "CREATE INDEX idx_PlaylistItems_starred ON PlaylistItems (starred)");
+        setupPlaylistIdIndex(connection);
 
         setupInternetRadioStationsTable(connection);
 
@@ -212,7 +397,7 @@ public class LibraryDatabase {
         int numColums = meta.getColumnCount();
         int i;
 
-        List<List<Object>> result = new LinkedList<List<Object>>();
+        List<List<Object>> result = new ArrayList<List<Object>>();
 
         while (resultSet.next()) {
             List<Object> row = new ArrayList<Object>(numColums);
@@ -224,17 +409,11 @@ public class LibraryDatabase {
         return result;
     }
 
-    private int getIdentity() {
-        if (isClosed()) {
-            return OBJECT_INVALID_ID;
-        }
-
-        Statement statement = null;
+    private int getIdentity(PooledConnection c) {
         ResultSet resultSet = null;
 
         try {
-            statement = _connection.createStatement();
-            resultSet = statement.executeQuery("CALL IDENTITY()");
+            resultSet = c.getStatements().prepare("CALL IDENTITY()").executeQuery();
 
             resultSet.next();
 
@@ -242,29 +421,27 @@ public class LibraryDatabase {
         } catch (Exception e) {
             e.printStackTrace();
         } finally {
-            if (statement != null) {
-                try {
-                    statement.close();
-                } catch (SQLException e) {
-                }
-            }
+            close(resultSet);
         }
 
         return OBJECT_INVALID_ID;
     }
 
     private List<List<Object>> query(Connection connection, String statementSql, Object... arguments) {
+        return query(connection, null, statementSql, arguments);
+    }
+
+    /**
+     * @param statements the statements of the connection, null to prepare and close
+     * the statement here, like while creating or upgrading the database
+     */
+    private List<List<Object>> query(Connection connection, StatementCache statements, String statementSql, Object... arguments) {
         PreparedStatement statement = null;
         ResultSet resultSet = null;
 
         try {
-            statement = connection.prepareStatement(statementSql);
-
-            if (arguments != null) {
-                for (int i = 0; i < arguments.length; i++) {
-                    statement.setObject(i + 1, arguments[i]);
-                }
-            }
+            statement = prepare(connection, statements, statementSql);
+            bind(statement, arguments);
 
             resultSet = statement.executeQuery();
 
@@ -272,45 +449,65 @@ public class LibraryDatabase {
         } catch (Exception e) {
             e.printStackTrace();
         } finally {
-            if (statement != null) {
-                try {
-                    statement.close();
-                } catch (SQLException e) {
-                }
-            }
+            close(resultSet);
+            release(statements, statement);
         }
 
         return new ArrayList<List<Object>>();
     }
 
     private int update(Connection connection, String statementSql, Object... arguments) {
+        return update(connection, null, statementSql, arguments);
+    }
+
+    private int update(Connection connection, StatementCache statements, String statementSql, Object... arguments) {
 
         PreparedStatement statement = null;
 
         try {
-            statement = connection.prepareStatement(statementSql);
-
-            if (arguments != null) {
-                for (int i = 0; i < arguments.length; i++) {
-                    statement.setObject(i + 1, arguments[i]);
-                }
-            }
+            statement = prepare(connection, statements, statementSql);
+            bind(statement, arguments);
 
             return statement.executeUpdate();
         } catch (Exception e) {
             e.printStackTrace();
         } finally {
-            if (statement != null) {
-                try {
-                    statement.close();
-                } catch (SQLException e) {
-                }
-            }
+            release(statements, statement);
         }
 
         return -1;
     }
 
+    private static PreparedStatement prepare(Connection connection, StatementCache statements, String statementSql) throws SQLException {
+        return statements != null ? statements.prepare(statementSql) : connection.prepareStatement(statementSql);
+    }
+
+    private static void release(StatementCache statements, PreparedStatement statement) {
+        if (statement != null && statements == null) {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+            }
+        }
+    }
+
+    private static void bind(PreparedStatement statement, Object... arguments) throws SQLException {
+        if (arguments != null) {
+            for (int i = 0; i < arguments.length; i++) {
+                statement.setObject(i + 1, arguments[i]);
+            }
+        }
+    }
+
+    private static void close(ResultSet resultSet) {
+        if (resultSet != null) {
+            try {
+                resultSet.close();
+            } catch (SQLException e) {
+            }
+        }
+    }
+
     private int getDatabaseVersion(Connection connection) {
         List<List<Object>> query = query(connection, "SELECT version FROM Library");
         return query.size() > 0 ? (Integer) query.get(0).get(0) : -1;
@@ -335,6 +532,13 @@ public class LibraryDatabase {
         update(connection, "CALL FTL_CREATE_INDEX('PUBLIC', 'INTERNETRADIOSTATIONS', 'NAME, DESCRIPTION, GENRE')");
     }
     
+    /**
+     * Items are read by playlist for loading them in pages, counting them and saving.
+     */
+    private void setupPlaylistIdIndex(final Connection connection) {
+        update(connection, "CREATE INDEX IF NOT EXISTS idx_PlaylistItems_playlistId ON PlaylistItems (playlistId, sortIndex)");
+    }
+
     private void setupPlaylistIndexes(final Connection connection) {
         
         // add new column
@@ -10,10 +10,14 @@ import com.frostwire.alexandria.PlaylistItem;
 
 public class PlaylistDB {
 
+    // headers only, the items are loaded by the playlist when first needed
+    private static final String PLAYLIST_HEADER_SELECT = "SELECT P.playlistId, P.name, P.description, COUNT(I.playlistItemId) FROM Playlists P LEFT JOIN PlaylistItems I ON I.playlistId = P.playlistId";
+    private static final String PLAYLIST_HEADER_GROUP_BY = " GROUP BY P.playlistId, P.name, P.description";
+
     private PlaylistDB() { } // don't allow explicit constructions
 
     public static void fill(LibraryDatabase db, Playlist obj) {
-        List<List<Object>> result = db.query("SELECT playlistId, name, description FROM Playlists WHERE playlistId = ?", obj.getId());
+        List<List<Object>> result = db.query(PLAYLIST_HEADER_SELECT + " WHERE P.playlistId = ?" + PLAYLIST_HEADER_GROUP_BY, obj.getId());
         if (result.size() > 0) {
             List<Object> row = result.get(0);
             fill(row, obj);
@@ -24,32 +28,108 @@ public class PlaylistDB {
         int id = (Integer) row.get(0);
         String name = (String) row.get(1);
         String description = (String) row.get(2);
+        int itemCount = row.size() > 3 ? ((Number) row.get(3)).intValue() : 0;
 
         p.setId(id);
         p.setName(name);
         p.setDescription(description);
-        p.refresh();
+        p.setItemCount(itemCount);
+        p.clearDirty();
     }
 
+    /**
+     * Only the differences with the database are written, in one transaction: the
+     * playlist row if it changed, new items, changed items and sort indexes, and the
+     * deletion of the rows no longer in the playlist.
+     */
     public static void save(LibraryDatabase db, Playlist obj) {
+        save(db, obj, true);
+    }
+
+    /**
+     * Like {@link #save(LibraryDatabase, Playlist)}, without looking for rows to delete.
+     * Items with an id are taken as rows of this playlist.
+     */
+    public static void saveItems(LibraryDatabase db, Playlist obj) {
+        save(db, obj, false);
+    }
+
+    private static void save(LibraryDatabase db, Playlist obj, boolean deleteMissing) {
         if (obj.getId() == LibraryDatabase.OBJECT_INVALID_ID) {
             return;
         }
 
-        if (obj.getId() == LibraryDatabase.OBJECT_NOT_SAVED_ID) {
-            int id = db.insert("INSERT INTO Playlists (name, description) VALUES (LEFT(?, 500), LEFT(?, 10000))", obj.getName(), obj.getDescription());
-            obj.setId(id);
-        } else {
-            db.update("DELETE FROM PlaylistItems WHERE playlistId = ?", obj.getId());
-            Object[] statementObjects = createPlaylistUpdateStatement(obj);
-            db.update((String) statementObjects[0], (Object[]) statementObjects[1]);
+        // items never loaded can't have changed, like when renaming
+        boolean withItems = obj.isLoaded();
+
+        if (withItems) {
+            if (!obj.isStarred()) {
+                obj.updateSortIndexes();
+            } else {
+                // the starred playlist holds items of other playlists, their indexes aren't its own
+                obj.appendSortIndexes();
+            }
+        }
+
+        List<PlaylistItem> items = new ArrayList<PlaylistItem>();
+        if (withItems) {
+            synchronized (obj.getItems()) {
+                items.addAll(obj.getItems());
+            }
         }
-        
-        List<PlaylistItem> items = new ArrayList<PlaylistItem>(obj.getItems());
 
-        for (PlaylistItem item : items) {
-            item.setId(LibraryDatabase.OBJECT_NOT_SAVED_ID);
-            item.save();
+        boolean successful = false;
+
+        db.beginTransaction();
+        try {
+            // rows of the playlist not matched by an item yet, null when not deleting
+            Set<Integer> savedIds = deleteMissing && withItems && !obj.isStarred() ? new HashSet<Integer>() : null;
+
+            if (obj.getId() == LibraryDatabase.OBJECT_NOT_SAVED_ID) {
+                int id = db.insert("INSERT INTO Playlists (name, description) VALUES (LEFT(?, 500), LEFT(?, 10000))", obj.getName(), obj.getDescription());
+                if (id == LibraryDatabase.OBJECT_INVALID_ID) {
+                    return;
+                }
+                obj.setId(id);
+            } else {
+                if (obj.isDirty() && !obj.isStarred()) {
+                    Object[] statementObjects = createPlaylistUpdateStatement(obj);
+                    if (db.update((String) statementObjects[0], (Object[]) statementObjects[1]) == -1) {
+                        return;
+                    }
+                }
+
+                if (savedIds != null) {
+                    for (List<Object> row : db.query("SELECT playlistItemId FROM PlaylistItems WHERE playlistId = ?", obj.getId())) {
+                        savedIds.add((Integer) row.get(0));
+                    }
+                }
+            }
+
+            if (!PlaylistItemDB.saveAll(db, items, savedIds)) {
+                return;
+            }
+
+            if (savedIds != null && !savedIds.isEmpty()) {
+                List<Object[]> deletes = new ArrayList<Object[]>(savedIds.size());
+                for (Integer id : savedIds) {
+                    deletes.add(new Object[] { id });
+                }
+                if (!db.updateBatch("DELETE FROM PlaylistItems WHERE playlistItemId = ?", deletes)) {
+                    return;
+                }
+            }
+
+            successful = true;
+        } finally {
+            db.endTransaction(successful);
+        }
+
+        if (successful) {
+            obj.clearDirty();
+            for (PlaylistItem item : items) {
+                item.clearDirty();
+            }
         }
     }
 
@@ -59,7 +139,7 @@ public class PlaylistDB {
     }
 
     public static List<Playlist> getPlaylists(LibraryDatabase db) {
-        List<List<Object>> result = db.query("SELECT playlistId, name, description FROM Playlists");
+        List<List<Object>> result = db.query(PLAYLIST_HEADER_SELECT + PLAYLIST_HEADER_GROUP_BY);
 
         List<Playlist> playlists = new ArrayList<Playlist>(result.size());
 
@@ -73,7 +153,7 @@ public class PlaylistDB {
     }
 
     public static Playlist getPlaylist(LibraryDatabase db, String name) {
-        List<List<Object>> result = db.query("SELECT playlistId, name, description FROM Playlists WHERE name = ?", name);
+        List<List<Object>> result = db.query(PLAYLIST_HEADER_SELECT + " WHERE P.name = ?" + PLAYLIST_HEADER_GROUP_BY, name);
         Playlist playlist = null;
         if (result.size() > 0) {
             List<Object> row = result.get(0);
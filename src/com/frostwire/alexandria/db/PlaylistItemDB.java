@@ -2,12 +2,23 @@ package com.frostwire.alexandria.db;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 import com.frostwire.alexandria.Playlist;
 import com.frostwire.alexandria.PlaylistItem;
+import com.frostwire.alexandria.SearchPage;
+import com.frostwire.database.Cursor;
+import com.frostwire.database.RowMapper;
 
 public class PlaylistItemDB {
 
+    private static final String PLAYLIST_ITEM_UPDATE_SQL = "UPDATE PlaylistItems SET filePath = LEFT(?, 10000), fileName = LEFT(?, 500), fileSize = ?, fileExtension = LEFT(?, 10), trackTitle = LEFT(?, 500), trackDurationInSecs = ?, trackArtist = LEFT(?, 500), trackAlbum = LEFT(?, 500), coverArtPath = LEFT(?, 10000), trackBitrate = LEFT(?, 10), trackComment = LEFT(?, 500), trackGenre = LEFT(?, 20), trackNumber = LEFT(?, 6), trackYear = LEFT(?, 6), starred = ?, sortIndex = ? WHERE playlistItemId = ?";
+    private static final String UPDATE_STARRED_SQL = "UPDATE PlaylistItems SET starred = ? WHERE filePath = LEFT(?, 10000)";
+
+    private static final String SEARCH_SELECT = "SELECT T.playlistItemId, T.filePath, T.fileName, T.fileSize, T.fileExtension, T.trackTitle, T.trackDurationInSecs, T.trackArtist, T.trackAlbum, T.coverArtPath, T.trackBitrate, T.trackComment, T.trackGenre, T.trackNumber, T.trackYear, T.starred, T.sortIndex "
+            + "FROM FTL_SEARCH_DATA(?, ?, ?) FT LEFT JOIN PlaylistItems T ON FT.TABLE = 'PLAYLISTITEMS' AND T.playlistItemId = FT.KEYS[0] ";
+    private static final String SEARCH_COUNT = "SELECT COUNT(*), COUNT(T.playlistItemId) FROM FTL_SEARCH_DATA(?, ?, ?) FT LEFT JOIN PlaylistItems T ON FT.TABLE = 'PLAYLISTITEMS' AND T.playlistItemId = FT.KEYS[0] ";
+
     private PlaylistItemDB() {} // don't construct this direclty
 
     public static void fill(LibraryDatabase db, PlaylistItem obj) {
@@ -57,6 +68,7 @@ public class PlaylistItemDB {
         obj.setTrackYear(trackYear);
         obj.setStarred(starred);
         obj.setSortIndex(sortIndex);
+        obj.clearDirty();
     }
 
     public static void save(LibraryDatabase db, PlaylistItem obj) {
@@ -65,18 +77,60 @@ public class PlaylistItemDB {
         }
 
         if (obj.getId() == LibraryDatabase.OBJECT_NOT_SAVED_ID) {
-            obj.setStarred(isStarred(db, obj) || obj.isStarred());
-            Object[] sqlAndValues = createPlaylistItemInsert(obj);
-            int id = db.insert((String) sqlAndValues[0], (Object[]) sqlAndValues[1]);
-            obj.setId(id);
-            sqlAndValues = updateStarred(obj);
-            db.update((String) sqlAndValues[0], (Object[]) sqlAndValues[1]);
+            insert(db, obj);
         } else {
             Object[] sqlAndValues = createPlaylistItemUpdate(obj);
             db.update((String) sqlAndValues[0], (Object[]) sqlAndValues[1]);
             sqlAndValues = updateStarred(obj);
             db.update((String) sqlAndValues[0], (Object[]) sqlAndValues[1]);
         }
+
+        obj.clearDirty();
+    }
+
+    /**
+     * Writes the new and changed items of a playlist, the updates as batches. Meant to run
+     * inside a transaction, the items are not marked as saved here.
+     * 
+     * @param db
+     * @param items
+     * @param savedIds the rows of the playlist, the ones matched by an item are removed from it;
+     *                 if null, every item with an id is taken as one of its rows
+     * @return false if a statement failed
+     */
+    static boolean saveAll(LibraryDatabase db, List<PlaylistItem> items, Set<Integer> savedIds) {
+        List<PlaylistItem> inserts = new ArrayList<PlaylistItem>();
+        List<Object[]> updates = new ArrayList<Object[]>();
+        List<Object[]> starredUpdates = new ArrayList<Object[]>();
+        List<Object[]> sortIndexUpdates = new ArrayList<Object[]>();
+
+        for (PlaylistItem item : items) {
+            if (item.getId() == LibraryDatabase.OBJECT_INVALID_ID || item.getPlaylist() == null) {
+                continue;
+            }
+
+            boolean saved = item.getId() != LibraryDatabase.OBJECT_NOT_SAVED_ID && (savedIds == null || savedIds.remove(item.getId()));
+
+            if (!saved) {
+                inserts.add(item);
+            } else if (item.isDirty()) {
+                updates.add((Object[]) createPlaylistItemUpdate(item)[1]);
+                starredUpdates.add((Object[]) updateStarred(item)[1]);
+            } else if (item.isSortIndexDirty()) {
+                sortIndexUpdates.add(new Object[] { item.getSortIndex(), item.getId() });
+            }
+        }
+
+        boolean successful = db.updateBatch(PLAYLIST_ITEM_UPDATE_SQL, updates) && db.updateBatch(UPDATE_STARRED_SQL, starredUpdates)
+                && db.updateBatch("UPDATE PlaylistItems SET sortIndex = ? WHERE playlistItemId = ?", sortIndexUpdates);
+
+        for (int i = 0; i < inserts.size() && successful; i++) {
+            PlaylistItem item = inserts.get(i);
+            item.setId(LibraryDatabase.OBJECT_NOT_SAVED_ID);
+            successful = insert(db, item);
+        }
+
+        return successful;
     }
 
     public static void delete(LibraryDatabase db, PlaylistItem obj) {
@@ -87,19 +141,69 @@ public class PlaylistItemDB {
         String query = "SELECT playlistItemId, filePath, fileName, fileSize, fileExtension, trackTitle, trackDurationInSecs, trackArtist, trackAlbum, coverArtPath, trackBitrate, trackComment, trackGenre, trackNumber, trackYear, starred, sortIndex "
                 + "FROM PlaylistItems WHERE playlistId = ? ORDER BY sortIndex ASC";
 
-        List<List<Object>> result = db.query(query, playlist.getId());
+        return db.query(new PlaylistItemMapper(playlist), query, playlist.getId());
+    }
 
-        List<PlaylistItem> items = new ArrayList<PlaylistItem>(result.size());
+    /**
+     * A page of the items of the playlist, in sort index order, starting after the given
+     * item. The page starts where the previous one ended in the index, without going
+     * over the rows before it again like an offset would.
+     * 
+     * @param db
+     * @param playlist
+     * @param afterSortIndex the sort index of the last item of the previous page
+     * @param afterId the id of the last item of the previous page, for equal sort indexes
+     * @param limit
+     * @return
+     */
+    public static List<PlaylistItem> getPlaylistItems(LibraryDatabase db, Playlist playlist, int afterSortIndex, int afterId, int limit) {
+        String query = "SELECT playlistItemId, filePath, fileName, fileSize, fileExtension, trackTitle, trackDurationInSecs, trackArtist, trackAlbum, coverArtPath, trackBitrate, trackComment, trackGenre, trackNumber, trackYear, starred, sortIndex "
+                + "FROM PlaylistItems WHERE playlistId = ? AND (sortIndex > ? OR (sortIndex = ? AND playlistItemId > ?)) ORDER BY sortIndex ASC, playlistItemId ASC LIMIT ?";
 
-        for (List<Object> row : result) {
-            PlaylistItem item = new PlaylistItem(playlist);
-            PlaylistItemDB.fill(row, item);
-            items.add(item);
+        return db.query(new PlaylistItemMapper(playlist), query, playlist.getId(), afterSortIndex, afterSortIndex, afterId, limit);
+    }
+
+    /**
+     * A page of the items of the playlist matching the full text query, the starred
+     * items for the starred playlist.
+     * @param db
+     * @param playlist
+     * @param luceneQuery
+     * @param offset the offset in hits, from the previous page
+     * @param limit
+     * @return
+     */
+    public static SearchPage<PlaylistItem> search(LibraryDatabase db, Playlist playlist, String luceneQuery, int offset, int limit) {
+        PlaylistItemMapper mapper = new PlaylistItemMapper(playlist);
+
+        if (playlist.isStarred()) {
+            return FullTextSearchDB.search(db, mapper, SEARCH_SELECT + "AND T.starred = TRUE ORDER BY FT.SCORE DESC", luceneQuery, offset, limit);
+        } else {
+            return FullTextSearchDB.search(db, mapper, SEARCH_SELECT + "AND T.playlistId = ? ORDER BY FT.SCORE DESC", luceneQuery, offset, limit, playlist.getId());
         }
+    }
 
-        return items;
+    public static int count(LibraryDatabase db, Playlist playlist, String luceneQuery) {
+        if (playlist.isStarred()) {
+            return FullTextSearchDB.count(db, SEARCH_COUNT + "AND T.starred = TRUE", luceneQuery);
+        } else {
+            return FullTextSearchDB.count(db, SEARCH_COUNT + "AND T.playlistId = ?", luceneQuery, playlist.getId());
+        }
     }
-    
+
+    private static boolean insert(LibraryDatabase db, PlaylistItem obj) {
+        obj.setStarred(isStarred(db, obj) || obj.isStarred());
+        Object[] sqlAndValues = createPlaylistItemInsert(obj);
+        int id = db.insert((String) sqlAndValues[0], (Object[]) sqlAndValues[1]);
+        obj.setId(id);
+        // if not starred, no other item of the same file was either
+        if (obj.isStarred()) {
+            sqlAndValues = updateStarred(obj);
+            db.update((String) sqlAndValues[0], (Object[]) sqlAndValues[1]);
+        }
+        return id != LibraryDatabase.OBJECT_INVALID_ID;
+    }
+
     private static Object[] createPlaylistItemInsert(PlaylistItem item) {
         String sql = "INSERT INTO PlaylistItems (playlistId, filePath, fileName, fileSize, fileExtension, trackTitle, trackDurationInSecs, trackArtist, trackAlbum, coverArtPath, trackBitrate, trackComment, trackGenre, trackNumber, trackYear, starred, sortIndex) "
                 + " VALUES (?, LEFT(?, 10000), LEFT(?, 500), ?, LEFT(?, 10), LEFT(?, 500), ?, LEFT(?, 500), LEFT(?, 500), LEFT(?, 10000), LEFT(?, 10), LEFT(?, 500), LEFT(?, 20), LEFT(?, 6), LEFT(?, 6), ?, ?)";
@@ -112,7 +216,7 @@ public class PlaylistItemDB {
     }
 
     private static Object[] createPlaylistItemUpdate(PlaylistItem item) {
-        String sql = "UPDATE PlaylistItems SET filePath = LEFT(?, 10000), fileName = LEFT(?, 500), fileSize = ?, fileExtension = LEFT(?, 10), trackTitle = LEFT(?, 500), trackDurationInSecs = ?, trackArtist = LEFT(?, 500), trackAlbum = LEFT(?, 500), coverArtPath = LEFT(?, 10000), trackBitrate = LEFT(?, 10), trackComment = LEFT(?, 500), trackGenre = LEFT(?, 20), trackNumber = LEFT(?, 6), trackYear = LEFT(?, 6), starred = ?, sortIndex = ? WHERE playlistItemId = ?";
+        String sql = PLAYLIST_ITEM_UPDATE_SQL;
 
         Object[] values = new Object[] { item.getFilePath(), item.getFileName(), item.getFileSize(), item.getFileExtension(), item.getTrackTitle(),
                 item.getTrackDurationInSecs(), item.getTrackArtist(), item.getTrackAlbum(), item.getCoverArtPath(), item.getTrackBitrate(), item.getTrackComment(),
@@ -122,7 +226,7 @@ public class PlaylistItemDB {
     }
 
     private static Object[] updateStarred(PlaylistItem item) {
-        String sql = "UPDATE PlaylistItems SET starred = ? WHERE filePath = LEFT(?, 10000)";
+        String sql = UPDATE_STARRED_SQL;
 
         Object[] values = new Object[] { item.isStarred(), item.getFilePath() };
 
@@ -138,4 +242,42 @@ public class PlaylistItemDB {
         
         return false;
     }
+
+    /**
+     * Reads the columns of the items select, in order, straight from the result set.
+     */
+    private static final class PlaylistItemMapper implements RowMapper<PlaylistItem> {
+
+        private final Playlist playlist;
+
+        public PlaylistItemMapper(Playlist playlist) {
+            this.playlist = playlist;
+        }
+
+        @Override
+        public PlaylistItem map(Cursor c) {
+            PlaylistItem item = new PlaylistItem(playlist);
+
+            item.setId(c.getInt(1));
+            item.setFilePath(c.getString(2));
+            item.setFileName(c.getString(3));
+            item.setFileSize(c.getLong(4));
+            item.setFileExtension(c.getString(5));
+            item.setTrackTitle(c.getString(6));
+            item.setTrackDurationInSecs(c.getFloat(7));
+            item.setTrackArtist(c.getString(8));
+            item.setTrackAlbum(c.getString(9));
+            item.setCoverArtPath(c.getString(10));
+            item.setTrackBitrate(c.getString(11));
+            item.setTrackComment(c.getString(12));
+            item.setTrackGenre(c.getString(13));
+            item.setTrackNumber(c.getString(14));
+            item.setTrackYear(c.getString(15));
+            item.setStarred(c.getBoolean(16));
+            item.setSortIndex(c.isNull(17) ? 0 : c.getInt(17));
+            item.clearDirty();
+
+            return item;
+        }
+    }
 }
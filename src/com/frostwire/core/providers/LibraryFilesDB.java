@@ -0,0 +1,186 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2014, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.frostwire.core.providers;
+
+import java.util.List;
+
+import com.frostwire.content.ContentValues;
+import com.frostwire.content.Context;
+import com.frostwire.database.Cursor;
+import com.frostwire.database.sqlite.SQLiteDatabase;
+import com.frostwire.database.sqlite.SQLiteOpenHelper;
+import com.frostwire.database.sqlite.SQLiteQueryBuilder;
+import com.frostwire.logging.Logger;
+
+/**
+ * Persistent index of the files under the library folders. Each file row keeps
+ * a pre-normalized version of the path so that library searches don't have to touch
+ * the disk, and each directory row keeps the last seen modification time so that
+ * the indexer only lists the directories that actually changed.
+ *
+ * @author gubatron
+ * @author aldenml
+ *
+ */
+public final class LibraryFilesDB {
+
+    private static final Logger LOG = Logger.getLogger(LibraryFilesDB.class);
+
+    private static final String DATABASE_NAME = "libraryfiles";
+
+    private static final int DATABASE_VERSION = 1;
+
+    public static final String FILES_TABLE_NAME = "LibraryFiles";
+
+    public static final String DIRECTORIES_TABLE_NAME = "LibraryDirectories";
+
+    private final DatabaseHelper databaseHelper;
+
+    private static LibraryFilesDB instance = new LibraryFilesDB();
+
+    public static LibraryFilesDB instance() {
+        return instance;
+    }
+
+    private LibraryFilesDB() {
+        databaseHelper = new DatabaseHelper(new Context());
+    }
+
+    public Cursor queryFiles(String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        return query(FILES_TABLE_NAME, projection, selection, selectionArgs, sortOrder);
+    }
+
+    public Cursor queryDirectories(String[] projection, String selection, String[] selectionArgs) {
+        return query(DIRECTORIES_TABLE_NAME, projection, selection, selectionArgs, null);
+    }
+
+    public long insertFile(ContentValues values) {
+        if (values == null || values.containsKey(FileColumns.FILE_PATH) == false) {
+            throw new IllegalArgumentException("No file path specified");
+        }
+
+        SQLiteDatabase db = databaseHelper.getWritableDatabase();
+
+        return db.insert(FILES_TABLE_NAME, "", values);
+    }
+
+    /**
+     * Inserts all the file rows in one transaction.
+     */
+    public int insertFiles(List<ContentValues> rows) {
+        SQLiteDatabase db = databaseHelper.getWritableDatabase();
+
+        return db.insertBatch(FILES_TABLE_NAME, rows);
+    }
+
+    public long insertDirectory(ContentValues values) {
+        if (values == null || values.containsKey(DirectoryColumns.DIRECTORY_PATH) == false) {
+            throw new IllegalArgumentException("No directory path specified");
+        }
+
+        SQLiteDatabase db = databaseHelper.getWritableDatabase();
+
+        return db.insert(DIRECTORIES_TABLE_NAME, "", values);
+    }
+
+    public int deleteFiles(String where, String[] whereArgs) {
+        SQLiteDatabase db = databaseHelper.getWritableDatabase();
+
+        return db.delete(FILES_TABLE_NAME, where, whereArgs);
+    }
+
+    public int deleteDirectories(String where, String[] whereArgs) {
+        SQLiteDatabase db = databaseHelper.getWritableDatabase();
+
+        return db.delete(DIRECTORIES_TABLE_NAME, where, whereArgs);
+    }
+
+    public int updateDirectories(ContentValues values, String where, String[] whereArgs) {
+        SQLiteDatabase db = databaseHelper.getWritableDatabase();
+
+        return db.update(DIRECTORIES_TABLE_NAME, values, where, whereArgs);
+    }
+
+    private Cursor query(String table, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        SQLiteQueryBuilder qb = new SQLiteQueryBuilder();
+
+        qb.setTables(table);
+
+        SQLiteDatabase db = databaseHelper.getReadableDatabase();
+
+        return qb.query(db, projection, selection, selectionArgs, null, null, sortOrder);
+    }
+
+    public static final class FileColumns {
+
+        private FileColumns() {
+        }
+
+        public static final String ID = "id";
+        public static final String FILE_PATH = "filePath";
+        public static final String PARENT_PATH = "parentPath";
+        public static final String NORMALIZED_PATH = "normalizedPath";
+        public static final String FILE_SIZE = "fileSize";
+        public static final String DATE_MODIFIED = "dateModified";
+        public static final String MEDIA_TYPE = "mediaType";
+    }
+
+    public static final class DirectoryColumns {
+
+        private DirectoryColumns() {
+        }
+
+        public static final String DIRECTORY_PATH = "directoryPath";
+        public static final String PARENT_PATH = "parentPath";
+        public static final String DATE_MODIFIED = "dateModified";
+    }
+
+    /**
+     * This class helps open, create, and upgrade the database file.
+     */
+    private static class DatabaseHelper extends SQLiteOpenHelper {
+
+        // 4MB cache size and scan-resistant cache algorithm "Two Queue" (2Q) with second level soft reference
+        DatabaseHelper(Context context) {
+            super(context, DATABASE_NAME, null, DATABASE_VERSION, "CACHE_SIZE=4096;CACHE_TYPE=SOFT_TQ");
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE " + FILES_TABLE_NAME + " (" + FileColumns.ID + " INTEGER IDENTITY," + FileColumns.FILE_PATH + " VARCHAR," + FileColumns.PARENT_PATH + " VARCHAR," + FileColumns.NORMALIZED_PATH + " VARCHAR," + FileColumns.FILE_SIZE + " BIGINT,"
+                    + FileColumns.DATE_MODIFIED + " BIGINT," + FileColumns.MEDIA_TYPE + " VARCHAR" + ");");
+
+            db.execSQL("CREATE INDEX idx_" + FILES_TABLE_NAME + "_" + FileColumns.FILE_PATH + " ON " + FILES_TABLE_NAME + " (" + FileColumns.FILE_PATH + ")");
+            db.execSQL("CREATE INDEX idx_" + FILES_TABLE_NAME + "_" + FileColumns.PARENT_PATH + " ON " + FILES_TABLE_NAME + " (" + FileColumns.PARENT_PATH + ")");
+            db.execSQL("CREATE INDEX idx_" + FILES_TABLE_NAME + "_" + FileColumns.MEDIA_TYPE + " ON " + FILES_TABLE_NAME + " (" + FileColumns.MEDIA_TYPE + ")");
+
+            db.execSQL("CREATE TABLE " + DIRECTORIES_TABLE_NAME + " (" + DirectoryColumns.DIRECTORY_PATH + " VARCHAR PRIMARY KEY," + DirectoryColumns.PARENT_PATH + " VARCHAR," + DirectoryColumns.DATE_MODIFIED + " BIGINT" + ");");
+
+            db.execSQL("CREATE INDEX idx_" + DIRECTORIES_TABLE_NAME + "_" + DirectoryColumns.PARENT_PATH + " ON " + DIRECTORIES_TABLE_NAME + " (" + DirectoryColumns.PARENT_PATH + ")");
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            LOG.warn("Upgrading library files database from version " + oldVersion + " to " + newVersion + ", which will destroy all old data");
+            db.execSQL("DROP TABLE IF EXISTS " + FILES_TABLE_NAME);
+            db.execSQL("DROP TABLE IF EXISTS " + DIRECTORIES_TABLE_NAME);
+            onCreate(db);
+        }
+    }
+}
@@ -18,10 +18,14 @@
 
 package com.frostwire.core.providers;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import com.frostwire.content.ContentValues;
 import com.frostwire.content.Context;
 import com.frostwire.core.Constants;
 import com.frostwire.database.Cursor;
+import com.frostwire.database.RowMapper;
 import com.frostwire.database.sqlite.SQLiteDatabase;
 import com.frostwire.database.sqlite.SQLiteOpenHelper;
 import com.frostwire.database.sqlite.SQLiteQueryBuilder;
@@ -79,7 +83,54 @@ public final class ShareFilesDB {
         return c;
     }
 
+    /**
+     * Like {@link #query(String[], String, String[], String)}, decoding the rows with
+     * <code>mapper</code> as they are read.
+     */
+    public <T> List<T> query(String[] projection, String selection, String[] selectionArgs, String sortOrder, RowMapper<T> mapper) {
+        return query(projection, selection, selectionArgs, sortOrder, 0, mapper);
+    }
+
+    /**
+     * Like {@link #query(String[], String, String[], String, RowMapper)}, returning at most
+     * <code>limit</code> rows, all of them if it's not positive.
+     */
+    public <T> List<T> query(String[] projection, String selection, String[] selectionArgs, String sortOrder, int limit, RowMapper<T> mapper) {
+        SQLiteQueryBuilder qb = new SQLiteQueryBuilder();
+
+        qb.setTables(TABLE_NAME);
+
+        String orderBy = TextUtils.isEmpty(sortOrder) ? DEFAULT_SORT_ORDER : sortOrder;
+
+        SQLiteDatabase db = databaseHelper.getReadableDatabase();
+
+        return qb.queryMapped(db, projection, selection, selectionArgs, orderBy, limit > 0 ? String.valueOf(limit) : null, mapper);
+    }
+
     public long insert(ContentValues initialValues) {
+        SQLiteDatabase db = databaseHelper.getWritableDatabase();
+
+        return db.insert(TABLE_NAME, "", withDefaults(initialValues));
+    }
+
+    /**
+     * Inserts all the rows in one transaction.
+     *
+     * @return the number of rows inserted, or -1 if the batch failed
+     */
+    public int insert(List<ContentValues> rows) {
+        List<ContentValues> values = new ArrayList<ContentValues>(rows.size());
+
+        for (ContentValues row : rows) {
+            values.add(withDefaults(row));
+        }
+
+        SQLiteDatabase db = databaseHelper.getWritableDatabase();
+
+        return db.insertBatch(TABLE_NAME, values);
+    }
+
+    private ContentValues withDefaults(ContentValues initialValues) {
         ContentValues values;
 
         if (initialValues != null) {
@@ -134,9 +185,7 @@ public final class ShareFilesDB {
             values.put(Columns.YEAR, "");
         }
 
-        SQLiteDatabase db = databaseHelper.getWritableDatabase();
-
-        return db.insert(TABLE_NAME, "", values);
+        return values;
     }
 
     public int delete(String where, String[] whereArgs) {
@@ -147,6 +196,15 @@ public final class ShareFilesDB {
         return count;
     }
 
+    /**
+     * Runs the same delete once for each set of arguments, in one transaction.
+     */
+    public int delete(String where, List<String[]> whereArgsList) {
+        SQLiteDatabase db = databaseHelper.getWritableDatabase();
+
+        return db.deleteBatch(TABLE_NAME, where, whereArgsList);
+    }
+
     public int update(ContentValues values, String where, String[] whereArgs) {
 
         SQLiteDatabase db = databaseHelper.getWritableDatabase();
@@ -0,0 +1,210 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2014, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.frostwire.database;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.LinkedList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.frostwire.logging.Logger;
+
+/**
+ * Connections to an embedded H2 database opened in MVCC mode, one for writing and
+ * a few for reading.
+ * <p>
+ * Writers queue for the write connection in arrival order, readers take any free read
+ * connection, opening a new one while under the limit, so reads never wait for a write
+ * or for each other. A thread holding the write connection reads through it too, so it
+ * sees its own uncommitted changes.
+ * <p>
+ * Each connection has its own {@link StatementCache}, only used by the thread that
+ * acquired it.
+ *
+ * @author gubatron
+ * @author aldenml
+ *
+ */
+public final class ConnectionPool {
+
+    private static final Logger LOG = Logger.getLogger(ConnectionPool.class);
+
+    private static final int MAX_CACHED_STATEMENTS = 32;
+
+    private final String url;
+    private final String user;
+    private final String password;
+
+    private final PooledConnection writer;
+    private final ReentrantLock writeLock;
+
+    private final Semaphore readPermits;
+    /**
+     * Guarded by itself.
+     */
+    private final LinkedList<PooledConnection> idleReaders;
+
+    private volatile boolean closed;
+
+    /**
+     * @param url the JDBC url of the database, it must enable MVCC
+     * @param writeConnection an open connection to <code>url</code>, used for all the writes
+     * @param maxReaders the maximum number of read connections
+     */
+    public ConnectionPool(String url, String user, String password, Connection writeConnection, int maxReaders) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+
+        this.writer = new PooledConnection(writeConnection, true);
+        this.writeLock = new ReentrantLock(true);
+
+        this.readPermits = new Semaphore(Math.max(1, maxReaders), true);
+        this.idleReaders = new LinkedList<PooledConnection>();
+    }
+
+    /**
+     * Returns the <code>MVCC=TRUE</code> setting appended to the url, unless it's already there.
+     */
+    public static String mvccUrl(String url) {
+        return url.toUpperCase().contains("MVCC=") ? url : url + ";MVCC=TRUE";
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Waits for the write connection, it must be given back with {@link #release(PooledConnection)}.
+     * Reentrant, a thread can acquire it again while holding it.
+     */
+    public PooledConnection acquireWrite() {
+        writeLock.lock();
+        return writer;
+    }
+
+    /**
+     * Returns a read connection, or the write connection if the current thread holds it.
+     * It must be given back with {@link #release(PooledConnection)}.
+     */
+    public PooledConnection acquireRead() throws SQLException {
+        if (writeLock.isHeldByCurrentThread()) {
+            return acquireWrite();
+        }
+
+        readPermits.acquireUninterruptibly();
+
+        PooledConnection c;
+        synchronized (idleReaders) {
+            c = idleReaders.poll();
+        }
+
+        if (c == null) {
+            try {
+                c = new PooledConnection(DriverManager.getConnection(url, user, password), false);
+            } catch (SQLException e) {
+                readPermits.release();
+                throw e;
+            }
+        }
+
+        return c;
+    }
+
+    public void release(PooledConnection c) {
+        if (c == null) {
+            return;
+        }
+
+        if (c.writer) {
+            writeLock.unlock();
+            return;
+        }
+
+        if (closed) {
+            c.close();
+        } else {
+            synchronized (idleReaders) {
+                idleReaders.add(c);
+            }
+        }
+
+        readPermits.release();
+    }
+
+    /**
+     * Closes the idle read connections and the cached statements of the write connection,
+     * waiting for the current writer. Read connections in use are closed when released.
+     * The write connection itself is left open, it's closed by the owner after shutting
+     * down the database.
+     */
+    public void close() {
+        closed = true;
+
+        synchronized (idleReaders) {
+            for (PooledConnection c : idleReaders) {
+                c.close();
+            }
+            idleReaders.clear();
+        }
+
+        writeLock.lock();
+        try {
+            writer.statements.close();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public static final class PooledConnection {
+
+        private final Connection connection;
+        private final StatementCache statements;
+        private final boolean writer;
+
+        private PooledConnection(Connection connection, boolean writer) {
+            this.connection = connection;
+            this.statements = new StatementCache(connection, MAX_CACHED_STATEMENTS);
+            this.writer = writer;
+        }
+
+        public Connection getConnection() {
+            return connection;
+        }
+
+        public StatementCache getStatements() {
+            return statements;
+        }
+
+        public boolean isWriter() {
+            return writer;
+        }
+
+        private void close() {
+            statements.close();
+            try {
+                connection.close();
+            } catch (Throwable e) {
+                LOG.warn("Error closing read connection", e);
+            }
+        }
+    }
+}
@@ -22,6 +22,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 
+import com.frostwire.database.ConnectionPool.PooledConnection;
 import com.frostwire.logging.Logger;
 
 /**
@@ -36,9 +37,23 @@ public class Cursor {
     private final Statement statement;
     private final ResultSet rs;
 
+    private final ConnectionPool pool;
+    private final PooledConnection connection;
+    private boolean closed;
+
     public Cursor(Statement statement, ResultSet rs) {
+        this(statement, rs, null, null);
+    }
+
+    /**
+     * A cursor that owns the connection of its statement, the connection goes back to
+     * <code>pool</code> when the cursor is closed, in the thread that opened it.
+     */
+    public Cursor(Statement statement, ResultSet rs, ConnectionPool pool, PooledConnection connection) {
         this.statement = statement;
         this.rs = rs;
+        this.pool = pool;
+        this.connection = connection;
     }
 
     /**
@@ -121,6 +136,8 @@ public class Cursor {
 
     /**
      * Returns the numbers of rows in the cursor.
+     * <p>
+     * Only for scrollable result sets, the queries of the database are forward only.
      *
      * @return the number of rows in the cursor.
      */
@@ -142,6 +159,11 @@ public class Cursor {
      * again.
      */
     public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
         try {
             rs.close();
         } catch (SQLException e) {
@@ -152,6 +174,9 @@ public class Cursor {
         } catch (SQLException e) {
             LOG.warn("Error closing cursor inner statement", e);
         }
+        if (pool != null) {
+            pool.release(connection);
+        }
     }
 
     /**
@@ -160,6 +185,8 @@ public class Cursor {
      *
      * <p>This method will return true if the request destination was reachable, 
      * otherwise, it returns false.
+     * <p>
+     * Only for scrollable result sets, the queries of the database are forward only.
      *
      * @param position the zero-based position to move to.
      * @return whether the requested move fully succeeded.
@@ -208,6 +235,31 @@ public class Cursor {
         return false;
     }
 
+    public float getFloat(int columnIndex) {
+        try {
+            return rs.getFloat(columnIndex);
+        } catch (SQLException e) {
+            LOG.warn("Error reading typed result set value", e);
+        }
+        return 0;
+    }
+
+    /**
+     * Returns <code>true</code> if the value in the indicated column is null.
+     *
+     * @param columnIndex the index of the target column.
+     * @return whether the column value is null.
+     */
+    public boolean isNull(int columnIndex) {
+        try {
+            rs.getObject(columnIndex);
+            return rs.wasNull();
+        } catch (SQLException e) {
+            LOG.warn("Error reading typed result set value", e);
+        }
+        return true;
+    }
+
     public byte[] getBytes(int columnIndex) {
         try {
             return rs.getBytes(columnIndex);
@@ -15,14 +15,25 @@
  * You should have received a copy of the GNU General Public License
  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
-package com.frostwire.gui.library;
 
-import java.util.List;
+package com.frostwire.database;
 
-import com.frostwire.core.FileDescriptor;
-
-
-public class FileDescriptorList {
+/**
+ * Decodes the current row of a cursor into an object, while the query is still
+ * running, so results don't go through intermediate lists of column values.
+ *
+ * @author gubatron
+ * @author aldenml
+ *
+ */
+public interface RowMapper<T> {
 
-	public List<FileDescriptor> files;
+    /**
+     * Called once per row, the cursor is already positioned and must not be moved
+     * or closed.
+     *
+     * @param c the cursor, with 1-based column indexes in the select order
+     * @return the object for the row, or null to leave the row out of the results
+     */
+    T map(Cursor c);
 }
@@ -0,0 +1,103 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2014, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.frostwire.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.frostwire.logging.Logger;
+
+/**
+ * Least recently used cache of the prepared statements of a connection, keyed by SQL,
+ * so the statements run over and over are parsed and planned once.
+ * <p>
+ * Not thread safe, the owner must guard it with the same lock used for the connection.
+ * A statement from the cache must be done with, result set included, before the same
+ * SQL is prepared again, so it's meant for results read while holding that lock, never
+ * for cursors handed to the callers.
+ *
+ * @author gubatron
+ * @author aldenml
+ *
+ */
+public final class StatementCache {
+
+    private static final Logger LOG = Logger.getLogger(StatementCache.class);
+
+    private final Connection connection;
+    private final LinkedHashMap<String, PreparedStatement> statements;
+
+    public StatementCache(Connection connection, final int capacity) {
+        this.connection = connection;
+        this.statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = -2411478101562209373L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() > capacity) {
+                    close(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the statement for the SQL, with no parameters or batch left from its last use.
+     * Forward only and read only, the JDBC defaults.
+     */
+    public PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement statement = statements.get(sql);
+
+        if (statement == null) {
+            statement = connection.prepareStatement(sql);
+            statements.put(sql, statement);
+        } else {
+            statement.clearParameters();
+            statement.clearBatch();
+        }
+
+        return statement;
+    }
+
+    /**
+     * Closes and forgets all the statements.
+     */
+    public void close() {
+        Iterator<PreparedStatement> it = statements.values().iterator();
+        while (it.hasNext()) {
+            close(it.next());
+            it.remove();
+        }
+    }
+
+    private static void close(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (Throwable e) {
+            LOG.warn("Error closing cached statement", e);
+        }
+    }
+}
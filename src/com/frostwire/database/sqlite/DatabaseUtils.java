@@ -24,6 +24,12 @@ import com.frostwire.database.Cursor;
  */
 public class DatabaseUtils {
 
+    /**
+     * The escape char of {@link #escapeLike(String)}, for the <code>ESCAPE</code> clause
+     * of the <code>LIKE</code>.
+     */
+    public static final char LIKE_ESCAPE = '!';
+
     /**
      * Appends an SQL string to the given StringBuilder, including the opening
      * and closing single quotes. Any single quotes internal to sqlString will
@@ -58,4 +64,21 @@ public class DatabaseUtils {
             sb.append(sqlString);
         sb.append('\'');
     }
+
+    /**
+     * Escapes the wildcards of a LIKE pattern with {@link #LIKE_ESCAPE}, so a path
+     * like <code>a_b</code> doesn't match <code>aXb</code>. For
+     * <code>LIKE ? ESCAPE '!'</code>.
+     */
+    public static String escapeLike(String s) {
+        StringBuilder sb = new StringBuilder(s.length() + 8);
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '%' || c == '_' || c == LIKE_ESCAPE) {
+                sb.append(LIKE_ESCAPE);
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
 }
@@ -22,15 +22,24 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.frostwire.content.ContentValues;
+import com.frostwire.database.ConnectionPool;
+import com.frostwire.database.ConnectionPool.PooledConnection;
 import com.frostwire.database.Cursor;
+import com.frostwire.database.RowMapper;
 import com.frostwire.database.SQLException;
 import com.frostwire.logging.Logger;
 import com.frostwire.text.TextUtils;
 
 /**
+ * Queries run in a few read connections, in parallel with each other and with the
+ * writes, which run one at a time in the write connection, see {@link ConnectionPool}.
+ *
  * @author gubatron
  * @author aldenml
  *
@@ -39,8 +48,11 @@ public class SQLiteDatabase {
 
     private static final Logger LOG = Logger.getLogger(SQLiteDatabase.class);
 
+    private static final int MAX_READ_CONNECTIONS = 4;
+
     private String path;
-    private Connection connection;
+
+    private final ConnectionPool pool;
 
     private final AtomicBoolean open = new AtomicBoolean(false);
 
@@ -52,9 +64,14 @@ public class SQLiteDatabase {
         }
     }
 
-    public SQLiteDatabase(String path, Connection connection) {
+    /**
+     * @param path the path to the database file
+     * @param url the JDBC url the read connections are opened with, with MVCC enabled
+     * @param connection the write connection
+     */
+    public SQLiteDatabase(String path, String url, Connection connection) {
         this.path = path;
-        this.connection = connection;
+        this.pool = new ConnectionPool(url, "SA", "", connection, MAX_READ_CONNECTIONS);
 
         open.set(true);
     }
@@ -78,31 +95,98 @@ public class SQLiteDatabase {
      *     values will be bound as Strings.
      * @param editTable the name of the first table, which is editable
      * @return A {@link Cursor} object, which is positioned before the first entry. Note that
-     * {@link Cursor}s are not synchronized, see the documentation for more details.
+     * {@link Cursor}s are not synchronized, see the documentation for more details. It holds
+     * a read connection until it's closed.
      */
     public Cursor rawQueryWithFactory(CursorFactory cursorFactory, String sql, String[] selectionArgs, String editTable) {
         verifyDbIsOpen();
 
         Cursor cursor = null;
 
+        PooledConnection c = null;
         PreparedStatement statement = null;
         ResultSet resultSet = null;
 
         try {
-            synchronized (connection) {
-                statement = prepareStatement(connection, sql, (Object[]) selectionArgs);
+            c = pool.acquireRead();
 
-                resultSet = statement.executeQuery();
+            statement = prepareStatement(c.getConnection(), sql, (Object[]) selectionArgs);
 
-                return new Cursor(statement, resultSet);
-            }
+            resultSet = statement.executeQuery();
+
+            // the connection stays with the cursor until it's closed, no one else can use it
+            // while the rows are read, and a pool closing meanwhile leaves it open
+            cursor = new Cursor(statement, resultSet, pool, c);
         } catch (Throwable e) {
             LOG.warn("Error performing SQL statement: " + sql, e);
+
+            if (resultSet != null) {
+                try {
+                    resultSet.close();
+                } catch (Throwable e2) {
+                }
+            }
+            if (statement != null) {
+                try {
+                    statement.close();
+                } catch (Throwable e2) {
+                }
+            }
+            pool.release(c);
         }
 
         return cursor;
     }
 
+    /**
+     * Runs the SQL and decodes each row with <code>mapper</code> as it's read, over
+     * a cached statement of a read connection. Unlike the cursor queries, the rows are never kept
+     * as column values.
+     *
+     * @param mapper decodes the rows, the ones mapped to null are left out
+     * @param sql the SQL query
+     * @param selectionArgs the values of the ?s in the query
+     * @return the decoded rows, empty if an error occurred
+     */
+    public <T> List<T> query(RowMapper<T> mapper, String sql, Object... selectionArgs) {
+        verifyDbIsOpen();
+
+        PooledConnection c = null;
+        ResultSet resultSet = null;
+
+        try {
+            c = pool.acquireRead();
+
+            PreparedStatement statement = c.getStatements().prepare(sql);
+            bind(statement, selectionArgs);
+
+            resultSet = statement.executeQuery();
+
+            List<T> result = new ArrayList<T>();
+            Cursor cursor = new Cursor(statement, resultSet);
+            while (resultSet.next()) {
+                T obj = mapper.map(cursor);
+                if (obj != null) {
+                    result.add(obj);
+                }
+            }
+
+            return result;
+        } catch (Throwable e) {
+            LOG.warn("Error performing SQL statement: " + sql, e);
+        } finally {
+            if (resultSet != null) {
+                try {
+                    resultSet.close();
+                } catch (Throwable e) {
+                }
+            }
+            pool.release(c);
+        }
+
+        return Collections.emptyList();
+    }
+
     /**
      * Execute a single SQL statement that is NOT a SELECT
      * or any other SQL statement that returns data.
@@ -195,33 +279,135 @@ public class SQLiteDatabase {
     public long insert(String table, String nullColumnHack, ContentValues values) {
         verifyDbIsOpen();
 
-        StringBuilder sql = new StringBuilder();
-        sql.append("INSERT");
-        sql.append(" INTO ");
-        sql.append(table);
-        sql.append(" (");
-
-        Object[] bindArgs = null;
         int size = (values != null && values.size() > 0) ? values.size() : 0;
-        if (size > 0) {
-            bindArgs = new Object[size];
-            int i = 0;
-            for (String colName : values.keySet()) {
-                sql.append((i > 0) ? "," : "");
-                sql.append(colName);
-                bindArgs[i++] = values.get(colName);
-            }
-            sql.append(')');
-            sql.append(" VALUES (");
-            for (i = 0; i < size; i++) {
-                sql.append((i > 0) ? ",?" : "?");
+        if (size == 0) {
+            return executeSql("INSERT INTO " + table + " (" + nullColumnHack + ") VALUES (NULL)", null);
+        }
+
+        Object[] bindArgs = new Object[size];
+        int i = 0;
+        for (String colName : values.keySet()) {
+            bindArgs[i++] = values.get(colName);
+        }
+
+        return executeSql(buildInsertSql(table, values), bindArgs);
+    }
+
+    /**
+     * Inserts all the rows in a single transaction, using JDBC batching over
+     * a cached prepared statement for each distinct set of columns.
+     *
+     * @param table the table to insert the rows into
+     * @param rows the column values of each row, no row can be empty
+     * @return the number of rows inserted, or -1 if an error occurred, in which
+     *         case none of the rows are inserted
+     */
+    public int insertBatch(String table, List<ContentValues> rows) {
+        verifyDbIsOpen();
+
+        if (rows == null || rows.isEmpty()) {
+            return 0;
+        }
+
+        PooledConnection c = pool.acquireWrite();
+        Connection connection = c.getConnection();
+        try {
+            try {
+                connection.setAutoCommit(false);
+
+                PreparedStatement statement = null;
+                String statementSql = null;
+                int count = 0;
+
+                for (ContentValues values : rows) {
+                    if (values == null || values.size() == 0) {
+                        throw new IllegalArgumentException("Empty values");
+                    }
+
+                    String sql = buildInsertSql(table, values);
+
+                    if (!sql.equals(statementSql)) {
+                        if (statement != null) {
+                            count += sum(statement.executeBatch());
+                        }
+                        statement = c.getStatements().prepare(sql);
+                        statementSql = sql;
+                    }
+
+                    int i = 1;
+                    for (String colName : values.keySet()) {
+                        statement.setObject(i++, values.get(colName));
+                    }
+                    statement.addBatch();
+                }
+
+                count += sum(statement.executeBatch());
+
+                connection.commit();
+
+                return count;
+            } catch (Throwable e) {
+                LOG.warn("Error performing batch insert into: " + table, e);
+                rollback(connection);
+                return -1;
+            } finally {
+                restoreAutoCommit(connection);
             }
-        } else {
-            sql.append(nullColumnHack + ") VALUES (NULL");
+        } finally {
+            pool.release(c);
         }
-        sql.append(')');
+    }
 
-        return executeSql(sql.toString(), bindArgs);
+    /**
+     * Runs the same delete once for each set of arguments, in a single transaction.
+     *
+     * @param table the table to delete from
+     * @param whereClause the WHERE clause to apply when deleting.
+     * @param whereArgsList the arguments of each delete
+     * @return the number of rows affected, or -1 if an error occurred, in which
+     *         case none of the rows are deleted
+     */
+    public int deleteBatch(String table, String whereClause, List<String[]> whereArgsList) {
+        verifyDbIsOpen();
+
+        if (whereArgsList == null || whereArgsList.isEmpty()) {
+            return 0;
+        }
+
+        String sql = "DELETE FROM " + table + (!TextUtils.isEmpty(whereClause) ? " WHERE " + whereClause : "");
+
+        PooledConnection c = pool.acquireWrite();
+        Connection connection = c.getConnection();
+        try {
+            try {
+                connection.setAutoCommit(false);
+
+                PreparedStatement statement = c.getStatements().prepare(sql);
+
+                for (String[] whereArgs : whereArgsList) {
+                    if (whereArgs != null) {
+                        for (int i = 0; i < whereArgs.length; i++) {
+                            statement.setObject(i + 1, whereArgs[i]);
+                        }
+                    }
+                    statement.addBatch();
+                }
+
+                int count = sum(statement.executeBatch());
+
+                connection.commit();
+
+                return count;
+            } catch (Throwable e) {
+                LOG.warn("Error performing batch delete: " + sql, e);
+                rollback(connection);
+                return -1;
+            } finally {
+                restoreAutoCommit(connection);
+            }
+        } finally {
+            pool.release(c);
+        }
     }
 
     /**
@@ -296,35 +482,85 @@ public class SQLiteDatabase {
 
     public void close() {
         if (open.compareAndSet(true, false)) {
+            pool.close();
+
+            PooledConnection c = pool.acquireWrite();
             try {
-                Statement statement = connection.createStatement();
+                Statement statement = c.getConnection().createStatement();
                 statement.execute("SHUTDOWN");
-                connection.close();
+                c.getConnection().close();
             } catch (Throwable e) {
                 LOG.warn("Error closing the smart search database", e);
+            } finally {
+                pool.release(c);
             }
         }
     }
 
     private int executeSql(String sql, Object[] bindArgs) throws SQLException {
-        PreparedStatement statement = null;
+        PooledConnection c = pool.acquireWrite();
         try {
-            synchronized (connection) {
-                statement = prepareStatement(connection, sql.toString(), bindArgs);
+            PreparedStatement statement = c.getStatements().prepare(sql);
+            bind(statement, bindArgs);
 
-                return statement.executeUpdate();
-            }
+            return statement.executeUpdate();
         } catch (Throwable e) {
             LOG.warn("Error performing SQL statement: " + sql, e);
             return -1;
         } finally {
-            if (statement != null) {
-                try {
-                    statement.close();
-                } catch (Throwable e) {
-                }
+            pool.release(c);
+        }
+    }
+
+    /**
+     * Builds the INSERT statement for the columns of <code>values</code>, in keySet order.
+     */
+    private static String buildInsertSql(String table, ContentValues values) {
+        StringBuilder sql = new StringBuilder();
+        sql.append("INSERT");
+        sql.append(" INTO ");
+        sql.append(table);
+        sql.append(" (");
+
+        int i = 0;
+        for (String colName : values.keySet()) {
+            sql.append((i++ > 0) ? "," : "");
+            sql.append(colName);
+        }
+        sql.append(')');
+        sql.append(" VALUES (");
+        for (i = 0; i < values.size(); i++) {
+            sql.append((i > 0) ? ",?" : "?");
+        }
+        sql.append(')');
+
+        return sql.toString();
+    }
+
+    private static void rollback(Connection connection) {
+        try {
+            connection.rollback();
+        } catch (Throwable e) {
+            LOG.warn("Error rolling back transaction", e);
+        }
+    }
+
+    private static void restoreAutoCommit(Connection connection) {
+        try {
+            connection.setAutoCommit(true);
+        } catch (Throwable e) {
+            LOG.warn("Error restoring auto commit", e);
+        }
+    }
+
+    private static int sum(int[] counts) {
+        int total = 0;
+        for (int c : counts) {
+            if (c > 0) {
+                total += c;
             }
         }
+        return total;
     }
 
     /**
@@ -356,16 +592,25 @@ public class SQLiteDatabase {
         }
     }
 
+    /**
+     * A statement of its own, the cursor outlives the lease of the connection. Forward only, cursors are
+     * only read with {@link Cursor#moveToNext()}.
+     */
     private PreparedStatement prepareStatement(Connection connection, String sql, Object... arguments) throws Exception {
 
-        PreparedStatement statement = connection.prepareStatement(sql, ResultSet.TYPE_SCROLL_SENSITIVE, ResultSet.CONCUR_READ_ONLY);
+        PreparedStatement statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+
+        bind(statement, arguments);
 
+        return statement;
+    }
+
+    private static void bind(PreparedStatement statement, Object[] arguments) throws java.sql.SQLException {
         if (arguments != null) {
             for (int i = 0; i < arguments.length; i++) {
                 statement.setObject(i + 1, arguments[i]);
             }
         }
-        return statement;
     }
 
     /**
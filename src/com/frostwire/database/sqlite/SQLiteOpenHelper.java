@@ -23,6 +23,7 @@ import java.sql.Connection;
 import java.sql.DriverManager;
 
 import com.frostwire.content.Context;
+import com.frostwire.database.ConnectionPool;
 import com.frostwire.database.sqlite.SQLiteDatabase.CursorFactory;
 import com.frostwire.logging.Logger;
 
@@ -118,10 +119,13 @@ public abstract class SQLiteOpenHelper {
                 sb.append(";" + extraArgs);
             }
 
+            // readers don't wait for the writer
+            String url = ConnectionPool.mvccUrl(sb.toString());
+
             boolean create = !(new File(folderpath).exists());
 
-            Connection connection = DriverManager.getConnection(sb.toString(), "SA", "");
-            SQLiteDatabase db = new SQLiteDatabase(fullpath, connection);
+            Connection connection = DriverManager.getConnection(url, "SA", "");
+            SQLiteDatabase db = new SQLiteDatabase(fullpath, url, connection);
 
             if (create) {
                 onCreate(db);
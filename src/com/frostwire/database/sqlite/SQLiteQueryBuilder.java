@@ -16,13 +16,16 @@
 
 package com.frostwire.database.sqlite;
 
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.regex.Pattern;
 
 import com.frostwire.database.Cursor;
+import com.frostwire.database.RowMapper;
 import com.frostwire.text.TextUtils;
 
 /**
@@ -352,6 +355,35 @@ public class SQLiteQueryBuilder
                 SQLiteDatabase.findEditTable(mTables)); // will throw if query is invalid
     }
 
+    /**
+     * Like {@link #query(SQLiteDatabase, String[], String, String[], String, String, String)},
+     * decoding the rows with <code>mapper</code> as they are read instead of returning a cursor.
+     *
+     * @param mapper decodes the rows, the ones mapped to null are left out
+     * @return the decoded rows, empty if there are no tables or an error occurred
+     */
+    public <T> List<T> queryMapped(SQLiteDatabase db, String[] projectionIn,
+            String selection, String[] selectionArgs, String sortOrder, RowMapper<T> mapper) {
+        return queryMapped(db, projectionIn, selection, selectionArgs, sortOrder, null, mapper);
+    }
+
+    /**
+     * Like {@link #queryMapped(SQLiteDatabase, String[], String, String[], String, RowMapper)},
+     * with a LIMIT clause.
+     */
+    public <T> List<T> queryMapped(SQLiteDatabase db, String[] projectionIn,
+            String selection, String[] selectionArgs, String sortOrder, String limit, RowMapper<T> mapper) {
+        if (mTables == null) {
+            return Collections.emptyList();
+        }
+
+        String sql = buildQuery(
+                projectionIn, selection, null, null,
+                sortOrder, limit);
+
+        return db.query(mapper, sql, (Object[]) selectionArgs);
+    }
+
     /**
      * Verifies that a SQL statement is valid by compiling it.
      * If the SQL statement is not valid, this method will throw a {@link SQLiteException}.
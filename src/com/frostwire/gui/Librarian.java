@@ -20,25 +20,34 @@ package com.frostwire.gui;
 
 import java.io.File;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.limewire.concurrent.ExecutorsHelper;
+
+import com.frostwire.content.ContentValues;
 import com.frostwire.core.ConfigurationManager;
 import com.frostwire.core.Constants;
 import com.frostwire.core.FileDescriptor;
 import com.frostwire.core.providers.ShareFilesDB;
 import com.frostwire.core.providers.ShareFilesDB.Columns;
 import com.frostwire.database.Cursor;
+import com.frostwire.database.RowMapper;
+import com.frostwire.database.sqlite.DatabaseUtils;
 import com.frostwire.gui.bittorrent.TorrentUtil;
 import com.frostwire.gui.library.LibraryMediator;
 import com.frostwire.localpeer.Finger;
+import com.limegroup.gnutella.gui.I18n;
+import com.limegroup.gnutella.settings.LibrarySettings;
 
 /**
  * @author gubatron
@@ -53,9 +62,24 @@ public final class Librarian {
     public static final int FILE_STATE_SHARING = 1;
     public static final int FILE_STATE_SHARED = 2;
 
-    //private final Set<String> pathSharedSet;
-    private final Set<String> pathSharingSet;
-    private final ExecutorService shareFileExec;
+    private static final int SCAN_PIPELINE_CAPACITY = 256;
+
+    private static final long SWEEP_INTERVAL_MINUTES = 10;
+
+    /**
+     * Number of share/unshare tasks in flight per path, guarded by itself.
+     */
+    private final Map<String, Integer> pathSharingCounts;
+    private final ScanPipeline scanPipeline;
+    /**
+     * Hands the share requests to the pipeline, which blocks when full, so the
+     * Swing thread never waits for it.
+     */
+    private final ExecutorService shareSubmitter;
+    private final AtomicInteger shareGeneration;
+    private final ShareFilesWriter writer;
+    private final SharedFilesIndex sharedFiles;
+    private final ScheduledExecutorService sweepExec;
 
     private static final Librarian instance = new Librarian();
 
@@ -64,9 +88,31 @@ public final class Librarian {
     }
 
     private Librarian() {
-        //this.pathSharedSet = Collections.synchronizedSet(new HashSet<String>());
-        this.pathSharingSet = Collections.synchronizedSet(new HashSet<String>());
-        this.shareFileExec = Executors.newSingleThreadExecutor();
+        this.pathSharingCounts = new HashMap<String, Integer>();
+        this.scanPipeline = new ScanPipeline(LibrarySettings.LIBRARY_SCAN_WORKERS.getValue(), SCAN_PIPELINE_CAPACITY);
+        this.shareSubmitter = ExecutorsHelper.newProcessingQueue("ShareSubmitter");
+        this.shareGeneration = new AtomicInteger();
+        this.writer = new ShareFilesWriter();
+
+        this.sharedFiles = new SharedFilesIndex();
+        this.sweepExec = Executors.newSingleThreadScheduledExecutor(ExecutorsHelper.daemonThreadFactory("SharedFilesSweep"));
+
+        scanPipeline.setProgressListener(new ScanProgressStatus());
+
+        // have the shared files in memory before the library tables are painted
+        sweepExec.execute(new Runnable() {
+            @Override
+            public void run() {
+                sharedFiles.load();
+            }
+        });
+
+        sweepExec.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                sweepMissingFiles();
+            }
+        }, SWEEP_INTERVAL_MINUTES, SWEEP_INTERVAL_MINUTES, TimeUnit.MINUTES);
     }
 
     public Finger finger() {
@@ -97,147 +143,85 @@ public final class Librarian {
     }
 
     public int getNumSharedFiles() {
-        int result = 0;
-
-        for (byte i = 0; i < 6; i++) {
-            result += getNumSharedFiles(i);
-        }
-
-        return result;
+        return sharedFiles.count();
     }
 
     /**
+     * Answered from memory, the counters are updated on every share, unshare and delete.
      * 
      * @param fileType
-     * @param onlyShared - If false, forces getting all files, shared or unshared. 
      * @return
      */
     public int getNumSharedFiles(byte fileType) {
-        Cursor c = null;
+        return sharedFiles.count(fileType);
+    }
 
-        int numFiles = 0;
+    /**
+     * Answered from memory, without touching the database or the disk, it's called
+     * while painting the library tables.
+     */
+    public boolean isFileShared(String filePath) {
+        return sharedFiles.contains(filePath);
+    }
 
+    /**
+     * Shared files of the type, files no longer on disk are unshared on the way.
+     * 
+     * @param fileType
+     * @return
+     */
+    public List<FileDescriptor> getSharedFiles(byte fileType) {
         try {
-            ShareFilesDB db = ShareFilesDB.intance();
-
-            String[] columns = new String[] { Columns.ID, Columns.FILE_PATH, Columns.SHARED };
             String where = Columns.FILE_TYPE + " = ? AND " + Columns.SHARED + " = ?";
             String[] whereArgs = new String[] { String.valueOf(fileType), String.valueOf(true) };
 
-            c = db.query(columns, where, whereArgs, null);
+            return querySharedFiles(where, whereArgs);
 
-            List<FileDescriptor> fds = filteredOutBadRows(c);
-
-            numFiles = fds.size();
-
-        } catch (Exception e) {
-            LOG.log(Level.WARNING, "Failed to get num of shared files", e);
-        } finally {
-            if (c != null) {
-                c.close();
-            }
+        } catch (Throwable e) {
+            LOG.log(Level.WARNING, "General failure getting files", e);
         }
 
-        return numFiles;
+        return new ArrayList<FileDescriptor>();
     }
 
-    public boolean isFileShared(String filePath) {
-        Cursor c = null;
-
-        boolean isShared = false;
-
+    /**
+     * Up to <code>limit</code> shared files of the type with an id greater than <code>afterId</code>,
+     * in id order, to go through all of them a page at a time. A page is shorter than
+     * <code>limit</code> only if it's the last one.
+     */
+    public List<FileDescriptor> getSharedFiles(byte fileType, int afterId, int limit) {
         try {
-            ShareFilesDB db = ShareFilesDB.intance();
-
-            String[] columns = new String[] { Columns.ID, Columns.FILE_PATH, Columns.SHARED };
-            String where = Columns.FILE_PATH + " = ?";
-            String[] whereArgs = new String[] { filePath };
-
-            c = db.query(columns, where, whereArgs, null);
-
-            List<FileDescriptor> fds = filteredOutBadRows(c);
-
-            isShared = fds.size() == 1;
+            String where = Columns.FILE_TYPE + " = ? AND " + Columns.SHARED + " = ? AND " + Columns.ID + " > ?";
+            List<FileDescriptor> page = new ArrayList<FileDescriptor>(limit);
 
-        } catch (Exception e) {
-            LOG.log(Level.WARNING, "Failed to get num of shared files", e);
-        } finally {
-            if (c != null) {
-                c.close();
-            }
-        }
-
-        return isShared;
-    }
-
-    private List<FileDescriptor> filteredOutBadRows(Cursor c) {
-        int filePathCol = c.getColumnIndex(Columns.FILE_PATH);
-
-        if (filePathCol == -1) {
-            throw new IllegalArgumentException("Can't perform filtering without file path column in cursor");
-        }
-
-        List<FileDescriptor> fds = new LinkedList<FileDescriptor>();
-
-        final Set<String> toRemove = new HashSet<String>();
-
-        while (c.moveToNext()) {
-            String filePath = c.getString(filePathCol);
-
-            if (!(new File(filePath)).exists()) {
-                //pathSharedSet.remove(filePath);
-                toRemove.add(filePath);
-                continue;
-            }
+            // rows of missing files are left out, keep reading to fill the page
+            while (page.size() < limit) {
+                String[] whereArgs = new String[] { String.valueOf(fileType), String.valueOf(true), String.valueOf(afterId) };
+                int wanted = limit - page.size();
 
-            FileDescriptor fd = cursorToFileDescriptor(c);
+                FileDescriptorMapper mapper = new FileDescriptorMapper();
+                page.addAll(querySharedFiles(where, whereArgs, Columns.ID + " ASC", wanted, mapper));
 
-            fds.add(fd);
-        }
-
-        shareFileExec.execute(new Runnable() {
-            @Override
-            public void run() {
-                try {
-                    for (String filePath : toRemove) {
-                        deleteFromShareTable(filePath);
-                    }
-                } catch (Throwable e) {
-                    LOG.log(Level.WARNING, "Error deleting no existent files", e);
+                if (mapper.rows < wanted) {
+                    break;
                 }
+                afterId = mapper.lastId;
             }
-        });
-
-        return fds;
-    }
 
-    public List<FileDescriptor> getSharedFiles(byte fileType) {
-        List<FileDescriptor> result = new ArrayList<FileDescriptor>();
-
-        Cursor c = null;
-
-        try {
-            ShareFilesDB db = ShareFilesDB.intance();
-
-            String[] columns = new String[] { Columns.ID, Columns.FILE_TYPE, Columns.FILE_PATH, Columns.FILE_SIZE, Columns.MIME, Columns.DATE_ADDED, Columns.DATE_MODIFIED, Columns.SHARED, Columns.TITLE, Columns.ARTIST, Columns.ALBUM, Columns.YEAR };
-            String where = Columns.FILE_TYPE + " = ? AND " + Columns.SHARED + " = ?";
-            String[] whereArgs = new String[] { String.valueOf(fileType), String.valueOf(true) };
-
-            c = db.query(columns, where, whereArgs, null);
-
-            List<FileDescriptor> fds = filteredOutBadRows(c);
-
-            return fds;
+            return page;
 
         } catch (Throwable e) {
             LOG.log(Level.WARNING, "General failure getting files", e);
-        } finally {
-            if (c != null) {
-                c.close();
-            }
         }
 
-        return result;
+        return new ArrayList<FileDescriptor>();
+    }
+
+    /**
+     * Changes every time a file is shared, unshared or scanned again, see {@link #getSharedFiles(byte, int, int)}.
+     */
+    public long getSharedFilesVersion() {
+        return sharedFiles.version();
     }
 
     public void scan(File file) {
@@ -245,11 +229,11 @@ public final class Librarian {
     }
 
     public int getFileShareState(String filePath) {
-        if (pathSharingSet.contains(filePath)) {
+        if (isSharing(filePath)) {
             return FILE_STATE_SHARING;
         }
 
-        if (isFileShared(filePath)) {// pathSharedSet.contains(path)) {
+        if (isFileShared(filePath)) {
             return FILE_STATE_SHARED;
         }
 
@@ -268,7 +252,17 @@ public final class Librarian {
                 }
             }
         } else if (file.isFile()) {
-            new UniversalScanner().scan(file.getAbsolutePath());
+            final String filePath = file.getAbsolutePath();
+            scanPipeline.submit(filePath, new ScanPipeline.Task() {
+                @Override
+                public void run() {
+                    insertShared(new UniversalScanner().parse(filePath), null, null);
+                }
+
+                @Override
+                public void cancelled() {
+                }
+            });
         }
     }
 
@@ -276,150 +270,277 @@ public final class Librarian {
         shareFile(filePath, share, true);
     }
 
+    /**
+     * Returns right away, the request is queued in order with the previous ones.
+     */
     public void shareFile(final String filePath, final boolean share, final boolean refreshPing) {
-        if (pathSharingSet.contains(filePath)) {
-            return;
-        }
+        beginSharing(filePath);
 
-        pathSharingSet.add(filePath);
+        final int submitGeneration = shareGeneration.get();
 
-        Runnable r = new Runnable() {
+        shareSubmitter.execute(new Runnable() {
             @Override
             public void run() {
-                deleteFromShareTable(filePath);
-
-                if (share) {
-                    new UniversalScanner().scan(filePath);
-                    //pathSharedSet.add(filePath);
+                if (submitGeneration != shareGeneration.get()) {
+                    endSharing(filePath);
+                    return;
                 }
+                submitShare(filePath, share, refreshPing);
+            }
+        });
+    }
+
+    private void submitShare(final String filePath, final boolean share, final boolean refreshPing) {
+        // parsing happens in the pipeline workers, the writes are batched by the writer
+        // in the same order, and tasks for the same path never overlap
+        scanPipeline.submit(filePath, new ScanPipeline.Task() {
+            @Override
+            public void run() {
+                Runnable done = new Runnable() {
+                    @Override
+                    public void run() {
+                        endSharing(filePath);
+
+                        if (refreshPing) {
+                            LibraryMediator.instance().getDeviceDiscoveryClerk().updateLocalPeer();
+                        }
+                    }
+                };
 
-                pathSharingSet.remove(filePath);
+                // the file stays as it was in the table and the index
+                Runnable failed = new Runnable() {
+                    @Override
+                    public void run() {
+                        endSharing(filePath);
+                    }
+                };
+
+                try {
+                    deleteShared(filePath, share ? null : done, share ? null : failed);
 
-                if (refreshPing) {
-                    LibraryMediator.instance().getDeviceDiscoveryClerk().updateLocalPeer();
+                    if (share) {
+                        insertShared(new UniversalScanner().parse(filePath), done, failed);
+                    }
+                } catch (Throwable e) {
+                    LOG.log(Level.WARNING, "Error sharing file: " + filePath, e);
+                    endSharing(filePath);
                 }
             }
-        };
 
-        shareFileExec.execute(r);
+            @Override
+            public void cancelled() {
+                endSharing(filePath);
+            }
+        });
     }
 
-    private void deleteFromShareTable(String filePath) {
-        String where = Columns.FILE_PATH + " = ?";
-        String[] whereArgs = new String[] { filePath };
+    /**
+     * Drops the share/unshare requests that haven't started yet, the ones still
+     * waiting to enter the pipeline too.
+     */
+    public void cancelPendingShares() {
+        shareGeneration.incrementAndGet();
+        scanPipeline.cancelPending();
+    }
 
-        ShareFilesDB db = ShareFilesDB.intance();
+    private void beginSharing(String filePath) {
+        synchronized (pathSharingCounts) {
+            Integer count = pathSharingCounts.get(filePath);
+            pathSharingCounts.put(filePath, count == null ? 1 : count + 1);
+        }
+    }
 
-        db.delete(where, whereArgs);
+    private void endSharing(String filePath) {
+        synchronized (pathSharingCounts) {
+            Integer count = pathSharingCounts.get(filePath);
+            if (count == null || count <= 1) {
+                pathSharingCounts.remove(filePath);
+            } else {
+                pathSharingCounts.put(filePath, count - 1);
+            }
+        }
     }
 
-    public void deleteFolderFilesFromShareTable(String folderPath) {
-        String where = Columns.FILE_PATH + " LIKE ?";
-        String[] whereArgs = new String[] { folderPath + "%" };
+    private boolean isSharing(String filePath) {
+        synchronized (pathSharingCounts) {
+            return pathSharingCounts.containsKey(filePath);
+        }
+    }
 
-        ShareFilesDB db = ShareFilesDB.intance();
+    /**
+     * Called when a file or folder disappears from disk, removes it and, for
+     * folders, everything under it from the share table.
+     */
+    public void onFileDeleted(final String path) {
+        deleteShared(path, null, null);
+        deleteSharedStartingWith(path + File.separator);
+    }
 
+    /**
+     * Removes the rows of files no longer on disk. This is the only place, besides
+     * the file watcher, where the shared files are checked against the file system.
+     */
+    private void sweepMissingFiles() {
         try {
-            db.delete(where, whereArgs);
-        } catch (Exception e) {
-
+            for (String filePath : sharedFiles.paths()) {
+                if (!new File(filePath).exists()) {
+                    deleteShared(filePath, null, null);
+                }
+            }
+        } catch (Throwable e) {
+            LOG.log(Level.WARNING, "Error sweeping missing shared files", e);
         }
     }
 
-    private FileDescriptor cursorToFileDescriptor(Cursor c) {
-        FileDescriptor fd = new FileDescriptor();
-
-        int col = -1;
+    private void insertShared(final ContentValues values, final Runnable done, Runnable failed) {
+        writer.insert(values, new Runnable() {
+            @Override
+            public void run() {
+                sharedFiles.add(values.getAsString(Columns.FILE_PATH), values.getAsByte(Columns.FILE_TYPE));
+                if (done != null) {
+                    done.run();
+                }
+            }
+        }, failed);
+    }
 
-        col = c.getColumnIndex(Columns.ID);
-        if (col != -1) {
-            fd.id = c.getInt(col);
-        }
+    private void deleteShared(final String filePath, final Runnable done, Runnable failed) {
+        writer.delete(Columns.FILE_PATH + " = ?", new String[] { filePath }, new Runnable() {
+            @Override
+            public void run() {
+                sharedFiles.remove(filePath);
+                if (done != null) {
+                    done.run();
+                }
+            }
+        }, failed);
+    }
 
-        col = c.getColumnIndex(Columns.FILE_TYPE);
-        if (col != -1) {
-            fd.fileType = c.getByte(col);
-        }
+    private void deleteSharedStartingWith(final String prefix) {
+        writer.delete(Columns.FILE_PATH + " LIKE ? ESCAPE '" + DatabaseUtils.LIKE_ESCAPE + "'", new String[] { DatabaseUtils.escapeLike(prefix) + "%" }, new Runnable() {
+            @Override
+            public void run() {
+                sharedFiles.removeStartingWith(prefix);
+            }
+        }, null);
+    }
 
-        col = c.getColumnIndex(Columns.FILE_PATH);
-        if (col != -1) {
-            fd.filePath = c.getString(col);
+    /**
+     * Called when the contents of a file change on disk, if the file is shared
+     * its metadata is scanned again.
+     */
+    public void onFileModified(String path) {
+        if (isFileShared(path)) {
+            shareFile(path, true, false);
         }
+    }
 
-        col = c.getColumnIndex(Columns.FILE_SIZE);
-        if (col != -1) {
-            fd.fileSize = c.getLong(col);
-        }
+    public void deleteFolderFilesFromShareTable(String folderPath) {
+        deleteSharedStartingWith(folderPath);
+    }
 
-        col = c.getColumnIndex(Columns.MIME);
-        if (col != -1) {
-            fd.mime = c.getString(col);
-        }
+    public FileDescriptor getSharedFileDescriptor(byte fileType, int fileId) {
+        try {
+            String where = Columns.FILE_TYPE + " = ? AND " + Columns.ID + " = ? AND " + Columns.SHARED + " = ?";
+            String[] whereArgs = new String[] { String.valueOf(fileType), String.valueOf(fileId), String.valueOf(true) };
 
-        col = c.getColumnIndex(Columns.DATE_ADDED);
-        if (col != -1) {
-            fd.dateAdded = c.getLong(col);
-        }
+            List<FileDescriptor> fds = querySharedFiles(where, whereArgs);
 
-        col = c.getColumnIndex(Columns.DATE_MODIFIED);
-        if (col != -1) {
-            fd.dateModified = c.getLong(col);
-        }
+            return fds.size() > 0 ? fds.get(0) : null;
 
-        col = c.getColumnIndex(Columns.SHARED);
-        if (col != -1) {
-            fd.shared = c.getBoolean(col);
+        } catch (Throwable e) {
+            LOG.log(Level.WARNING, "General failure getting files", e);
         }
 
-        col = c.getColumnIndex(Columns.TITLE);
-        if (col != -1) {
-            fd.title = c.getString(col);
-        }
+        return null;
+    }
 
-        col = c.getColumnIndex(Columns.ARTIST);
-        if (col != -1) {
-            fd.artist = c.getString(col);
-        }
+    /**
+     * Rows are decoded straight into file descriptors, the ones of files that don't
+     * exist anymore are left out and removed from the share table.
+     */
+    private List<FileDescriptor> querySharedFiles(String where, String[] whereArgs) {
+        return querySharedFiles(where, whereArgs, null, 0, new FileDescriptorMapper());
+    }
 
-        col = c.getColumnIndex(Columns.ALBUM);
-        if (col != -1) {
-            fd.album = c.getString(col);
-        }
+    private List<FileDescriptor> querySharedFiles(String where, String[] whereArgs, String sortOrder, int limit, FileDescriptorMapper mapper) {
+        List<FileDescriptor> rows = ShareFilesDB.intance().query(FileDescriptorMapper.COLUMNS, where, whereArgs, sortOrder, limit, mapper);
 
-        col = c.getColumnIndex(Columns.YEAR);
-        if (col != -1) {
-            fd.year = c.getString(col);
+        // the disk is checked once the cursor is closed, not while it holds a connection
+        List<FileDescriptor> fds = new ArrayList<FileDescriptor>(rows.size());
+        for (FileDescriptor fd : rows) {
+            if (new File(fd.filePath).exists()) {
+                fds.add(fd);
+            } else {
+                deleteShared(fd.filePath, null, null);
+            }
         }
 
-        return fd;
+        return fds;
     }
 
-    public FileDescriptor getSharedFileDescriptor(byte fileType, int fileId) {
-        FileDescriptor result = null;
-
-        Cursor c = null;
-
-        try {
-            ShareFilesDB db = ShareFilesDB.intance();
+    /**
+     * Decodes share table rows, counting them and keeping the last id for paging.
+     */
+    private static final class FileDescriptorMapper implements RowMapper<FileDescriptor> {
+
+        // the mapper reads the columns by position
+        static final String[] COLUMNS = new String[] { Columns.ID, Columns.FILE_TYPE, Columns.FILE_PATH, Columns.FILE_SIZE, Columns.MIME, Columns.DATE_ADDED, Columns.DATE_MODIFIED, Columns.SHARED, Columns.TITLE, Columns.ARTIST, Columns.ALBUM, Columns.YEAR };
+
+        int rows;
+        int lastId;
+
+        @Override
+        public FileDescriptor map(Cursor c) {
+            rows++;
+            lastId = c.getInt(1);
+
+            FileDescriptor fd = new FileDescriptor();
+
+            fd.id = c.getInt(1);
+            fd.fileType = c.getByte(2);
+            fd.filePath = c.getString(3);
+            fd.fileSize = c.getLong(4);
+            fd.mime = c.getString(5);
+            fd.dateAdded = c.getLong(6);
+            fd.dateModified = c.getLong(7);
+            fd.shared = c.getBoolean(8);
+            fd.title = c.getString(9);
+            fd.artist = c.getString(10);
+            fd.album = c.getString(11);
+            fd.year = c.getString(12);
+
+            return fd;
+        }
+    }
 
-            String[] columns = new String[] { Columns.ID, Columns.FILE_TYPE, Columns.FILE_PATH, Columns.FILE_SIZE, Columns.MIME, Columns.DATE_ADDED, Columns.DATE_MODIFIED, Columns.SHARED, Columns.TITLE, Columns.ARTIST, Columns.ALBUM, Columns.YEAR };
-            String where = Columns.FILE_TYPE + " = ? AND " + Columns.ID + " = ? AND " + Columns.SHARED + " = ?";
-            String[] whereArgs = new String[] { String.valueOf(fileType), String.valueOf(fileId), String.valueOf(true) };
+    /**
+     * Shows the progress of big share operations in the library status bar,
+     * at most a few times per second.
+     */
+    private static final class ScanProgressStatus implements ScanPipeline.ProgressListener {
 
-            c = db.query(columns, where, whereArgs, null);
+        private static final long MIN_UPDATE_INTERVAL_MS = 250;
 
-            List<FileDescriptor> fds = filteredOutBadRows(c);
+        private long lastUpdate;
+        private boolean showing;
 
-            return fds.size() > 0 ? fds.get(0) : null;
+        @Override
+        public synchronized void onProgress(int completed, int total) {
+            if (completed >= total) {
+                if (showing) {
+                    showing = false;
+                    LibraryMediator.instance().getLibrarySearch().revertStatus();
+                }
+                return;
+            }
 
-        } catch (Throwable e) {
-            LOG.log(Level.WARNING, "General failure getting files", e);
-        } finally {
-            if (c != null) {
-                c.close();
+            long now = System.currentTimeMillis();
+            if (total > 1 && now - lastUpdate > MIN_UPDATE_INTERVAL_MS) {
+                lastUpdate = now;
+                showing = true;
+                LibraryMediator.instance().getLibrarySearch().pushStatus(I18n.tr("Sharing") + " " + completed + "/" + total);
             }
         }
-
-        return result;
     }
 }
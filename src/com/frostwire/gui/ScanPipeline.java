@@ -0,0 +1,180 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2014, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.frostwire.gui;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.limewire.concurrent.ExecutorsHelper;
+
+/**
+ * Runs the metadata extraction of the files being shared on a bounded pool of
+ * workers.
+ * <p>
+ * Tasks for the same path run one after the other in submission order, so a share
+ * followed by an unshare of a file can't be reordered, tasks for different paths run
+ * in parallel. At most <code>capacity</code> tasks can be pending, {@link #submit(String, Task)}
+ * blocks after that until the workers catch up.
+ *
+ * @author gubatron
+ * @author aldenml
+ *
+ */
+final class ScanPipeline {
+
+    private static final Logger LOG = Logger.getLogger(ScanPipeline.class.getName());
+
+    private final ExecutorService workers;
+    private final Semaphore permits;
+
+    /**
+     * Tasks waiting for a previous task of the same path, guarded by itself.
+     */
+    private final Map<String, LinkedList<Runnable>> serialQueues;
+
+    private final AtomicInteger generation;
+    private final AtomicInteger submitted;
+    private final AtomicInteger completed;
+
+    private volatile ProgressListener progressListener;
+
+    public ScanPipeline(int workerCount, int capacity) {
+        this.workers = ExecutorsHelper.newFixedSizeThreadPool(Math.max(1, workerCount), "ScanPipeline");
+        this.permits = new Semaphore(Math.max(1, capacity));
+        this.serialQueues = new HashMap<String, LinkedList<Runnable>>();
+        this.generation = new AtomicInteger();
+        this.submitted = new AtomicInteger();
+        this.completed = new AtomicInteger();
+    }
+
+    public void setProgressListener(ProgressListener listener) {
+        this.progressListener = listener;
+    }
+
+    /**
+     * Queues the task, blocking if the pipeline is full.
+     */
+    public void submit(final String path, final Task task) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        submitted.incrementAndGet();
+
+        final int taskGeneration = generation.get();
+
+        Runnable r = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (taskGeneration == generation.get()) {
+                        task.run();
+                    } else {
+                        task.cancelled();
+                    }
+                } catch (Throwable e) {
+                    LOG.log(Level.WARNING, "Error scanning file: " + path, e);
+                } finally {
+                    permits.release();
+                    taskFinished();
+                    scheduleNext(path);
+                }
+            }
+        };
+
+        synchronized (serialQueues) {
+            LinkedList<Runnable> queue = serialQueues.get(path);
+            if (queue != null) {
+                queue.add(r);
+                return;
+            }
+            serialQueues.put(path, new LinkedList<Runnable>());
+        }
+
+        workers.execute(r);
+    }
+
+    /**
+     * Cancels all the tasks submitted so far that haven't started yet, their
+     * {@link Task#cancelled()} is called instead.
+     */
+    public void cancelPending() {
+        generation.incrementAndGet();
+    }
+
+    private void scheduleNext(String path) {
+        Runnable next;
+
+        synchronized (serialQueues) {
+            LinkedList<Runnable> queue = serialQueues.get(path);
+            next = queue != null ? queue.poll() : null;
+            if (next == null) {
+                serialQueues.remove(path);
+                return;
+            }
+        }
+
+        workers.execute(next);
+    }
+
+    private void taskFinished() {
+        int done = completed.incrementAndGet();
+        int total = submitted.get();
+
+        if (done == total) {
+            // batch finished, next progress starts from zero
+            submitted.addAndGet(-done);
+            completed.addAndGet(-done);
+        }
+
+        ProgressListener listener = progressListener;
+        if (listener != null) {
+            try {
+                listener.onProgress(done, total);
+            } catch (Throwable e) {
+                LOG.log(Level.WARNING, "Error reporting scan progress", e);
+            }
+        }
+    }
+
+    public interface Task {
+
+        void run();
+
+        void cancelled();
+    }
+
+    public interface ProgressListener {
+
+        /**
+         * Called from the worker threads after every task, <code>completed == total</code>
+         * when there is nothing left to scan.
+         */
+        void onProgress(int completed, int total);
+    }
+}
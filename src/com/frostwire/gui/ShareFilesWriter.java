@@ -0,0 +1,192 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2014, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.frostwire.gui;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.limewire.concurrent.ThreadExecutor;
+
+import com.frostwire.content.ContentValues;
+import com.frostwire.core.providers.ShareFilesDB;
+
+/**
+ * Consumer side of the share pipeline. Scanned rows and deletes are queued by
+ * the threads parsing metadata and written by a single thread, in the order they
+ * were queued, grouping consecutive operations of the same kind in one transaction.
+ * <p>
+ * The queue is bounded, producers block when the database falls behind. If a batch
+ * fails its operations are retried one by one, only the ones written are notified
+ * as done, the others as failed.
+ *
+ * @author gubatron
+ * @author aldenml
+ *
+ */
+final class ShareFilesWriter {
+
+    private static final Logger LOG = Logger.getLogger(ShareFilesWriter.class.getName());
+
+    private static final int QUEUE_CAPACITY = 1000;
+    private static final int MAX_BATCH_SIZE = 500;
+
+    private final BlockingQueue<Operation> queue;
+
+    public ShareFilesWriter() {
+        this.queue = new LinkedBlockingQueue<Operation>(QUEUE_CAPACITY);
+
+        Thread t = ThreadExecutor.newManagedThread(new Runnable() {
+            @Override
+            public void run() {
+                processQueue();
+            }
+        }, "ShareFilesWriter");
+        t.start();
+    }
+
+    /**
+     * Queues the row for insertion, <code>done</code> (if not null) runs in the writer thread once it is written,
+     * <code>failed</code> (if not null) if it can't be.
+     */
+    public void insert(ContentValues values, Runnable done, Runnable failed) {
+        put(new Operation(values, null, null, done, failed));
+    }
+
+    /**
+     * Queues a delete, <code>done</code> (if not null) runs in the writer thread once it is executed,
+     * <code>failed</code> (if not null) if it can't be.
+     */
+    public void delete(String where, String[] whereArgs, Runnable done, Runnable failed) {
+        put(new Operation(null, where, whereArgs, done, failed));
+    }
+
+    private void put(Operation op) {
+        try {
+            queue.put(op);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void processQueue() {
+        List<Operation> batch = new ArrayList<Operation>(MAX_BATCH_SIZE);
+
+        while (true) {
+            try {
+                batch.add(queue.take());
+                queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+
+                write(batch);
+            } catch (InterruptedException e) {
+                return;
+            } catch (Throwable e) {
+                LOG.log(Level.WARNING, "Error writing to share table", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<Operation> batch) {
+        ShareFilesDB db = ShareFilesDB.intance();
+
+        int i = 0;
+        while (i < batch.size()) {
+            Operation first = batch.get(i);
+            int j = i + 1;
+
+            boolean written;
+
+            if (first.values != null) {
+                List<ContentValues> rows = new ArrayList<ContentValues>();
+                rows.add(first.values);
+                while (j < batch.size() && batch.get(j).values != null) {
+                    rows.add(batch.get(j++).values);
+                }
+                written = db.insert(rows) >= 0;
+            } else {
+                List<String[]> argsList = new ArrayList<String[]>();
+                argsList.add(first.whereArgs);
+                while (j < batch.size() && batch.get(j).values == null && batch.get(j).where.equals(first.where)) {
+                    argsList.add(batch.get(j++).whereArgs);
+                }
+                written = db.delete(first.where, argsList) >= 0;
+            }
+
+            if (!written) {
+                LOG.warning("Share table batch of " + (j - i) + " operations failed, retrying one by one");
+            }
+
+            for (int k = i; k < j; k++) {
+                Operation op = batch.get(k);
+
+                // the batch was rolled back as a whole
+                boolean ok = written || writeSingle(db, op);
+
+                runCallback(ok ? op.done : op.failed);
+            }
+
+            i = j;
+        }
+    }
+
+    private boolean writeSingle(ShareFilesDB db, Operation op) {
+        try {
+            if (op.values != null) {
+                return db.insert(op.values) >= 0;
+            } else {
+                return db.delete(op.where, op.whereArgs) >= 0;
+            }
+        } catch (Throwable e) {
+            LOG.log(Level.WARNING, "Error writing to share table", e);
+            return false;
+        }
+    }
+
+    private void runCallback(Runnable r) {
+        if (r != null) {
+            try {
+                r.run();
+            } catch (Throwable e) {
+                LOG.log(Level.WARNING, "Error notifying share table write", e);
+            }
+        }
+    }
+
+    private static final class Operation {
+
+        public final ContentValues values;
+        public final String where;
+        public final String[] whereArgs;
+        public final Runnable done;
+        public final Runnable failed;
+
+        public Operation(ContentValues values, String where, String[] whereArgs, Runnable done, Runnable failed) {
+            this.values = values;
+            this.where = where;
+            this.whereArgs = whereArgs;
+            this.done = done;
+            this.failed = failed;
+        }
+    }
+}
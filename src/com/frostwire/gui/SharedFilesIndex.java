@@ -0,0 +1,263 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2014, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.frostwire.gui;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.frostwire.core.providers.ShareFilesDB;
+import com.frostwire.core.providers.ShareFilesDB.Columns;
+import com.frostwire.database.Cursor;
+
+/**
+ * In memory view of the shared rows of the share table, path to file type, with
+ * the number of shared files per type kept up to date on every change.
+ * <p>
+ * It is loaded from the database once, in background at startup, and from then on it's
+ * only updated by {@link Librarian} after its writes reach the database. The queries
+ * don't wait for the load, they are asked while painting. The rows read by the load can
+ * be older than the writes made meanwhile, so those writes are recorded and applied
+ * again over the rows read.
+ * Every change bumps a version number, peers browsing the shared files use it to
+ * tell if the list changed since they last saw it.
+ *
+ * @author gubatron
+ * @author aldenml
+ *
+ */
+final class SharedFilesIndex {
+
+    private static final Logger LOG = Logger.getLogger(SharedFilesIndex.class.getName());
+
+    // room for all the Constants.FILE_TYPE_* values, torrents included
+    private static final int NUM_FILE_TYPES = 16;
+
+    private final Map<String, Byte> paths;
+    private final AtomicIntegerArray counts;
+    private final AtomicLong version;
+
+    private volatile boolean loaded;
+
+    // the writes made while loading, guarded by written, not used once loaded
+    private final Set<String> written;
+    private final Set<String> removed;
+    private final List<String> removedPrefixes;
+
+    public SharedFilesIndex() {
+        this.paths = new ConcurrentHashMap<String, Byte>();
+        this.counts = new AtomicIntegerArray(NUM_FILE_TYPES);
+        this.version = new AtomicLong();
+        this.written = new HashSet<String>();
+        this.removed = new HashSet<String>();
+        this.removedPrefixes = new ArrayList<String>();
+    }
+
+    /**
+     * Changes every time a path is added or removed, or its file type changes.
+     */
+    public long version() {
+        return version.get();
+    }
+
+    public int count(byte fileType) {
+        return fileType >= 0 && fileType < NUM_FILE_TYPES ? counts.get(fileType) : 0;
+    }
+
+    public int count() {
+        int total = 0;
+        for (int i = 0; i < NUM_FILE_TYPES; i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    public boolean contains(String filePath) {
+        return paths.containsKey(filePath);
+    }
+
+    /**
+     * A snapshot of the shared paths, for the periodic sweeps. Waits for the load.
+     */
+    public List<String> paths() {
+        ensureLoaded();
+
+        return new ArrayList<String>(paths.keySet());
+    }
+
+    public void add(String filePath, byte fileType) {
+        if (!loaded) {
+            synchronized (written) {
+                written.add(filePath);
+                removed.remove(filePath);
+            }
+        }
+
+        put(filePath, fileType);
+    }
+
+    public void remove(String filePath) {
+        if (!loaded) {
+            synchronized (written) {
+                removed.add(filePath);
+                written.remove(filePath);
+            }
+        }
+
+        delete(filePath);
+    }
+
+    /**
+     * Removes all the paths starting with <code>prefix</code>.
+     */
+    public void removeStartingWith(String prefix) {
+        if (!loaded) {
+            synchronized (written) {
+                removedPrefixes.add(prefix);
+                for (Iterator<String> it = written.iterator(); it.hasNext();) {
+                    if (it.next().startsWith(prefix)) {
+                        it.remove();
+                    }
+                }
+            }
+        }
+
+        for (String path : paths.keySet()) {
+            if (path.startsWith(prefix)) {
+                delete(path);
+            }
+        }
+    }
+
+    private void put(String filePath, byte fileType) {
+        Byte previous = paths.put(filePath, fileType);
+
+        if (previous != null) {
+            decrement(previous);
+        }
+        increment(fileType);
+        version.incrementAndGet();
+    }
+
+    private void delete(String filePath) {
+        Byte previous = paths.remove(filePath);
+
+        if (previous != null) {
+            decrement(previous);
+            version.incrementAndGet();
+        }
+    }
+
+    private void increment(byte fileType) {
+        if (fileType >= 0 && fileType < NUM_FILE_TYPES) {
+            counts.incrementAndGet(fileType);
+        }
+    }
+
+    private void decrement(byte fileType) {
+        if (fileType >= 0 && fileType < NUM_FILE_TYPES) {
+            counts.decrementAndGet(fileType);
+        }
+    }
+
+    private void ensureLoaded() {
+        if (!loaded) {
+            load();
+        }
+    }
+
+    /**
+     * Loads the shared files from the database, if not loaded yet.
+     */
+    public synchronized void load() {
+        if (loaded) {
+            return;
+        }
+
+        Cursor c = null;
+
+        try {
+            ShareFilesDB db = ShareFilesDB.intance();
+
+            String[] columns = new String[] { Columns.FILE_PATH, Columns.FILE_TYPE };
+            String where = Columns.SHARED + " = ?";
+            String[] whereArgs = new String[] { String.valueOf(true) };
+
+            c = db.query(columns, where, whereArgs, null);
+
+            if (c != null) {
+                int filePathCol = c.getColumnIndex(Columns.FILE_PATH);
+                int fileTypeCol = c.getColumnIndex(Columns.FILE_TYPE);
+
+                while (c.moveToNext()) {
+                    String filePath = c.getString(filePathCol);
+                    // rows added by a write that finished while loading are already here
+                    if (!paths.containsKey(filePath)) {
+                        put(filePath, c.getByte(fileTypeCol));
+                    }
+                }
+            }
+        } catch (Throwable e) {
+            LOG.log(Level.WARNING, "Failed to load the shared files", e);
+        } finally {
+            if (c != null) {
+                c.close();
+            }
+        }
+
+        synchronized (written) {
+            applyRemovals();
+            written.clear();
+            removed.clear();
+            removedPrefixes.clear();
+            loaded = true;
+        }
+    }
+
+    /**
+     * Removes again what was removed while loading, the load may have read the rows
+     * before they were deleted. What was written since stays. Called holding written.
+     */
+    private void applyRemovals() {
+        for (String filePath : removed) {
+            delete(filePath);
+        }
+
+        if (!removedPrefixes.isEmpty()) {
+            for (String path : paths.keySet()) {
+                if (!written.contains(path)) {
+                    for (String prefix : removedPrefixes) {
+                        if (path.startsWith(prefix)) {
+                            delete(path);
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
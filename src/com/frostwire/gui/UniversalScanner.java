@@ -33,8 +33,8 @@ import com.frostwire.content.ContentValues;
 import com.frostwire.core.Constants;
 import com.frostwire.core.providers.ShareFilesDB;
 import com.frostwire.core.providers.ShareFilesDB.Columns;
+import com.frostwire.gui.library.tags.TagsCache;
 import com.frostwire.gui.library.tags.TagsData;
-import com.frostwire.gui.library.tags.TagsReader;
 import com.frostwire.util.MimeDetector;
 import com.limegroup.gnutella.MediaType;
 
@@ -51,28 +51,38 @@ public class UniversalScanner {
     }
 
     public void scan(String filePath) {
+        ShareFilesDB db = ShareFilesDB.intance();
+
+        db.insert(parse(filePath));
+    }
+
+    /**
+     * Reads the metadata of the file and returns the share table row for it,
+     * without touching the database.
+     */
+    public ContentValues parse(String filePath) {
         try {
             MediaType mt = MediaType.getMediaTypeForExtension(FilenameUtils.getExtension(filePath));
 
             if (mt == null) {
-                scanDocument(filePath, true);
+                return scanDocument(filePath, true);
             } else if (mt.equals(MediaType.getAudioMediaType())) {
-                scanAudio(filePath, true);
+                return scanAudio(filePath, true);
             } else if (mt.equals(MediaType.getImageMediaType())) {
-                scanPictures(filePath, true);
+                return scanPictures(filePath, true);
             } else if (mt.equals(MediaType.getVideoMediaType())) {
-                scanVideo(filePath, true); // until we integrate mplayer for video and research metadata extraction
+                return scanVideo(filePath, true); // until we integrate mplayer for video and research metadata extraction
             } else {
-                scanDocument(filePath, true);
+                return scanDocument(filePath, true);
             }
 
         } catch (Throwable e) {
-            scanDocument(filePath, true);
             LOG.log(Level.WARNING, "Error scanning file, scanned as document: " + filePath, e);
+            return scanDocument(filePath, true);
         }
     }
 
-    private void scanPictures(String filePath, boolean shared) {
+    private ContentValues scanPictures(String filePath, boolean shared) {
         File file = new File(filePath);
 
         ContentValues values = new ContentValues();
@@ -118,9 +128,7 @@ public class UniversalScanner {
             values.put(Columns.YEAR, "");
         }
 
-        ShareFilesDB db = ShareFilesDB.intance();
-
-        db.insert(values);
+        return values;
     }
 
     private void fillCommonValues(ContentValues values, byte fileType, String filePath, File file, String mime, boolean shared) {
@@ -133,7 +141,7 @@ public class UniversalScanner {
         values.put(Columns.SHARED, shared);
     }
 
-    private void scanAudio(String filePath, boolean shared) {
+    private ContentValues scanAudio(String filePath, boolean shared) {
         File file = new File(filePath);
 
         ContentValues values = new ContentValues();
@@ -142,7 +150,7 @@ public class UniversalScanner {
         fillCommonValues(values, Constants.FILE_TYPE_AUDIO, filePath, file, mime, shared);
 
         try {
-            TagsData mt = new TagsReader(file).parse();
+            TagsData mt = TagsCache.instance().parse(file);
 
             values.put(Columns.TITLE, mt.getTitle());
             values.put(Columns.ARTIST, mt.getArtist());
@@ -157,21 +165,19 @@ public class UniversalScanner {
             values.put(Columns.YEAR, "");
         }
 
-        ShareFilesDB db = ShareFilesDB.intance();
-
-        db.insert(values);
+        return values;
     }
 
-    private void scanVideo(String filePath, boolean shared) {
+    private ContentValues scanVideo(String filePath, boolean shared) {
         String mime = "video/" + FilenameUtils.getExtension(filePath);
-        scanBasic(Constants.FILE_TYPE_VIDEOS, filePath, mime, shared);
+        return scanBasic(Constants.FILE_TYPE_VIDEOS, filePath, mime, shared);
     }
 
-    private void scanDocument(String filePath, boolean shared) {
-        scanBasic(Constants.FILE_TYPE_DOCUMENTS, filePath, getMimeType(filePath), shared);
+    private ContentValues scanDocument(String filePath, boolean shared) {
+        return scanBasic(Constants.FILE_TYPE_DOCUMENTS, filePath, getMimeType(filePath), shared);
     }
 
-    private void scanBasic(byte fileType, String filePath, String mime, boolean shared) {
+    private ContentValues scanBasic(byte fileType, String filePath, String mime, boolean shared) {
         File file = new File(filePath);
 
         String displayName = FilenameUtils.getBaseName(file.getName());
@@ -185,9 +191,7 @@ public class UniversalScanner {
         values.put(Columns.ALBUM, "");
         values.put(Columns.YEAR, "");
 
-        ShareFilesDB db = ShareFilesDB.intance();
-
-        db.insert(values);
+        return values;
     }
 
     private static String getMimeType(String filePath) {
@@ -29,6 +29,7 @@ import com.frostwire.transfers.TransferState;
 import org.limewire.util.OSUtils;
 
 import com.frostwire.gui.library.LibraryMediator;
+import com.frostwire.gui.library.LibraryWatcher;
 import com.frostwire.torrent.PaymentOptions;
 import com.limegroup.gnutella.gui.GUIMediator;
 import com.limegroup.gnutella.gui.GUIUtils;
@@ -108,6 +109,8 @@ final class BTDownloadDataLine extends AbstractDataLine<BTDownload> {
     private boolean _notification;
 
     private PaymentOptions paymentOptions;
+
+    private BTDownloadStatus status;
     
     /**
      * Column index for the file name.
@@ -236,7 +239,14 @@ final class BTDownloadDataLine extends AbstractDataLine<BTDownload> {
             return false;
         }
 
-        return initializer.getState() == TransferState.SEEDING;
+        return _transferState == TransferState.SEEDING;
+    }
+
+    /**
+     * The status last shown.
+     */
+    public BTDownloadStatus getStatus() {
+        return status;
     }
 
     /**
@@ -276,7 +286,7 @@ final class BTDownloadDataLine extends AbstractDataLine<BTDownload> {
         case UPLOAD_SPEED_INDEX:
             return new Double(_uploadSpeed);
         case TIME_INDEX:
-            if (initializer.isCompleted()) {
+            if (this.status.completed) {
                 return new TimeRemainingHolder(0);
             } else if (_downloadSpeed < 0.001 && !(initializer instanceof BTPeerHttpUpload)) {
                 return new TimeRemainingHolder(-1);
@@ -351,16 +361,16 @@ final class BTDownloadDataLine extends AbstractDataLine<BTDownload> {
     public String[] getToolTipArray(int col) {
         String[] info = new String[11];
         String name = getInitializeObject().getDisplayName();
-        String status = I18n.tr("Status") + ": " + I18n.tr(getInitializeObject().getState().name());
-        String progress = I18n.tr("Progress") + ": " + getInitializeObject().getProgress() + "%";
-        String downSpeed = I18n.tr("Down Speed") + ": " + GUIUtils.rate2speed(getInitializeObject().getDownloadSpeed());
-        String upSpeed = I18n.tr("Up Speed") + ": " + GUIUtils.rate2speed(getInitializeObject().getUploadSpeed());
-        String downloaded = I18n.tr("Downloaded") + ": " + new SizeHolder(getInitializeObject().getBytesReceived());
-        String uploaded = I18n.tr("Uploaded") + ": " + new SizeHolder(getInitializeObject().getBytesSent());
-        String peers = I18n.tr("Peers") + ": " + getInitializeObject().getPeersString();
-        String seeds = I18n.tr("Seeds") + ": " + getInitializeObject().getSeedsString();
-        String size = I18n.tr("Size") + ": " + new SizeHolder(getInitializeObject().getSize());
-        String time = I18n.tr("ETA") + ": " + (getInitializeObject().isCompleted() ? new TimeRemainingHolder(0) : (getInitializeObject().getDownloadSpeed() < 0.001 ? new TimeRemainingHolder(-1) : new TimeRemainingHolder(getInitializeObject().getETA())));
+        String status = I18n.tr("Status") + ": " + I18n.tr(_transferState.name());
+        String progress = I18n.tr("Progress") + ": " + _progress + "%";
+        String downSpeed = I18n.tr("Down Speed") + ": " + GUIUtils.rate2speed(_downloadSpeed);
+        String upSpeed = I18n.tr("Up Speed") + ": " + GUIUtils.rate2speed(_uploadSpeed);
+        String downloaded = I18n.tr("Downloaded") + ": " + new SizeHolder(_download);
+        String uploaded = I18n.tr("Uploaded") + ": " + new SizeHolder(_upload);
+        String peers = I18n.tr("Peers") + ": " + _peers;
+        String seeds = I18n.tr("Seeds") + ": " + _seeds;
+        String size = I18n.tr("Size") + ": " + new SizeHolder(_size);
+        String time = I18n.tr("ETA") + ": " + (this.status.completed ? new TimeRemainingHolder(0) : (_downloadSpeed < 0.001 ? new TimeRemainingHolder(-1) : new TimeRemainingHolder(_timeLeft)));
 
         info[0] = name;
         info[1] = status;
@@ -399,35 +409,46 @@ final class BTDownloadDataLine extends AbstractDataLine<BTDownload> {
      * @implements DataLine interface
      */
     public void update() {
-        _transferState = initializer.getState();
-        _progress = initializer.getProgress();
-        _download = initializer.getBytesReceived();
-        _upload = initializer.getBytesSent();
-        _downloadSpeed = initializer.getDownloadSpeed();
-        _uploadSpeed = initializer.getUploadSpeed();
-        _timeLeft = initializer.getETA();
-        _seeds = initializer.getSeedsString();
-        _peers = initializer.getPeersString();
-        _shareRatio = initializer.getShareRatio();
-        _seedToPeerRatio = initializer.getSeedToPeerRatio();
-        _size = initializer.getSize();
-        dateCreated = initializer.getDateCreated();
-        
-        if (initializer.getCopyrightLicenseBroker() != null && 
-            initializer.getCopyrightLicenseBroker().license != null) {
-            license = initializer.getCopyrightLicenseBroker().license.getName();
-        } else {
-            license = "";
+        update(BTDownloadStatus.of(initializer));
+    }
+
+    /**
+     * Shows the status taken by {@link BTDownloadModel} outside the Swing thread.
+     * 
+     * @return false if nothing changed since the last one
+     */
+    boolean update(BTDownloadStatus status) {
+        if (status.sameAs(this.status)) {
+            return false;
         }
+
+        this.status = status;
+
+        _transferState = status.state;
+        _progress = status.progress;
+        _download = status.bytesReceived;
+        _upload = status.bytesSent;
+        _downloadSpeed = status.downloadSpeed;
+        _uploadSpeed = status.uploadSpeed;
+        _timeLeft = status.eta;
+        _seeds = status.seeds;
+        _peers = status.peers;
+        _shareRatio = status.shareRatio;
+        _seedToPeerRatio = status.seedToPeerRatio;
+        _size = status.size;
+        dateCreated = status.dateCreated;
+        license = status.license;
         
-        if (initializer.getPaymentOptions() != null) {
-            paymentOptions = initializer.getPaymentOptions();
+        if (status.paymentOptions != null) {
+            paymentOptions = status.paymentOptions;
         }
 
 
-        if (getInitializeObject().isCompleted()) {
+        if (status.completed) {
             showNotification();
         }
+
+        return true;
     }
 
     private void showNotification() {
@@ -442,7 +463,9 @@ final class BTDownloadDataLine extends AbstractDataLine<BTDownload> {
                     actions = new Action[] { new LaunchAction(file), new ShowInLibraryAction(file) };
                 }
                 notification = new Notification(theDownload.getDisplayName(), getIcon(), actions);
-                LibraryMediator.instance().getLibraryExplorer().clearDirectoryHolderCaches();
+                if (!LibraryWatcher.instance().isRunning()) {
+                    LibraryMediator.instance().getLibraryExplorer().clearDirectoryHolderCaches();
+                }
 
                 iTunesScanIfNecessaryForNonTorrentDownloadItem(theDownload, file);
 
@@ -44,6 +44,7 @@ import com.frostwire.util.JsonUtils;
 import com.limegroup.gnutella.gui.GUIMediator;
 import com.limegroup.gnutella.gui.I18n;
 import com.limegroup.gnutella.gui.PaddedPanel;
+import com.limegroup.gnutella.gui.ScheduledRefreshListener;
 import com.limegroup.gnutella.gui.actions.LimeAction;
 import com.limegroup.gnutella.gui.dnd.FileTransfer;
 import com.limegroup.gnutella.gui.search.GenericCellEditor;
@@ -71,10 +72,18 @@ import java.util.List;
  * @author gubatron
  * @author aldenml
  */
-public final class BTDownloadMediator extends AbstractTableMediator<BTDownloadRowFilteredModel, BTDownloadDataLine, BTDownload> {
+public final class BTDownloadMediator extends AbstractTableMediator<BTDownloadRowFilteredModel, BTDownloadDataLine, BTDownload> implements ScheduledRefreshListener {
 
     private static final Logger LOG = Logger.getLogger(BTDownloadMediator.class);
 
+    private static final long REFRESH_INTERVAL = 1000;
+
+    /**
+     * Transfers that didn't change in the last pass are read again after this, in case
+     * one starts moving by itself, like a seed getting a peer.
+     */
+    private static final long IDLE_REFRESH_INTERVAL = 5000;
+
     public static final int MIN_HEIGHT = 150;
 
     /**
@@ -114,6 +123,9 @@ public final class BTDownloadMediator extends AbstractTableMediator<BTDownloadRo
 
     private PlaySingleMediaFileAction playSingleMediaFileAction;
 
+    // when the last pass started, only used in the Swing thread
+    private long lastRefresh;
+
     /**
      * Overriden to have different default values for tooltips.
      */
@@ -268,42 +280,61 @@ public final class BTDownloadMediator extends AbstractTableMediator<BTDownloadRo
         restoreSorting();
     }
 
+    /**
+     * The status of the transfers is read in the background even if the table is not
+     * showing, or the window minimized, the status line shows the number of active
+     * ones and finished downloads are notified.
+     */
+    @Override
+    public void refresh() {
+        doRefresh();
+    }
+
+    public long getRefreshInterval() {
+        return REFRESH_INTERVAL;
+    }
+
+    /**
+     * Skips the pass while the last one found every transfer as it was, the actions
+     * on the transfers refresh right away anyway.
+     */
+    public boolean needsRefresh() {
+        return DATA_MODEL.isStale() || System.currentTimeMillis() - lastRefresh >= IDLE_REFRESH_INTERVAL;
+    }
+
     /**
      * Override the default refreshing so that we can
      * set the clear button appropriately.
      */
     public void doRefresh() {
-        DATA_MODEL.refresh();
+        lastRefresh = System.currentTimeMillis();
 
-        int[] selRows = TABLE.getSelectedRows();
-
-        if (selRows.length > 0) {
-            BTDownloadDataLine dataLine = DATA_MODEL.get(selRows[0]);
+        DATA_MODEL.refreshInBackground(new Runnable() {
+            public void run() {
+                updateActions();
 
-            BTDownload dl = dataLine.getInitializeObject();
+                if (TABLE.isShowing()) {
+                    resort();
+                }
+            }
+        });
+    }
 
-            boolean resumable = dl.isResumable();
-            boolean pausable = dl.isPausable();
-            boolean completed = dl.isCompleted();
+    private void updateActions() {
+        int[] selRows = TABLE.getSelectedRows();
 
-            resumeAction.setEnabled(resumable);
-            pauseAction.setEnabled(pausable);
-            exploreAction.setEnabled(completed);
-            showInLibraryAction.setEnabled(completed);
-        }
+        if (selRows.length > 0) {
+            BTDownloadStatus status = DATA_MODEL.get(selRows[0]).getStatus();
 
-        int n = DATA_MODEL.getRowCount();
-        boolean anyClearable = false;
-        for (int i = n - 1; i >= 0; i--) {
-            BTDownloadDataLine btDownloadDataLine = DATA_MODEL.get(i);
-            BTDownload initializeObject = btDownloadDataLine.getInitializeObject();
-            if (isClearable(initializeObject)) {
-                anyClearable = true;
-                break;
+            if (status != null) {
+                resumeAction.setEnabled(status.resumable);
+                pauseAction.setEnabled(status.pausable);
+                exploreAction.setEnabled(status.completed);
+                showInLibraryAction.setEnabled(status.completed);
             }
         }
 
-        clearInactiveAction.setEnabled(anyClearable);
+        clearInactiveAction.setEnabled(DATA_MODEL.isAnyClearable());
 
         try {
             if (OSUtils.isWindows() && UpdateManagerSettings.SHOW_FROSTWIRE_RECOMMENDATIONS.getValue()) {
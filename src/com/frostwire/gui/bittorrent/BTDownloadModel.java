@@ -1,14 +1,26 @@
 package com.frostwire.gui.bittorrent;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-import com.frostwire.transfers.TransferState;
+import org.limewire.concurrent.ExecutorsHelper;
 
+import com.limegroup.gnutella.gui.GUIMediator;
 import com.limegroup.gnutella.gui.tables.BasicDataLineModel;
 
 /**
  * This class provides access to the <tt>ArrayList</tt> that stores all of the
  * downloads displayed in the download window.
+ * <p>
+ * The status of the downloads is read in a background thread, see
+ * {@link #refreshInBackground(Runnable)}, the counts of active transfers are the ones
+ * of the last pass.
  */
 public class BTDownloadModel extends BasicDataLineModel<BTDownloadDataLine, BTDownload> {
 
@@ -19,12 +31,27 @@ public class BTDownloadModel extends BasicDataLineModel<BTDownloadDataLine, BTDo
 
     private HashSet<String> _hashDownloads;
 
+    private static final ExecutorService STATUS_EXECUTOR = ExecutorsHelper.newProcessingQueue("BTDownloadStatus");
+
+    private final AtomicBoolean refreshing;
+
+    private volatile int activeDownloads;
+    private volatile int activeUploads;
+    private volatile boolean anyClearable;
+
+    // what the last pass found, only used in the Swing thread
+    private boolean changed;
+    private int appliedRows;
+    private int appliedHidden;
+
     /**
      * Initialize the model by setting the class of its DataLines.
      */
     BTDownloadModel() {
         super(BTDownloadDataLine.class);
         _hashDownloads = new HashSet<String>();
+        refreshing = new AtomicBoolean(false);
+        changed = true;
     }
 
     /**
@@ -35,36 +62,161 @@ public class BTDownloadModel extends BasicDataLineModel<BTDownloadDataLine, BTDo
     }
 
     int getActiveDownloads() {
-        int size = getRowCount();
-        int count = 0;
+        return activeDownloads;
+    }
 
-        for (int i = 0; i < size; i++) {
-            BTDownload downloader = get(i).getInitializeObject();
-            if (!downloader.isCompleted() && downloader.getState() == TransferState.DOWNLOADING) {
-                count++;
+    /**
+     * Counts the rows hidden by filters too.
+     */
+    int getActiveUploads() {
+        return activeUploads;
+    }
+
+    boolean isAnyClearable() {
+        return anyClearable;
+    }
+
+    /**
+     * True if the last pass changed a row or a counter, or rows were added or removed
+     * since. A pass over transfers that are all idle would read the same status again.
+     */
+    boolean isStale() {
+        return changed || getRowCount() != appliedRows || getHiddenLines().size() != appliedHidden;
+    }
+
+    /**
+     * Lines not shown because of a filter, still counted as active uploads.
+     */
+    protected List<BTDownloadDataLine> getHiddenLines() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Reads the status of all the downloads in a background thread, updating the counters
+     * in the same pass, then shows it in the rows that changed, in the Swing thread.
+     * Calls made while the previous one is still in progress are ignored.
+     * 
+     * @param done called in the Swing thread after the rows are updated, can be null
+     */
+    void refreshInBackground(final Runnable done) {
+        if (!refreshing.compareAndSet(false, true)) {
+            return;
+        }
+
+        final List<BTDownloadDataLine> visible = new ArrayList<BTDownloadDataLine>(_list);
+        final List<BTDownloadDataLine> hidden = new ArrayList<BTDownloadDataLine>(getHiddenLines());
+
+        try {
+            STATUS_EXECUTOR.execute(new Runnable() {
+                public void run() {
+                    collect(visible, hidden, done);
+                }
+            });
+        } catch (Throwable e) {
+            refreshing.set(false);
+        }
+    }
+
+    private void collect(List<BTDownloadDataLine> visible, List<BTDownloadDataLine> hidden, final Runnable done) {
+        final Map<BTDownloadDataLine, BTDownloadStatus> statuses = new IdentityHashMap<BTDownloadDataLine, BTDownloadStatus>(visible.size() + hidden.size());
+
+        int downloads = 0;
+        int uploads = 0;
+        boolean clearable = false;
+
+        try {
+            for (BTDownloadDataLine line : visible) {
+                BTDownload dl = line.getInitializeObject();
+                BTDownloadStatus status = BTDownloadStatus.of(dl);
+                statuses.put(line, status);
+
+                if (status.isActiveDownload()) {
+                    downloads++;
+                }
+                if (status.isActiveUpload(dl)) {
+                    uploads++;
+                }
+                clearable |= status.isClearable();
+            }
+
+            for (BTDownloadDataLine line : hidden) {
+                BTDownload dl = line.getInitializeObject();
+                BTDownloadStatus status = BTDownloadStatus.of(dl);
+                statuses.put(line, status);
+
+                if (status.isActiveUpload(dl)) {
+                    uploads++;
+                }
             }
+        } catch (Throwable e) {
+            // a download removed while reading it, the next pass will be fine
+            refreshing.set(false);
+            return;
         }
-        return count;
+
+        final int activeDownloads = downloads;
+        final int activeUploads = uploads;
+        final boolean anyClearable = clearable;
+
+        GUIMediator.safeInvokeLater(new Runnable() {
+            public void run() {
+                try {
+                    boolean countersChanged = BTDownloadModel.this.activeDownloads != activeDownloads || BTDownloadModel.this.activeUploads != activeUploads || BTDownloadModel.this.anyClearable != anyClearable;
+
+                    BTDownloadModel.this.activeDownloads = activeDownloads;
+                    BTDownloadModel.this.activeUploads = activeUploads;
+                    BTDownloadModel.this.anyClearable = anyClearable;
+
+                    changed = apply(statuses) || countersChanged;
+                    appliedRows = getRowCount();
+                    appliedHidden = getHiddenLines().size();
+
+                    if (done != null) {
+                        done.run();
+                    }
+                } finally {
+                    refreshing.set(false);
+                }
+            }
+        });
     }
 
-    int getActiveUploads() {
-        int size = getRowCount();
-        int count = 0;
+    /**
+     * Rows added after the status was read are left for the next pass.
+     * 
+     * @return true if a row changed or was left for the next pass
+     */
+    private boolean apply(Map<BTDownloadDataLine, BTDownloadStatus> statuses) {
+        int first = -1;
+        int last = -1;
+        boolean changed = false;
 
+        int size = getRowCount();
         for (int i = 0; i < size; i++) {
-            BTDownload downloader = get(i).getInitializeObject();
-            // special case for peer uploads, needs refactor
-            if (downloader instanceof BTPeerHttpUpload) {
-                if (downloader.getState() == TransferState.SEEDING) {
-                    count++;
-                }
-            } else {
-                if (downloader.isCompleted() && downloader.getState() == TransferState.SEEDING) {
-                    count++;
+            BTDownloadDataLine line = get(i);
+            BTDownloadStatus status = statuses.get(line);
+            if (status == null) {
+                changed = true;
+            } else if (line.update(status)) {
+                if (first == -1) {
+                    first = i;
                 }
+                last = i;
+            }
+        }
+
+        for (BTDownloadDataLine line : getHiddenLines()) {
+            BTDownloadStatus status = statuses.get(line);
+            if (status == null || line.update(status)) {
+                changed = true;
             }
         }
-        return count;
+
+        if (first != -1) {
+            fireTableRowsUpdated(first, last);
+        }
+
+        return changed || first != -1;
     }
 
     public int getTotalDownloads() {
@@ -3,8 +3,6 @@ package com.frostwire.gui.bittorrent;
 import java.util.ArrayList;
 import java.util.List;
 
-import com.frostwire.transfers.TransferState;
-
 import com.frostwire.gui.filters.TableLineFilter;
 import com.limegroup.gnutella.settings.BittorrentSettings;
 
@@ -127,28 +125,7 @@ public class BTDownloadRowFilteredModel extends BTDownloadModel {
     }
 
     @Override
-    int getActiveUploads() {
-        int count = super.getActiveUploads();
-
-        int size = HIDDEN.size();
-
-        try {
-            for (int i = 0; i < size; i++) {
-                BTDownload downloader = HIDDEN.get(i).getInitializeObject();
-                // special case for peer uploads, needs refactor
-                if (downloader instanceof BTPeerHttpUpload) {
-                    if (downloader.getState() == TransferState.SEEDING) {
-                        count++;
-                    }
-                } else {
-                    if (downloader.isCompleted() && downloader.getState() == TransferState.SEEDING) {
-                        count++;
-                    }
-                }
-            }
-        } catch (Throwable e) {
-            // ignore, multi-threading issues?
-        }
-        return count;
+    protected List<BTDownloadDataLine> getHiddenLines() {
+        return HIDDEN;
     }
 }
@@ -0,0 +1,111 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2014, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.frostwire.gui.bittorrent;
+
+import java.util.Date;
+
+import com.frostwire.torrent.CopyrightLicenseBroker;
+import com.frostwire.torrent.PaymentOptions;
+import com.frostwire.transfers.TransferState;
+
+/**
+ * What the transfers table shows of a download at one point in time, read with one
+ * call to each getter, outside the Swing thread.
+ * 
+ * @author gubatron
+ * @author aldenml
+ *
+ */
+final class BTDownloadStatus {
+
+    public final TransferState state;
+    public final boolean completed;
+    public final boolean resumable;
+    public final boolean pausable;
+    public final int progress;
+    public final long bytesReceived;
+    public final long bytesSent;
+    public final double downloadSpeed;
+    public final double uploadSpeed;
+    public final long eta;
+    public final String seeds;
+    public final String peers;
+    public final String shareRatio;
+    public final String seedToPeerRatio;
+    public final long size;
+    public final Date dateCreated;
+    public final String license;
+    public final PaymentOptions paymentOptions;
+
+    private BTDownloadStatus(BTDownload dl) {
+        state = dl.getState();
+        completed = dl.isCompleted();
+        resumable = dl.isResumable();
+        pausable = dl.isPausable();
+        progress = dl.getProgress();
+        bytesReceived = dl.getBytesReceived();
+        bytesSent = dl.getBytesSent();
+        downloadSpeed = dl.getDownloadSpeed();
+        uploadSpeed = dl.getUploadSpeed();
+        eta = dl.getETA();
+        seeds = dl.getSeedsString();
+        peers = dl.getPeersString();
+        shareRatio = dl.getShareRatio();
+        seedToPeerRatio = dl.getSeedToPeerRatio();
+        size = dl.getSize();
+        dateCreated = dl.getDateCreated();
+
+        CopyrightLicenseBroker broker = dl.getCopyrightLicenseBroker();
+        license = broker != null && broker.license != null ? broker.license.getName() : "";
+
+        paymentOptions = dl.getPaymentOptions();
+    }
+
+    public static BTDownloadStatus of(BTDownload dl) {
+        return new BTDownloadStatus(dl);
+    }
+
+    public boolean isActiveDownload() {
+        return !completed && state == TransferState.DOWNLOADING;
+    }
+
+    public boolean isActiveUpload(BTDownload dl) {
+        // special case for peer uploads, needs refactor
+        if (dl instanceof BTPeerHttpUpload) {
+            return state == TransferState.SEEDING;
+        } else {
+            return completed && state == TransferState.SEEDING;
+        }
+    }
+
+    public boolean isClearable() {
+        return state != TransferState.SEEDING && state != TransferState.CHECKING && completed;
+    }
+
+    /**
+     * If the table would show the same for both.
+     */
+    public boolean sameAs(BTDownloadStatus o) {
+        return o != null && state == o.state && completed == o.completed && resumable == o.resumable && pausable == o.pausable && progress == o.progress && bytesReceived == o.bytesReceived && bytesSent == o.bytesSent && downloadSpeed == o.downloadSpeed && uploadSpeed == o.uploadSpeed && eta == o.eta && size == o.size && equals(seeds, o.seeds) && equals(peers, o.peers) && equals(shareRatio, o.shareRatio) && equals(seedToPeerRatio, o.seedToPeerRatio) && equals(dateCreated, o.dateCreated) && equals(license, o.license) && paymentOptions == o.paymentOptions;
+    }
+
+    private static boolean equals(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
@@ -18,7 +18,9 @@
 
 package com.frostwire.gui.httpserver;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.util.List;
 import java.util.Map;
 import java.util.zip.GZIPOutputStream;
@@ -26,11 +28,20 @@ import java.util.zip.GZIPOutputStream;
 import com.frostwire.core.FileDescriptor;
 import com.frostwire.gui.Librarian;
 import com.frostwire.logging.Logger;
-import com.frostwire.util.JsonUtils;
 import com.frostwire.util.URLUtils;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonWriter;
+import com.sun.net.httpserver.Headers;
 import com.sun.net.httpserver.HttpExchange;
 
 /**
+ * Lists the shared files of a type, as <code>{"files":[...]}</code>.
+ * <p>
+ * The list is read from the database and written to the response a page at a time,
+ * never held whole in memory. The <code>ETag</code> is the version of the shared files,
+ * so a peer asking again with <code>If-None-Match</code> gets a 304 if nothing changed.
+ * 
  * @author gubatron
  * @author aldenml
  *
@@ -39,11 +50,20 @@ class BrowseHandler extends AbstractHandler {
 
     private static final Logger LOG = Logger.getLogger(BrowseHandler.class);
 
+    private static final int PAGE_SIZE = 500;
+
+    /**
+     * The shared files version starts over on every run.
+     */
+    private static final String RUN_TAG = Long.toHexString(System.currentTimeMillis());
+
+    private final Gson gson = new GsonBuilder().create();
+
     @Override
     public void handle(HttpExchange exchange) throws IOException {
         assertUPnPActive();
 
-        GZIPOutputStream os = null;
+        JsonWriter writer = null;
 
         byte type = -1;
 
@@ -59,38 +79,55 @@ class BrowseHandler extends AbstractHandler {
                 return;
             }
 
-            String response = getResponse(exchange, type);
+            // taken before reading, changes made while streaming make the tag older, never newer
+            String etag = "\"" + RUN_TAG + "-" + Long.toHexString(Librarian.instance().getSharedFilesVersion()) + "-" + type + "\"";
 
-            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
-            exchange.getResponseHeaders().set("Content-Type", "text/json; charset=UTF-8");
+            Headers responseHeaders = exchange.getResponseHeaders();
+            responseHeaders.set("ETag", etag);
+            responseHeaders.set("Cache-Control", "no-cache");
+
+            if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(Code.HTTP_NOT_MODIFIED, -1);
+                return;
+            }
+
+            responseHeaders.set("Content-Encoding", "gzip");
+            responseHeaders.set("Content-Type", "text/json; charset=UTF-8");
+            // chunked
             exchange.sendResponseHeaders(Code.HTTP_OK, 0);
 
-            os = new GZIPOutputStream(exchange.getResponseBody());
+            writer = new JsonWriter(new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(exchange.getResponseBody()), "UTF-8")));
 
-            os.write(response.getBytes("UTF-8"));
-            os.finish();
+            writeFiles(writer, type);
 
         } catch (IOException e) {
             LOG.warn("Error browsing files type=" + type);
             throw e;
         } finally {
-            if (os != null) {
-                os.close();
+            if (writer != null) {
+                writer.close();
             }
             exchange.close();
         }
     }
 
-    private String getResponse(HttpExchange exchange, byte fileType) {
-        List<FileDescriptor> fileDescriptors = Librarian.instance().getSharedFiles(fileType);
+    private void writeFiles(JsonWriter writer, byte fileType) throws IOException {
+        writer.beginObject();
+        writer.name("files");
+        writer.beginArray();
 
-        FileDescriptorList list = new FileDescriptorList();
-        list.files = fileDescriptors;
+        int afterId = 0;
+        List<FileDescriptor> page;
+        do {
+            page = Librarian.instance().getSharedFiles(fileType, afterId, PAGE_SIZE);
 
-        return JsonUtils.toJson(list);
-    }
+            for (FileDescriptor fd : page) {
+                gson.toJson(fd, FileDescriptor.class, writer);
+                afterId = fd.id;
+            }
+        } while (page.size() == PAGE_SIZE);
 
-    static final class FileDescriptorList {
-        public List<FileDescriptor> files;
+        writer.endArray();
+        writer.endObject();
     }
 }
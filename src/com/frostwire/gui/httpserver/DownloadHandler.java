@@ -23,7 +23,17 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
 import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 
 import com.frostwire.core.FileDescriptor;
 import com.frostwire.gui.Librarian;
@@ -31,9 +41,18 @@ import com.frostwire.gui.bittorrent.BTDownloadMediator;
 import com.frostwire.gui.transfers.PeerHttpUpload;
 import com.frostwire.logging.Logger;
 import com.frostwire.util.URLUtils;
+import com.sun.net.httpserver.Headers;
 import com.sun.net.httpserver.HttpExchange;
 
 /**
+ * Serves shared files, with support for single byte ranges (<code>Range</code> and
+ * <code>If-Range</code>), <code>HEAD</code> and validation by <code>ETag</code> and
+ * <code>Last-Modified</code>, so that peers can resume interrupted transfers.
+ * <p>
+ * Transfers run in their own bounded executor, not in the one of the http server,
+ * a request arriving when it's full gets a 503. The file is streamed with
+ * {@link FileChannel#transferTo(long, long, WritableByteChannel)} in big chunks.
+ * 
  * @author gubatron
  * @author aldenml
  *
@@ -42,20 +61,38 @@ class DownloadHandler extends AbstractHandler {
 
     private static final Logger LOG = Logger.getLogger(DownloadHandler.class);
 
+    private static final long TRANSFER_CHUNK_SIZE = 256 * 1024;
+
+    private static final String HTTP_DATE_FORMAT = "EEE, dd MMM yyyy HH:mm:ss zzz";
+
+    /**
+     * Returned by {@link #parseRange(String, long)} when the range can't be served.
+     */
+    private static final long[] UNSATISFIABLE = new long[0];
+
+    private final ExecutorService transfers;
+
+    public DownloadHandler(ExecutorService transfers) {
+        this.transfers = transfers;
+    }
+
     @Override
     public void handle(final HttpExchange exchange) throws IOException {
-        new Thread(new Runnable() {
-            @Override
-            public void run() {
-                try {
-                    internalHandler(exchange);
-                } catch (IOException e) {
-                    LOG.warn("DownloadHandler async handle error", e);
+        try {
+            transfers.execute(new Runnable() {
+                public void run() {
+                    try {
+                        internalHandler(exchange);
+                    } catch (IOException e) {
+                        LOG.warn("DownloadHandler handle error", e);
+                    }
                 }
-            }
-        }).start();
+            });
+        } catch (RejectedExecutionException e) {
+            sendBusyResponse(exchange);
+        }
     }
-    
+
     public void internalHandler(HttpExchange exchange) throws IOException {
         assertUPnPActive();
 
@@ -68,17 +105,17 @@ class DownloadHandler extends AbstractHandler {
         PeerHttpUpload upload = null;
 
         try {
-            
+
             Map<String, String> splitQuery = URLUtils.splitQuery(exchange.getRequestURI().getQuery());
 
             if (splitQuery.containsKey("type")) {
                 type = Byte.parseByte(splitQuery.get("type"));
             }
-            
+
             if (splitQuery.containsKey("id")) {
                 id = Integer.parseInt(splitQuery.get("id"));
             }
-            
+
             if (type == -1 || id == -1) {
                 exchange.sendResponseHeaders(Code.HTTP_BAD_REQUEST, 0);
                 return;
@@ -94,39 +131,83 @@ class DownloadHandler extends AbstractHandler {
                 throw new IOException("There is no such file shared");
             }
 
+            File file = new File(fd.filePath);
+
+            long length = file.length();
+            long lastModified = file.lastModified();
+            String etag = "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+
+            Headers requestHeaders = exchange.getRequestHeaders();
+            Headers responseHeaders = exchange.getResponseHeaders();
+
+            responseHeaders.add("Content-Type", fd.mime);
+            responseHeaders.add("Accept-Ranges", "bytes");
+            responseHeaders.add("ETag", etag);
+            responseHeaders.add("Last-Modified", formatHttpDate(lastModified));
+
+            if (isNotModified(requestHeaders, etag, lastModified)) {
+                exchange.sendResponseHeaders(Code.HTTP_NOT_MODIFIED, -1);
+                return;
+            }
+
+            long[] range = null;
+            String ifRange = requestHeaders.getFirst("If-Range");
+            if (ifRange == null || ifRange.equals(etag) || isSameDate(ifRange, lastModified)) {
+                range = parseRange(requestHeaders.getFirst("Range"), length);
+            }
+
+            if (range == UNSATISFIABLE) {
+                responseHeaders.add("Content-Range", "bytes */" + length);
+                exchange.sendResponseHeaders(Code.HTTP_REQUESTED_RANGE_NOT_SATISFIABLE, -1);
+                return;
+            }
+
+            int code = Code.HTTP_OK;
+            long start = 0;
+            long contentLength = length;
+
+            if (range != null) {
+                code = Code.HTTP_PARTIAL;
+                start = range[0];
+                contentLength = range[1] - range[0] + 1;
+                responseHeaders.add("Content-Range", "bytes " + range[0] + "-" + range[1] + "/" + length);
+            }
+
+            if ("HEAD".equalsIgnoreCase(exchange.getRequestMethod())) {
+                // the server only sends the headers for a HEAD, the length has to be set by hand
+                responseHeaders.add("Content-Length", String.valueOf(contentLength));
+                exchange.sendResponseHeaders(code, -1);
+                return;
+            }
+
             //upload = TransferManager.instance().upload(fd);
             upload = BTDownloadMediator.instance().upload(fd);
 
-            exchange.getResponseHeaders().add("Content-Type", fd.mime);
-            
-            File file = new File(fd.filePath);
-            
-            exchange.sendResponseHeaders(Code.HTTP_OK, file.length());
+            // 0 would mean chunked encoding, -1 is no body
+            exchange.sendResponseHeaders(code, contentLength > 0 ? contentLength : -1);
 
             os = exchange.getResponseBody();
 
             fis = new FileInputStream(file);
 
-            byte[] buffer = new byte[4 * 1024];
-            int n;
-            int count = 0;
+            FileChannel fc = fis.getChannel();
+            WritableByteChannel out = Channels.newChannel(os);
 
-            while ((n = fis.read(buffer, 0, buffer.length)) != -1) {
-                os.write(buffer, 0, n);
-                upload.addBytesSent(n);
-                
-                if (upload.isCanceled()) {
-                    try {
-                        throw new IOException("Upload cancelled");
-                    } finally {
-                        os.close();
-                    }
+            long position = start;
+            long remaining = contentLength;
+
+            while (remaining > 0) {
+                long n = fc.transferTo(position, Math.min(remaining, TRANSFER_CHUNK_SIZE), out);
+                if (n <= 0) {
+                    throw new IOException("File changed while uploading");
                 }
-                
-                count += n;
-                if (count > 4096) {
-                    count = 0;
-                    Thread.yield();
+
+                position += n;
+                remaining -= n;
+                upload.addBytesSent((int) n);
+
+                if (upload.isCanceled()) {
+                    throw new IOException("Upload cancelled");
                 }
             }
 
@@ -149,6 +230,100 @@ class DownloadHandler extends AbstractHandler {
         }
     }
 
+    private boolean isNotModified(Headers requestHeaders, String etag, long lastModified) {
+        String ifNoneMatch = requestHeaders.getFirst("If-None-Match");
+        if (ifNoneMatch != null) {
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                if (tag.equals("*") || tag.equals(etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        String ifModifiedSince = requestHeaders.getFirst("If-Modified-Since");
+        if (ifModifiedSince != null) {
+            Date date = parseHttpDate(ifModifiedSince);
+            return date != null && lastModified / 1000 <= date.getTime() / 1000;
+        }
+
+        return false;
+    }
+
+    private boolean isSameDate(String httpDate, long lastModified) {
+        Date date = parseHttpDate(httpDate);
+        return date != null && date.getTime() / 1000 == lastModified / 1000;
+    }
+
+    /**
+     * Parses a single <code>bytes=</code> range, multiple ranges are served as the whole file.
+     * 
+     * @return the first and last byte positions, inclusive, null to serve the whole file
+     * or {@link #UNSATISFIABLE}.
+     */
+    private static long[] parseRange(String header, long length) {
+        if (header == null) {
+            return null;
+        }
+
+        header = header.trim();
+        if (!header.startsWith("bytes=") || header.indexOf(',') != -1) {
+            return null;
+        }
+
+        String spec = header.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash == -1) {
+            return null;
+        }
+
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+
+            long start;
+            long end;
+
+            if (first.length() == 0) {
+                // suffix range, the last n bytes
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0) {
+                    return UNSATISFIABLE;
+                }
+                start = Math.max(0, length - suffix);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(first);
+                end = last.length() == 0 ? length - 1 : Math.min(Long.parseLong(last), length - 1);
+            }
+
+            if (start < 0 || start >= length || end < start) {
+                return UNSATISFIABLE;
+            }
+
+            return new long[] { start, end };
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static String formatHttpDate(long time) {
+        SimpleDateFormat format = new SimpleDateFormat(HTTP_DATE_FORMAT, Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return format.format(new Date(time));
+    }
+
+    private static Date parseHttpDate(String value) {
+        SimpleDateFormat format = new SimpleDateFormat(HTTP_DATE_FORMAT, Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        try {
+            return format.parse(value.trim());
+        } catch (ParseException e) {
+            return null;
+        }
+    }
+
     private void close(Closeable c) {
         if (c != null) {
             try {
@@ -159,8 +334,14 @@ class DownloadHandler extends AbstractHandler {
         }
     }
 
-    //    private void sendBusyResponse(HttpExchange exchange) throws IOException {
-    //        exchange.getResponseHeaders().add("Retry-After", "10"); // retry in 10 seconds
-    //        exchange.sendResponseHeaders(Code.HTTP_UNAVAILABLE, 0);
-    //    }
+    private void sendBusyResponse(HttpExchange exchange) {
+        try {
+            exchange.getResponseHeaders().add("Retry-After", "10"); // retry in 10 seconds
+            exchange.sendResponseHeaders(Code.HTTP_UNAVAILABLE, -1);
+        } catch (IOException e) {
+            LOG.warn("Error sending busy response", e);
+        } finally {
+            exchange.close();
+        }
+    }
 }
@@ -19,9 +19,14 @@
 package com.frostwire.gui.httpserver;
 
 import java.net.InetSocketAddress;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.limewire.concurrent.ExecutorsHelper;
+
 import com.sun.net.httpserver.HttpServer;
 
 /**
@@ -33,7 +38,27 @@ public class HttpServerManager {
 
     private static final Logger LOG = Logger.getLogger(HttpServerManager.class.getName());
 
+    /**
+     * Requests being served at the same time, more wait in the queue.
+     */
+    private static final int MAX_HANDLER_THREADS = 8;
+
+    private static final int MAX_QUEUED_REQUESTS = 32;
+
+    /**
+     * Downloads being served at the same time, they have their own threads so that
+     * /finger and /browse never wait behind them.
+     */
+    private static final int MAX_UPLOAD_THREADS = 4;
+
+    /**
+     * Downloads waiting for a thread, more get a 503.
+     */
+    private static final int MAX_QUEUED_UPLOADS = 8;
+
     private HttpServer httpServer;
+    private ThreadPoolExecutor executor;
+    private ThreadPoolExecutor uploadExecutor;
 
     public HttpServerManager() {
     }
@@ -48,9 +73,20 @@ public class HttpServerManager {
 
             httpServer = HttpServer.create(new InetSocketAddress(port), 10);
 
+            uploadExecutor = new ThreadPoolExecutor(MAX_UPLOAD_THREADS, MAX_UPLOAD_THREADS, 30L, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(MAX_QUEUED_UPLOADS), ExecutorsHelper.daemonThreadFactory("HttpServer-Upload"), new ThreadPoolExecutor.AbortPolicy());
+            uploadExecutor.allowCoreThreadTimeOut(true);
+
             httpServer.createContext("/finger", new FingerHandler());
             httpServer.createContext("/browse", new BrowseHandler());
-            httpServer.createContext("/download", new DownloadHandler());
+            httpServer.createContext("/download", new DownloadHandler(uploadExecutor));
+
+            // when full, the request runs in the dispatcher thread, which stops accepting
+            // new connections until it's done, only short requests get here, downloads
+            // are just handed to the upload executor
+            executor = new ThreadPoolExecutor(MAX_HANDLER_THREADS, MAX_HANDLER_THREADS, 30L, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(MAX_QUEUED_REQUESTS), ExecutorsHelper.daemonThreadFactory("HttpServer-Handler"), new ThreadPoolExecutor.CallerRunsPolicy());
+            executor.allowCoreThreadTimeOut(true);
+
+            httpServer.setExecutor(executor);
 
             httpServer.start();
 
@@ -71,5 +107,15 @@ public class HttpServerManager {
         }
 
         httpServer = null;
+
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+
+        if (uploadExecutor != null) {
+            uploadExecutor.shutdownNow();
+            uploadExecutor = null;
+        }
     }
 }
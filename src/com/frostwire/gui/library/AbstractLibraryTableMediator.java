@@ -29,6 +29,7 @@ import java.util.List;
 import javax.swing.Action;
 import javax.swing.JComponent;
 import javax.swing.JOptionPane;
+import javax.swing.JScrollBar;
 import javax.swing.table.TableCellRenderer;
 
 import com.frostwire.alexandria.Library;
@@ -71,6 +72,11 @@ abstract class AbstractLibraryTableMediator<T extends DataLineModel<E, I>, E ext
 
     private AdjustmentListener adjustmentListener;
 
+    /**
+     * Run when the table is scrolled near its end, to add the next page of results.
+     */
+    private Runnable scrolledToEndListener;
+
     protected AbstractLibraryTableMediator(String id) {
         super(id);
         GUIMediator.addRefreshListener(this);
@@ -196,7 +202,29 @@ abstract class AbstractLibraryTableMediator<T extends DataLineModel<E, I>, E ext
         return menu;
     }
 
+    /**
+     * The listener is run in the Swing thread each time the last visible page of rows is
+     * reached, and dropped when the table is cleared.
+     */
+    void setScrolledToEndListener(Runnable listener) {
+        scrolledToEndListener = listener;
+    }
+
+    @Override
+    public void clearTable() {
+        scrolledToEndListener = null;
+        super.clearTable();
+    }
+
     private void adjustmentListener_adjustmentValueChanged(AdjustmentEvent e) {
+        Runnable listener = scrolledToEndListener;
+        if (listener != null) {
+            JScrollBar bar = SCROLL_PANE.getVerticalScrollBar();
+            if (bar.getValue() + 2 * bar.getVisibleAmount() >= bar.getMaximum()) {
+                listener.run();
+            }
+        }
+
         try {
             int value = needToScrollTo;
             if (value >= 0) {
@@ -0,0 +1,319 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2014, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.frostwire.gui.library;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.imageio.ImageIO;
+
+import org.limewire.concurrent.ExecutorsHelper;
+import org.limewire.util.ByteUtils;
+import org.limewire.util.CommonUtils;
+
+import com.frostwire.gui.library.tags.TagsReader;
+import com.frostwire.logging.Logger;
+import com.limegroup.gnutella.gui.GUIMediator;
+
+/**
+ * Loads the cover art of audio files as thumbnails, in a single background thread.
+ * <p>
+ * Only the latest request is served, the ones made while the worker was busy are
+ * dropped, so moving fast through a list only decodes the file the selection ends in.
+ * Thumbnails are kept by path and modification time in a small in memory cache and
+ * in a folder of the user settings, files without artwork are remembered too.
+ *
+ * @author gubatron
+ * @author aldenml
+ *
+ */
+final class CoverArtLoader {
+
+    private static final Logger LOG = Logger.getLogger(CoverArtLoader.class);
+
+    public static final int THUMBNAIL_SIZE = 350;
+
+    private static final int MAX_CACHED_THUMBNAILS = 64;
+    private static final int MAX_DISK_THUMBNAILS = 2000;
+    private static final int WRITES_BETWEEN_PRUNES = 100;
+
+    /**
+     * Cached for the files without artwork.
+     */
+    private static final BufferedImage NO_ARTWORK = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+
+    private static final CoverArtLoader INSTANCE = new CoverArtLoader();
+
+    public static CoverArtLoader instance() {
+        return INSTANCE;
+    }
+
+    private final ExecutorService worker;
+    private final AtomicReference<Request> latest;
+    private final AtomicBoolean scheduled;
+    private final AtomicInteger generation;
+
+    /**
+     * Guarded by itself.
+     */
+    private final Map<String, BufferedImage> thumbnails;
+
+    private final File cacheDir;
+    private int diskWrites;
+
+    private CoverArtLoader() {
+        this.worker = ExecutorsHelper.newProcessingQueue("CoverArtLoader");
+        this.latest = new AtomicReference<Request>();
+        this.scheduled = new AtomicBoolean(false);
+        this.generation = new AtomicInteger();
+        this.thumbnails = new LinkedHashMap<String, BufferedImage>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 6453176419102340387L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, BufferedImage> eldest) {
+                return size() > MAX_CACHED_THUMBNAILS;
+            }
+        };
+        this.cacheDir = new File(CommonUtils.getUserSettingsDir(), "thumbnails");
+    }
+
+    /**
+     * Loads the thumbnail of the file, replacing any request not started yet. The listener
+     * is called in the Swing thread, with null if the file has no artwork, unless a newer
+     * request was made meanwhile, see {@link #cancel()}.
+     */
+    public void load(File file, Listener listener) {
+        Request request = new Request(file, listener, generation.incrementAndGet());
+
+        BufferedImage image = getCached(request.key);
+        if (image != null) {
+            // anything pending is older
+            latest.set(null);
+            deliver(request, image);
+            return;
+        }
+
+        latest.set(request);
+
+        if (scheduled.compareAndSet(false, true)) {
+            worker.execute(new Runnable() {
+                public void run() {
+                    serve();
+                }
+            });
+        }
+    }
+
+    /**
+     * Drops the pending request and the result of the one being served.
+     */
+    public void cancel() {
+        generation.incrementAndGet();
+        latest.set(null);
+    }
+
+    private void serve() {
+        scheduled.set(false);
+
+        Request request = latest.getAndSet(null);
+        if (request == null) {
+            return;
+        }
+
+        BufferedImage image = null;
+        try {
+            image = getThumbnail(request.key, request.file);
+        } catch (Throwable e) {
+            LOG.warn("Error loading cover art of " + request.file, e);
+        }
+
+        deliver(request, image);
+    }
+
+    private void deliver(final Request request, BufferedImage image) {
+        final BufferedImage result = image != NO_ARTWORK ? image : null;
+
+        GUIMediator.safeInvokeLater(new Runnable() {
+            public void run() {
+                if (request.generation == generation.get()) {
+                    request.listener.onLoaded(request.file, result);
+                }
+            }
+        });
+    }
+
+    private BufferedImage getCached(String key) {
+        synchronized (thumbnails) {
+            return thumbnails.get(key);
+        }
+    }
+
+    private BufferedImage getThumbnail(String key, File file) {
+        BufferedImage image = getCached(key);
+
+        if (image == null) {
+            File cached = new File(cacheDir, hash(key));
+            image = readCached(cached);
+
+            if (image == null) {
+                BufferedImage artwork = new TagsReader(file).getArtwork();
+                image = artwork != null ? scale(artwork) : NO_ARTWORK;
+                writeCached(cached, image);
+            }
+
+            synchronized (thumbnails) {
+                thumbnails.put(key, image);
+            }
+        }
+
+        return image;
+    }
+
+    private BufferedImage readCached(File cached) {
+        if (!cached.exists()) {
+            return null;
+        }
+
+        // an empty file for no artwork
+        if (cached.length() == 0) {
+            return NO_ARTWORK;
+        }
+
+        try {
+            BufferedImage image = ImageIO.read(cached);
+            // pruning goes by last use
+            cached.setLastModified(System.currentTimeMillis());
+            return image;
+        } catch (Throwable e) {
+            LOG.warn("Error reading cached thumbnail " + cached, e);
+            cached.delete();
+            return null;
+        }
+    }
+
+    private void writeCached(File cached, BufferedImage image) {
+        try {
+            if (!cacheDir.exists()) {
+                cacheDir.mkdirs();
+            }
+
+            if (image == NO_ARTWORK) {
+                cached.createNewFile();
+            } else {
+                ImageIO.write(image, "jpg", cached);
+            }
+
+            if (++diskWrites % WRITES_BETWEEN_PRUNES == 0) {
+                prune();
+            }
+        } catch (Throwable e) {
+            LOG.warn("Error caching thumbnail " + cached, e);
+        }
+    }
+
+    /**
+     * Removes the oldest thumbnails beyond the maximum, entries of modified files are
+     * never read again.
+     */
+    private void prune() {
+        File[] files = cacheDir.listFiles();
+        if (files == null || files.length <= MAX_DISK_THUMBNAILS) {
+            return;
+        }
+
+        Arrays.sort(files, new Comparator<File>() {
+            public int compare(File o1, File o2) {
+                long m1 = o1.lastModified();
+                long m2 = o2.lastModified();
+                return m1 < m2 ? -1 : (m1 == m2 ? 0 : 1);
+            }
+        });
+
+        for (int i = 0; i < files.length - MAX_DISK_THUMBNAILS; i++) {
+            files[i].delete();
+        }
+    }
+
+    /**
+     * Opaque, fits in {@link #THUMBNAIL_SIZE} keeping the aspect ratio, never scaled up.
+     */
+    private static BufferedImage scale(BufferedImage image) {
+        int w = image.getWidth();
+        int h = image.getHeight();
+
+        double ratio = Math.min(1.0, Math.min((double) THUMBNAIL_SIZE / w, (double) THUMBNAIL_SIZE / h));
+        int tw = Math.max(1, (int) Math.round(w * ratio));
+        int th = Math.max(1, (int) Math.round(h * ratio));
+
+        BufferedImage thumbnail = new BufferedImage(tw, th, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2 = thumbnail.createGraphics();
+        g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+        g2.drawImage(image, 0, 0, tw, th, null);
+        g2.dispose();
+
+        return thumbnail;
+    }
+
+    private static String hash(String key) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            return ByteUtils.encodeHex(md.digest(key.getBytes("UTF-8"))) + ".jpg";
+        } catch (Throwable e) {
+            // not going to happen
+            return Integer.toHexString(key.hashCode()) + ".jpg";
+        }
+    }
+
+    private static final class Request {
+
+        public final File file;
+        public final String key;
+        public final Listener listener;
+        public final int generation;
+
+        public Request(File file, Listener listener, int generation) {
+            this.file = file;
+            this.key = file.getAbsolutePath() + ":" + file.lastModified();
+            this.listener = listener;
+            this.generation = generation;
+        }
+    }
+
+    public interface Listener {
+
+        /**
+         * Called in the Swing thread.
+         *
+         * @param image the thumbnail, or null if the file has no artwork
+         */
+        void onLoaded(File file, BufferedImage image);
+    }
+}
@@ -18,8 +18,12 @@
 
 package com.frostwire.gui.library;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
 import java.net.InetAddress;
 import java.net.URI;
 import java.net.URL;
@@ -28,11 +32,13 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
+import java.util.zip.GZIPInputStream;
 
 import javax.swing.JOptionPane;
 
 import org.limewire.concurrent.ExecutorsHelper;
 import org.limewire.concurrent.ThreadExecutor;
+import org.limewire.util.FileUtils;
 import org.limewire.util.NetworkUtils;
 
 import com.frostwire.JsonEngine;
@@ -45,6 +51,9 @@ import com.frostwire.util.HttpClientFactory;
 import com.frostwire.util.ProgressFileEntity;
 import com.frostwire.util.UserAgentGenerator;
 import com.frostwire.util.ProgressFileEntity.ProgressFileEntityListener;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonReader;
 import com.limegroup.gnutella.gui.GUIMediator;
 import com.limegroup.gnutella.gui.I18n;
 import com.limegroup.gnutella.util.EncodingUtils;
@@ -69,7 +78,9 @@ public class Device {
     public static int ACTION_DOWNLOAD = 1;
     public static int ACTION_UPLOAD = 2;
 
-    private static JsonEngine JSON_ENGINE = new JsonEngine();
+    private static final int BROWSE_TIMEOUT = 10000;
+
+    private static final Gson GSON = new GsonBuilder().create();
 
     private final String udn;
     private InetAddress _address;
@@ -82,8 +93,11 @@ public class Device {
     private LocalPeer pingInfo;
 
     private boolean local;
-    
-    private final HttpClient httpClient;
+
+    /**
+     * The last list browsed, to reuse it when the peer answers it didn't change.
+     */
+    private volatile BrowseResult lastBrowse;
 
     public Device(String udn, InetAddress address, int port, Finger finger, LocalPeer pinfo) {
         this.udn = udn;
@@ -92,8 +106,6 @@ public class Device {
         this.finger = finger;
         this.pingInfo = pinfo;
         this.local = pinfo.local;
-        
-        this.httpClient = HttpClientFactory.newInstance();
     }
     
     /**
@@ -163,31 +175,89 @@ public class Device {
         _listener = listener;
     }
 
+    /**
+     * The files are parsed as they arrive. If the peer answers the list didn't change
+     * since the last browse of the same type, the previous list is returned.
+     */
     public List<FileDescriptor> browse(byte fileType) {
 
+        HttpURLConnection connection = null;
+        InputStream is = null;
+
         try {
 
-            String url = "http://" + _address.getHostAddress() + ":" + _port + "/browse?type=" + fileType;
-            String json = httpClient.get(url, 10000);
-            
-            if (json == null) {
+            URL url = new URL("http://" + _address.getHostAddress() + ":" + _port + "/browse?type=" + fileType);
+            connection = (HttpURLConnection) url.openConnection();
+            connection.setConnectTimeout(BROWSE_TIMEOUT);
+            connection.setReadTimeout(BROWSE_TIMEOUT);
+            connection.setUseCaches(false);
+            connection.setRequestProperty("User-Agent", UserAgentGenerator.getUserAgent());
+            connection.setRequestProperty("Accept-Encoding", "gzip");
+
+            BrowseResult last = lastBrowse;
+            if (last != null && last.fileType == fileType) {
+                connection.setRequestProperty("If-None-Match", last.etag);
+            }
+
+            int code = connection.getResponseCode();
+
+            if (code == HttpURLConnection.HTTP_NOT_MODIFIED && last != null && last.fileType == fileType) {
+                setTimestamp(System.currentTimeMillis());
+                return new ArrayList<FileDescriptor>(last.files);
+            }
+
+            if (code != HttpURLConnection.HTTP_OK) {
                 notifyOnActionFailed(ACTION_BROWSE, null);
                 return new ArrayList<FileDescriptor>();
             }
 
+            is = connection.getInputStream();
+            if ("gzip".equalsIgnoreCase(connection.getContentEncoding())) {
+                is = new GZIPInputStream(is);
+            }
+
+            List<FileDescriptor> files = readFiles(new JsonReader(new BufferedReader(new InputStreamReader(is, "UTF-8"))));
+
             setTimestamp(System.currentTimeMillis());
 
-            FileDescriptorList list = JSON_ENGINE.toObject(json, FileDescriptorList.class);
+            String etag = connection.getHeaderField("ETag");
+            lastBrowse = etag != null ? new BrowseResult(fileType, etag, files) : null;
 
-            return list.files;
+            return new ArrayList<FileDescriptor>(files);
 
         } catch (Exception e) {
             notifyOnActionFailed(ACTION_BROWSE, e);
+        } finally {
+            FileUtils.close(is);
+            if (connection != null) {
+                connection.disconnect();
+            }
         }
 
         return new ArrayList<FileDescriptor>();
     }
 
+    private static List<FileDescriptor> readFiles(JsonReader reader) throws IOException {
+        List<FileDescriptor> files = new ArrayList<FileDescriptor>();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals("files")) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    FileDescriptor fd = GSON.fromJson(reader, FileDescriptor.class);
+                    files.add(fd);
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return files;
+    }
+
     public URL getDownloadURL(int type, int id) {
         try {
 
@@ -355,6 +425,19 @@ public class Device {
         public void onActionFailed(Device device, int action, Throwable e);
     }
 
+    private static final class BrowseResult {
+
+        public final byte fileType;
+        public final String etag;
+        public final List<FileDescriptor> files;
+
+        public BrowseResult(byte fileType, String etag, List<FileDescriptor> files) {
+            this.fileType = fileType;
+            this.etag = etag;
+            this.files = files;
+        }
+    }
+
     private static List<File> flatFiles(File[] files) {
         Set<File> set = new HashSet<File>();
         for (File f : files) {
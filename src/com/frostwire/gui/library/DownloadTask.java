@@ -19,33 +19,80 @@ package com.frostwire.gui.library;
 
 import java.io.Closeable;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.net.HttpURLConnection;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Files;
-import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
-import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
-import com.frostwire.util.OSUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.limewire.concurrent.ExecutorsHelper;
 
 import com.frostwire.core.FileDescriptor;
+import com.frostwire.util.OSUtils;
+import com.frostwire.util.UserAgentGenerator;
 import com.limegroup.gnutella.gui.GUIMediator;
 import com.limegroup.gnutella.gui.I18n;
-import org.apache.commons.io.FilenameUtils;
-
+import com.limegroup.gnutella.settings.LibrarySettings;
+
+/**
+ * Downloads files from a device, several at a time, each one in its own connection.
+ * <p>
+ * Connections are kept alive between files and the data goes to disk through a file
+ * channel in big chunks. The progress is reported when the percentage changes and the
+ * status bar updated a few times per second at most.
+ * 
+ * @author gubatron
+ * @author aldenml
+ *
+ */
 public class DownloadTask extends DeviceTask {
 
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final int TIMEOUT = 10000;
+    private static final long MIN_STATUS_INTERVAL_MS = 500;
+
     private final File savePath;
     private final Device device;
     private final FileDescriptor[] fds;
 
-    private FileDescriptor currentFD;
+    private final AtomicInteger nextIndex;
+    private final AtomicLong totalWritten;
+    private final AtomicReference<Throwable> error;
+
+    /**
+     * Names of the files being downloaded, guarded by itself.
+     */
+    private final Set<File> reservedFiles;
+
+    private volatile FileDescriptor currentFD;
+    private volatile File lastFile;
+
+    private long totalBytes;
+    private long lastStatus;
 
     public DownloadTask(File savePath, Device device, FileDescriptor[] fds) {
         this.savePath = savePath;
         this.device = device;
         this.fds = fds;
+
+        this.nextIndex = new AtomicInteger();
+        this.totalWritten = new AtomicLong();
+        this.error = new AtomicReference<Throwable>();
+        this.reservedFiles = new HashSet<File>();
     }
 
     public FileDescriptor getCurrentFD() {
@@ -58,7 +105,7 @@ public class DownloadTask extends DeviceTask {
             return;
         }
 
-        File lastFile = null;
+        ExecutorService workers = null;
 
         try {
             setProgress(0);
@@ -67,72 +114,35 @@ public class DownloadTask extends DeviceTask {
                 savePath.mkdirs();
             }
 
-            long totalBytes = getTotalBytes();
-            long totalWritten = 0;
+            totalBytes = getTotalBytes();
 
-            for (int i = 0; i < fds.length; i++) {
-                if (!isRunning()) {
-                    return;
-                }
+            int numWorkers = Math.max(1, Math.min(LibrarySettings.LIBRARY_DEVICE_DOWNLOAD_CONNECTIONS.getValue(), fds.length));
+            workers = ExecutorsHelper.newFixedSizeThreadPool(numWorkers, "DownloadFromDevice");
 
-                currentFD = fds[i];
+            final CountDownLatch done = new CountDownLatch(numWorkers);
 
-                GUIMediator.safeInvokeLater(new Runnable() {
+            for (int i = 0; i < numWorkers; i++) {
+                workers.execute(new Runnable() {
                     public void run() {
-                        String status = String.format("%s from %s - %s", I18n.tr("Downloading"), device.getName(), currentFD.title);
-                        LibraryMediator.instance().getLibrarySearch().pushStatus(status);
+                        try {
+                            downloadFiles();
+                        } finally {
+                            done.countDown();
+                        }
                     }
                 });
+            }
 
-                URL url = new URL(device.getDownloadURL(currentFD));
-
-                InputStream is = null;
-                OutputStream fos = null;
-
-                try {
-                    is = url.openStream();
-
-                    String filename = OSUtils.escapeFilename(FilenameUtils.getName(currentFD.filePath));
-                    File file = buildFile(savePath, filename);
-                    Path incompleteFile = buildIncompleteFile(file).toPath();
-                    lastFile = file.getAbsoluteFile();
-
-                    fos = Files.newOutputStream(incompleteFile, StandardOpenOption.CREATE);// new FileOutputStream(incompleteFile);
-
-                    byte[] buffer = new byte[4 * 1024];
-                    int n = 0;
-
-                    while ((n = is.read(buffer, 0, buffer.length)) != -1) {
-                        if (!isRunning()) {
-                            return;
-                        }
-
-                        fos.write(buffer, 0, n);
-                        fos.flush();
-                        totalWritten += n;
-                        setProgress((int) ((totalWritten * 100) / totalBytes));
-
-                        if (getProgress() % 5 == 0) {
-                            GUIMediator.safeInvokeLater(new Runnable() {
-                                public void run() {
-                                    String status = String.format("%d%% %s from %s - %s", getProgress(), I18n.tr("Downloading"), device.getName(), currentFD.title);
-                                    LibraryMediator.instance().getLibrarySearch().pushStatus(status);
-                                }
-                            });
-                        }
-
-                        //System.out.println("Progress: " + getProgress() + " Total Written: " + totalWritten + " Total Bytes: " + totalBytes);
-                    }
+            done.await();
 
-                    close(fos);
-                    Files.move(incompleteFile, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
-                } finally {
-                    close(is);
-                    close(fos);
-                }
+            Throwable e = error.get();
+            if (e != null) {
+                throw e;
             }
 
-            setProgress(100);
+            if (isRunning()) {
+                setProgress(100);
+            }
         } catch (Throwable e) {
             e.printStackTrace();
             onError(e);
@@ -143,6 +153,10 @@ public class DownloadTask extends DeviceTask {
                 }
             });
         } finally {
+            if (workers != null) {
+                workers.shutdown();
+            }
+
             GUIMediator.safeInvokeLater(new Runnable() {
                 public void run() {
                     LibraryMediator.instance().getLibrarySearch().revertStatus();
@@ -157,17 +171,143 @@ public class DownloadTask extends DeviceTask {
         stop();
     }
 
-    private File buildFile(File savePath, String name) {
+    /**
+     * Takes the files not started yet one by one, until there are no more, the task is
+     * stopped or a download fails, in which case the other workers are stopped too.
+     */
+    private void downloadFiles() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        int i;
+        while (isRunning() && (i = nextIndex.getAndIncrement()) < fds.length) {
+            try {
+                download(fds[i], buffer);
+            } catch (Throwable e) {
+                if (error.compareAndSet(null, e)) {
+                    stop();
+                }
+            }
+        }
+    }
+
+    private void download(FileDescriptor fd, ByteBuffer buffer) throws IOException {
+        currentFD = fd;
+        updateStatus(true);
+
+        HttpURLConnection connection = (HttpURLConnection) new URL(device.getDownloadURL(fd)).openConnection();
+        connection.setConnectTimeout(TIMEOUT);
+        connection.setReadTimeout(TIMEOUT);
+        connection.setRequestProperty("User-Agent", UserAgentGenerator.getUserAgent());
+
+        InputStream is = null;
+        FileOutputStream fos = null;
+        File file = null;
+        File incompleteFile = null;
+
+        try {
+            is = connection.getInputStream();
+
+            String filename = OSUtils.escapeFilename(FilenameUtils.getName(fd.filePath));
+            file = reserveFile(savePath, filename);
+            incompleteFile = buildIncompleteFile(file);
+
+            fos = new FileOutputStream(incompleteFile);
+
+            ReadableByteChannel in = Channels.newChannel(is);
+            FileChannel out = fos.getChannel();
+
+            buffer.clear();
+            while (in.read(buffer) != -1) {
+                if (!isRunning()) {
+                    return;
+                }
+
+                buffer.flip();
+                int n = 0;
+                while (buffer.hasRemaining()) {
+                    n += out.write(buffer);
+                }
+                buffer.clear();
+
+                addWritten(n);
+            }
+
+            fos.close();
+            Files.move(incompleteFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            lastFile = file.getAbsoluteFile();
+        } catch (IOException e) {
+            // the connection is not reused after an error
+            connection.disconnect();
+            throw e;
+        } finally {
+            // closing the stream after reading it all returns the connection to the keep-alive cache
+            close(is);
+            close(fos);
+
+            if (file != null) {
+                releaseFile(file);
+            }
+        }
+    }
+
+    private void addWritten(int n) {
+        long written = totalWritten.addAndGet(n);
+        int progress = totalBytes > 0 ? (int) ((written * 100) / totalBytes) : 0;
+
+        synchronized (this) {
+            if (progress > getProgress()) {
+                setProgress(progress);
+            }
+        }
+
+        updateStatus(false);
+    }
+
+    private void updateStatus(boolean force) {
+        long now = System.currentTimeMillis();
+        final int progress;
+
+        synchronized (this) {
+            if (!force && now - lastStatus < MIN_STATUS_INTERVAL_MS) {
+                return;
+            }
+            lastStatus = now;
+            progress = getProgress();
+        }
+
+        final FileDescriptor fd = currentFD;
+
+        GUIMediator.safeInvokeLater(new Runnable() {
+            public void run() {
+                String status = String.format("%d%% %s from %s - %s", progress, I18n.tr("Downloading"), device.getName(), fd.title);
+                LibraryMediator.instance().getLibrarySearch().pushStatus(status);
+            }
+        });
+    }
+
+    /**
+     * Files downloaded at the same time never get the same name.
+     */
+    private File reserveFile(File savePath, String name) {
         String baseName = FilenameUtils.getBaseName(name);
         String ext = FilenameUtils.getExtension(name);
 
-        File f = new File(savePath, name);
-        int i = 1;
-        while (f.exists() && i < 100) {
-            f = new File(savePath, baseName + " (" + i + ")." + ext);
-            i++;
+        synchronized (reservedFiles) {
+            File f = new File(savePath, name);
+            int i = 1;
+            while ((f.exists() || reservedFiles.contains(f)) && i < 100) {
+                f = new File(savePath, baseName + " (" + i + ")." + ext);
+                i++;
+            }
+            reservedFiles.add(f);
+            return f;
+        }
+    }
+
+    private void releaseFile(File file) {
+        synchronized (reservedFiles) {
+            reservedFiles.remove(file);
         }
-        return f;
     }
 
     private File buildIncompleteFile(File file) {
@@ -26,6 +26,7 @@ import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.List;
@@ -664,6 +665,91 @@ public class LibraryExplorer extends AbstractLibraryListPanel {
         }
     }
 
+    /**
+     * Applies the files added and removed on disk to the caches of the directory holders,
+     * a removed folder takes all the cached files under it. The current selection is only refreshed if its holder was affected.
+     * 
+     * Must be called from the event dispatch thread.
+     */
+    public void applyFileChanges(List<File> added, Set<File> removed) {
+        try {
+            File torrentDataDir = SharingSettings.TORRENT_DATA_DIR_SETTING.getValue();
+            DirectoryHolder selected = getSelectedDirectoryHolder();
+            boolean refresh = false;
+
+            Enumeration<?> e = root.depthFirstEnumeration();
+            while (e.hasMoreElements()) {
+                LibraryNode node = (LibraryNode) e.nextElement();
+                if (!(node instanceof DirectoryHolderNode)) {
+                    continue;
+                }
+
+                DirectoryHolder holder = ((DirectoryHolderNode) node).getDirectoryHolder();
+                boolean changed = false;
+
+                if (holder instanceof MediaTypeSavedFilesDirectoryHolder) {
+                    MediaTypeSavedFilesDirectoryHolder mtsfdh = (MediaTypeSavedFilesDirectoryHolder) holder;
+                    // an empty cache means it was never loaded, it will be filled on selection
+                    if (mtsfdh.getCache().isEmpty()) {
+                        continue;
+                    }
+                    List<File> accepted = new ArrayList<File>();
+                    for (File f : added) {
+                        if (mtsfdh.accept(f) && !mtsfdh.getCache().contains(f)) {
+                            accepted.add(f);
+                        }
+                    }
+                    int size = mtsfdh.getCache().size();
+                    mtsfdh.addToCache(accepted);
+                    mtsfdh.removeFromCache(filesUnder(mtsfdh.getCache(), removed));
+                    changed = !accepted.isEmpty() || size + accepted.size() != mtsfdh.getCache().size();
+                } else if (holder instanceof SavedFilesDirectoryHolder) {
+                    SavedFilesDirectoryHolder sfdh = (SavedFilesDirectoryHolder) holder;
+                    if (sfdh.getCache().isEmpty()) {
+                        continue;
+                    }
+                    List<File> accepted = new ArrayList<File>();
+                    for (File f : added) {
+                        if (f.getAbsolutePath().startsWith(torrentDataDir.getAbsolutePath() + File.separator) && !sfdh.getCache().contains(f)) {
+                            accepted.add(f);
+                        }
+                    }
+                    int size = sfdh.getCache().size();
+                    sfdh.addToCache(accepted);
+                    sfdh.removeFromCache(filesUnder(sfdh.getCache(), removed));
+                    changed = !accepted.isEmpty() || size + accepted.size() != sfdh.getCache().size();
+                }
+
+                if (changed && holder.equals(selected)) {
+                    refresh = true;
+                }
+            }
+
+            if (refresh) {
+                refreshSelection();
+            }
+        } catch (Throwable e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static Set<File> filesUnder(Collection<File> cache, Set<File> removed) {
+        Set<File> result = new HashSet<File>();
+        for (File f : cache) {
+            if (removed.contains(f)) {
+                result.add(f);
+                continue;
+            }
+            for (File parent = f.getParentFile(); parent != null; parent = parent.getParentFile()) {
+                if (removed.contains(parent)) {
+                    result.add(f);
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
     private class RefreshAction extends AbstractAction {
 
         /**
@@ -0,0 +1,397 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2014, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.frostwire.gui.library;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FilenameUtils;
+import org.limewire.concurrent.ExecutorsHelper;
+import org.limewire.util.FileUtils;
+import org.limewire.util.StringUtils;
+
+import com.frostwire.content.ContentValues;
+import com.frostwire.core.providers.LibraryFilesDB;
+import com.frostwire.core.providers.LibraryFilesDB.DirectoryColumns;
+import com.frostwire.core.providers.LibraryFilesDB.FileColumns;
+import com.frostwire.database.Cursor;
+import com.frostwire.database.sqlite.DatabaseUtils;
+import com.frostwire.logging.Logger;
+import com.frostwire.text.QueryMatcher;
+import com.limegroup.gnutella.MediaType;
+import com.limegroup.gnutella.settings.LibrarySettings;
+import com.limegroup.gnutella.settings.SharingSettings;
+
+/**
+ * Keeps {@link LibraryFilesDB} in sync with the library folders and answers
+ * library searches from it.
+ * <p>
+ * A background scan walks the library roots, but a directory is only listed again
+ * when its modification time differs from the one stored in the index, otherwise
+ * the scan just descends into the subdirectories it already knows about.
+ *
+ * @author gubatron
+ * @author aldenml
+ *
+ */
+public final class LibraryIndexer {
+
+    private static final Logger LOG = Logger.getLogger(LibraryIndexer.class);
+
+    private static final long RESCAN_INTERVAL_MINUTES = 10;
+
+    private static final LibraryIndexer instance = new LibraryIndexer();
+
+    private final LibraryFilesDB db;
+    private final ScheduledExecutorService scanExec;
+
+    private volatile boolean ready;
+    private boolean started;
+
+    public static LibraryIndexer instance() {
+        return instance;
+    }
+
+    private LibraryIndexer() {
+        this.db = LibraryFilesDB.instance();
+        this.scanExec = Executors.newSingleThreadScheduledExecutor(ExecutorsHelper.daemonThreadFactory("LibraryIndexer"));
+    }
+
+    /**
+     * Starts the periodic background scan. The index left by a previous session is
+     * usable right away, so searches don't wait for the first scan to finish.
+     */
+    public synchronized void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+
+        scanExec.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                ready = ready || hasIndexedDirectories();
+                scanRoots();
+                ready = true;
+            }
+        }, 0, RESCAN_INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Requests an incremental scan as soon as possible, only directories with
+     * a new modification time are listed.
+     */
+    public void scan() {
+        scanExec.execute(new Runnable() {
+            @Override
+            public void run() {
+                scanRoots();
+            }
+        });
+    }
+
+    /**
+     * @return true if the index is populated enough to replace a disk walk.
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Returns the indexed files under <code>root</code> with all the query tokens in its path.
+     *
+     * @param query the raw search query
+     * @param root the folder to search in, or null for all the library roots
+     * @param mediaType restricts the results to this media type, or null for any
+     * @param excludeFiles - Usually a list of incomplete files.
+     * @param excludedSubFolders folders whose files are not returned
+     */
+    public List<File> search(String query, File root, MediaType mediaType, Set<File> excludeFiles, Set<File> excludedSubFolders) {
+        List<File> results = new ArrayList<File>();
+
+        List<String> args = new ArrayList<String>();
+        StringBuilder where = new StringBuilder();
+
+        for (String token : StringUtils.removeDoubleSpaces(QueryMatcher.normalize(query)).split(" ")) {
+            if (token.length() == 0) {
+                continue;
+            }
+            appendAnd(where);
+            where.append(FileColumns.NORMALIZED_PATH).append(" LIKE ? ESCAPE '").append(DatabaseUtils.LIKE_ESCAPE).append("'");
+            args.add("%" + DatabaseUtils.escapeLike(token) + "%");
+        }
+
+        if (root != null) {
+            appendAnd(where);
+            where.append(FileColumns.FILE_PATH).append(" LIKE ? ESCAPE '").append(DatabaseUtils.LIKE_ESCAPE).append("'");
+            args.add(DatabaseUtils.escapeLike(withSeparator(root.getAbsolutePath())) + "%");
+        }
+
+        if (mediaType != null && !mediaType.equals(MediaType.getAnyTypeMediaType())) {
+            appendAnd(where);
+            where.append(FileColumns.MEDIA_TYPE).append(" = ?");
+            args.add(mediaType.getMimeType());
+        }
+
+        List<String> excludedPaths = new ArrayList<String>();
+        for (File folder : excludedSubFolders) {
+            excludedPaths.add(withSeparator(folder.getAbsolutePath()));
+        }
+
+        Cursor c = null;
+
+        try {
+            String[] columns = new String[] { FileColumns.FILE_PATH };
+
+            c = db.queryFiles(columns, where.length() > 0 ? where.toString() : null, args.toArray(new String[0]), null);
+
+            if (c == null) {
+                return results;
+            }
+
+            int filePathCol = c.getColumnIndex(FileColumns.FILE_PATH);
+
+            while (c.moveToNext()) {
+                String path = c.getString(filePathCol);
+
+                if (isExcluded(path, excludedPaths)) {
+                    continue;
+                }
+
+                File file = new File(path);
+
+                if (!excludeFiles.contains(file)) {
+                    results.add(file);
+                }
+            }
+        } catch (Throwable e) {
+            LOG.warn("Error searching the library index", e);
+        } finally {
+            if (c != null) {
+                c.close();
+            }
+        }
+
+        return results;
+    }
+
+    private void scanRoots() {
+        try {
+            Set<File> roots = getRoots();
+
+            Set<String> rootPaths = new HashSet<String>();
+            for (File root : roots) {
+                rootPaths.add(root.getAbsolutePath());
+            }
+
+            for (String path : getDirectories(DirectoryColumns.PARENT_PATH + " IS NULL", null)) {
+                if (!rootPaths.contains(path)) {
+                    removeDirectoryTree(path);
+                }
+            }
+
+            for (File root : roots) {
+                scanDirectory(root, null);
+            }
+        } catch (Throwable e) {
+            LOG.error("Error scanning the library folders", e);
+        }
+    }
+
+    private void scanDirectory(File dir, String parentPath) {
+        String path = dir.getAbsolutePath();
+
+        if (!dir.isDirectory()) {
+            removeDirectoryTree(path);
+            return;
+        }
+
+        long lastModified = dir.lastModified();
+        Long indexedLastModified = getIndexedLastModified(path);
+
+        if (indexedLastModified != null && indexedLastModified.longValue() == lastModified) {
+            for (String subdirPath : getDirectories(DirectoryColumns.PARENT_PATH + " = ?", new String[] { path })) {
+                scanDirectory(new File(subdirPath), path);
+            }
+            return;
+        }
+
+        List<File> subdirs = new ArrayList<File>();
+        Set<String> subdirPaths = new HashSet<String>();
+        List<ContentValues> files = new ArrayList<ContentValues>();
+
+        db.deleteFiles(FileColumns.PARENT_PATH + " = ?", new String[] { path });
+
+        for (File child : FileUtils.listFiles(dir)) {
+            if (child.isHidden() || child.getName().equalsIgnoreCase(".ds_store")) {
+                continue;
+            }
+
+            if (child.isDirectory()) {
+                subdirs.add(child);
+                subdirPaths.add(child.getAbsolutePath());
+            } else if (child.isFile()) {
+                files.add(fileValues(child, path));
+            }
+        }
+
+        db.insertFiles(files);
+
+        for (String subdirPath : getDirectories(DirectoryColumns.PARENT_PATH + " = ?", new String[] { path })) {
+            if (!subdirPaths.contains(subdirPath)) {
+                removeDirectoryTree(subdirPath);
+            }
+        }
+
+        db.deleteDirectories(DirectoryColumns.DIRECTORY_PATH + " = ?", new String[] { path });
+
+        ContentValues values = new ContentValues();
+        values.put(DirectoryColumns.DIRECTORY_PATH, path);
+        if (parentPath != null) {
+            values.put(DirectoryColumns.PARENT_PATH, parentPath);
+        }
+        values.put(DirectoryColumns.DATE_MODIFIED, lastModified);
+        db.insertDirectory(values);
+
+        for (File subdir : subdirs) {
+            scanDirectory(subdir, path);
+        }
+    }
+
+    private static ContentValues fileValues(File file, String parentPath) {
+        String path = file.getAbsolutePath();
+        MediaType mt = MediaType.getMediaTypeForExtension(FilenameUtils.getExtension(path));
+
+        ContentValues values = new ContentValues();
+        values.put(FileColumns.FILE_PATH, path);
+        values.put(FileColumns.PARENT_PATH, parentPath);
+        // the same normalization as the query tokens
+        values.put(FileColumns.NORMALIZED_PATH, QueryMatcher.normalize(path));
+        values.put(FileColumns.FILE_SIZE, file.length());
+        values.put(FileColumns.DATE_MODIFIED, file.lastModified());
+        values.put(FileColumns.MEDIA_TYPE, mt != null ? mt.getMimeType() : "");
+
+        return values;
+    }
+
+    private void removeDirectoryTree(String path) {
+        String subtree = DatabaseUtils.escapeLike(withSeparator(path)) + "%";
+
+        db.deleteFiles(FileColumns.PARENT_PATH + " = ? OR " + FileColumns.PARENT_PATH + " LIKE ? ESCAPE '" + DatabaseUtils.LIKE_ESCAPE + "'", new String[] { path, subtree });
+        db.deleteDirectories(DirectoryColumns.DIRECTORY_PATH + " = ? OR " + DirectoryColumns.DIRECTORY_PATH + " LIKE ? ESCAPE '" + DatabaseUtils.LIKE_ESCAPE + "'", new String[] { path, subtree });
+    }
+
+    private Long getIndexedLastModified(String path) {
+        Cursor c = null;
+
+        try {
+            c = db.queryDirectories(new String[] { DirectoryColumns.DATE_MODIFIED }, DirectoryColumns.DIRECTORY_PATH + " = ?", new String[] { path });
+
+            if (c != null && c.moveToNext()) {
+                return c.getLong(c.getColumnIndex(DirectoryColumns.DATE_MODIFIED));
+            }
+        } finally {
+            if (c != null) {
+                c.close();
+            }
+        }
+
+        return null;
+    }
+
+    private List<String> getDirectories(String where, String[] whereArgs) {
+        List<String> paths = new ArrayList<String>();
+
+        Cursor c = null;
+
+        try {
+            c = db.queryDirectories(new String[] { DirectoryColumns.DIRECTORY_PATH }, where, whereArgs);
+
+            if (c != null) {
+                int col = c.getColumnIndex(DirectoryColumns.DIRECTORY_PATH);
+                while (c.moveToNext()) {
+                    paths.add(c.getString(col));
+                }
+            }
+        } finally {
+            if (c != null) {
+                c.close();
+            }
+        }
+
+        return paths;
+    }
+
+    private boolean hasIndexedDirectories() {
+        return !getDirectories(DirectoryColumns.PARENT_PATH + " IS NULL", null).isEmpty();
+    }
+
+    /**
+     * The library folders plus the torrent folders, leaving out the ones
+     * already contained in another root.
+     */
+    static Set<File> getRoots() {
+        Set<File> candidates = new HashSet<File>(LibrarySettings.DIRECTORIES_TO_INCLUDE.getValue());
+        candidates.add(SharingSettings.TORRENT_DATA_DIR_SETTING.getValue());
+        candidates.add(SharingSettings.TORRENTS_DIR_SETTING.getValue());
+        candidates.remove(null);
+
+        Set<File> roots = new HashSet<File>();
+
+        for (File candidate : candidates) {
+            boolean nested = false;
+            for (File other : candidates) {
+                if (!other.equals(candidate) && candidate.getAbsolutePath().startsWith(withSeparator(other.getAbsolutePath()))) {
+                    nested = true;
+                    break;
+                }
+            }
+            if (!nested) {
+                roots.add(candidate);
+            }
+        }
+
+        return roots;
+    }
+
+    private static boolean isExcluded(String path, List<String> excludedPaths) {
+        for (String excluded : excludedPaths) {
+            if (path.startsWith(excluded)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void appendAnd(StringBuilder where) {
+        if (where.length() > 0) {
+            where.append(" AND ");
+        }
+    }
+
+    private static String withSeparator(String path) {
+        return path.endsWith(File.separator) ? path : path + File.separator;
+    }
+}
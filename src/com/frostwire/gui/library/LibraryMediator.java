@@ -132,6 +132,9 @@ public class LibraryMediator {
         MAIN_PANEL.add(splitPane);
         
         clerk = new DeviceDiscoveryClerk();
+
+        LibraryIndexer.instance().start();
+        LibraryWatcher.instance().start();
     }
 
     public DeviceDiscoveryClerk getDeviceDiscoveryClerk() {
@@ -262,6 +265,7 @@ public class LibraryMediator {
 
     public void clearDirectoryHolderCaches() {
         getLibraryExplorer().clearDirectoryHolderCaches();
+        LibraryIndexer.instance().scan();
     }
 
     public void updateTableFiles(Device device, byte fileType) {
@@ -276,6 +280,19 @@ public class LibraryMediator {
         LibraryPlaylistsTableMediator.instance().updateTableItems(playlist);
     }
 
+    /**
+     * Like {@link #updateTableItems(Playlist)}, reading the items of the playlist again
+     * in the background.
+     * 
+     * @param playlist
+     * @param onLoaded runs in the Swing thread once all the items are in the table
+     */
+    public void loadTableItems(Playlist playlist, Runnable onLoaded) {
+        clearLibraryTable();
+        showView(PLAYLISTS_TABLE_KEY);
+        LibraryPlaylistsTableMediator.instance().loadTableItems(playlist, onLoaded);
+    }
+
     public void showInternetRadioStations(List<InternetRadioStation> internetRadioStations) {
         clearLibraryTable();
         showView(INTERNET_RADIO_TABLE_KEY);
@@ -309,16 +309,21 @@ public class LibraryPlaylists extends AbstractLibraryListPanel {
             return;
         }
 
-        Playlist playlist = cell.getPlaylist();
+        final Playlist playlist = cell.getPlaylist();
 
         if (playlist != null) {
-            playlist.refresh();
-            LibraryMediator.instance().updateTableItems(playlist);
-            String status = LibraryUtils.getPlaylistDurationInDDHHMMSS(playlist) + ", " + playlist.getItems().size() + " " + I18n.tr("tracks");
-            LibraryMediator.instance().getLibrarySearch().setStatus(status);
-        }
+            // the items are read in the background, the pending runnables expect them in the table
+            LibraryMediator.instance().loadTableItems(playlist, new Runnable() {
+                public void run() {
+                    String status = LibraryUtils.getPlaylistDurationInDDHHMMSS(playlist) + ", " + playlist.getItems().size() + " " + I18n.tr("tracks");
+                    LibraryMediator.instance().getLibrarySearch().setStatus(status);
 
-        executePendingRunnables();
+                    executePendingRunnables();
+                }
+            });
+        } else {
+            executePendingRunnables();
+        }
     }
 
     private void actionStartRename() {
@@ -854,8 +859,9 @@ public class LibraryPlaylists extends AbstractLibraryListPanel {
             copyPlaylistFilesToFolder(LibraryMediator.instance().getSelectedPlaylist());
         }
 
-        private void copyPlaylistFilesToFolder(Playlist playlist) {
-            if (playlist == null || playlist.getItems().isEmpty()) {
+        private void copyPlaylistFilesToFolder(final Playlist playlist) {
+            // the items may not be read yet, the count is known without reading them
+            if (playlist == null || playlist.getItemCount() == 0) {
                 return;
             }
 
@@ -870,12 +876,14 @@ public class LibraryPlaylists extends AbstractLibraryListPanel {
                 return;
             }
 
-            //let's make a copy of the list in case the playlist will be modified during the copying.
-            final List<PlaylistItem> playlistItems = new ArrayList<PlaylistItem>(playlist.getItems());
-
             BackgroundExecutorService.schedule(new Thread("Library-copy-playlist-files") {
                 @Override
                 public void run() {
+                    // read here if not read yet, and copied in case the playlist is modified during the copying
+                    List<PlaylistItem> playlistItems = playlist.getItems();
+                    synchronized (playlistItems) {
+                        playlistItems = new ArrayList<PlaylistItem>(playlistItems);
+                    }
 
                     int n = 0;
                     int total = playlistItems.size();
@@ -165,7 +165,9 @@ public final class LibraryPlaylistsTableDataLine extends AbstractLibraryTableDat
         
         switch (idx) {
         case SORT_INDEX_IDX:
-            return new PlaylistItemIntProperty(this, initializer.getSortIndex(), playing, exists);
+            // sorted by the sort index, which has gaps, showing the position in the playlist
+            int position = initializer.getPlaylist() != null ? initializer.getPlaylist().getPosition(initializer) : 0;
+            return new PlaylistItemIntProperty(this, position > 0 ? String.valueOf(position) : "", initializer.getSortIndex(), playing, exists);
         case ACTIONS_IDX:
             actionsHolder.setPlaying(playing);
             return actionsHolder;
@@ -33,6 +33,8 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.swing.AbstractAction;
 import javax.swing.Action;
@@ -48,6 +50,7 @@ import javax.swing.table.TableCellEditor;
 import javax.swing.table.TableColumn;
 import javax.swing.table.TableColumnModel;
 
+import org.limewire.concurrent.ExecutorsHelper;
 import org.limewire.util.OSUtils;
 
 import com.frostwire.alexandria.Playlist;
@@ -87,8 +90,15 @@ import com.limegroup.gnutella.util.QueryUtils;
  */
 final class LibraryPlaylistsTableMediator extends AbstractLibraryTableMediator<LibraryPlaylistsTableModel, LibraryPlaylistsTableDataLine, PlaylistItem> {
 
+    private static final ExecutorService LOAD_EXECUTOR = ExecutorsHelper.newProcessingQueue("LibraryPlaylistsTableMediator-Loader");
+
     private Playlist currentPlaylist;
 
+    /**
+     * Changes every time the table is filled, pages of older loads are dropped.
+     */
+    private final AtomicInteger loadGeneration = new AtomicInteger();
+
     /**
      * Variables so the PopupMenu & ButtonRow can have the same listeners
      */
@@ -390,6 +400,9 @@ final class LibraryPlaylistsTableMediator extends AbstractLibraryTableMediator<L
         currentPlaylist = playlist;
         List<PlaylistItem> items = currentPlaylist.getItems();
 
+        // a load in progress would add the items of another playlist
+        loadGeneration.incrementAndGet();
+
         clearTable();
         for (final PlaylistItem item : items) {
             GUIMediator.safeInvokeLater(new Runnable() {
@@ -402,6 +415,61 @@ final class LibraryPlaylistsTableMediator extends AbstractLibraryTableMediator<L
         forceResort();
     }
 
+    /**
+     * Reads the items of the playlist again in a background thread and adds them to the
+     * table a page at a time, as they arrive, so the first rows of a big playlist show
+     * right away. A newer load or update of the table discards the pages still coming.
+     * 
+     * @param playlist
+     * @param onLoaded runs in the Swing thread after the last page, can be null
+     */
+    void loadTableItems(final Playlist playlist, final Runnable onLoaded) {
+        if (playlist == null) {
+            return;
+        }
+
+        currentPlaylist = playlist;
+
+        final int generation = loadGeneration.incrementAndGet();
+
+        clearTable();
+
+        LOAD_EXECUTOR.execute(new Runnable() {
+            public void run() {
+                if (generation != loadGeneration.get()) {
+                    return;
+                }
+
+                try {
+                    playlist.refresh(new Playlist.PageListener() {
+                        public void onPage(final List<PlaylistItem> page) {
+                            GUIMediator.safeInvokeLater(new Runnable() {
+                                public void run() {
+                                    if (generation == loadGeneration.get()) {
+                                        for (PlaylistItem item : page) {
+                                            addUnsorted(item);
+                                        }
+                                    }
+                                }
+                            });
+                        }
+                    });
+                } finally {
+                    GUIMediator.safeInvokeLater(new Runnable() {
+                        public void run() {
+                            if (generation == loadGeneration.get()) {
+                                forceResort();
+                                if (onLoaded != null) {
+                                    onLoaded.run();
+                                }
+                            }
+                        }
+                    });
+                }
+            }
+        });
+    }
+
     /**
      * Returns the <tt>File</tt> stored at the specified row in the list.
      *
@@ -22,6 +22,8 @@ import java.awt.Rectangle;
 import java.awt.datatransfer.Transferable;
 import java.awt.dnd.InvalidDnDOperationException;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.swing.JComponent;
 import javax.swing.JList;
@@ -34,6 +36,7 @@ import com.frostwire.alexandria.PlaylistItem;
 import com.frostwire.gui.library.LibraryPlaylists.LibraryPlaylistsListCell;
 import com.frostwire.gui.player.MediaPlayer;
 import com.limegroup.gnutella.gui.dnd.DNDUtils;
+import com.limegroup.gnutella.gui.util.BackgroundExecutorService;
 
 /**
  * 
@@ -165,8 +168,24 @@ class LibraryPlaylistsTransferHandler extends TransferHandler {
     @Override
     protected Transferable createTransferable(JComponent c) {
         LibraryPlaylistsListCell cell = (LibraryPlaylistsListCell) list.getSelectedValue();
-        if (cell != null && cell.getPlaylist() != null && cell.getPlaylist().getItems().size() > 0) {
-            return new LibraryPlaylistsTableTransferable(cell.getPlaylist().getItems());
+        if (cell != null && cell.getPlaylist() != null && cell.getPlaylist().getItemCount() > 0) {
+            final Playlist playlist = cell.getPlaylist();
+
+            if (!playlist.isLoaded()) {
+                // read in background, not while dragging, the drag works once they are read
+                BackgroundExecutorService.schedule(new Runnable() {
+                    public void run() {
+                        playlist.getItems();
+                    }
+                });
+                return null;
+            }
+
+            List<PlaylistItem> items = playlist.getItems();
+            synchronized (items) {
+                items = new ArrayList<PlaylistItem>(items);
+            }
+            return new LibraryPlaylistsTableTransferable(items);
         } else {
             return null;
         }
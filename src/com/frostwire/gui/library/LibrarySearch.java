@@ -27,12 +27,12 @@ import java.awt.event.FocusEvent;
 import java.awt.event.FocusListener;
 import java.io.File;
 import java.io.FileFilter;
-import java.text.Normalizer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Locale;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.swing.AbstractAction;
 import javax.swing.Action;
@@ -44,13 +44,14 @@ import org.limewire.util.FileUtils;
 import org.limewire.util.StringUtils;
 
 import com.frostwire.alexandria.InternetRadioStation;
+import com.frostwire.alexandria.Library;
 import com.frostwire.alexandria.Playlist;
 import com.frostwire.alexandria.PlaylistItem;
-import com.frostwire.alexandria.db.InternetRadioStationDB;
-import com.frostwire.alexandria.db.PlaylistItemDB;
+import com.frostwire.alexandria.SearchPage;
 import com.frostwire.gui.bittorrent.TorrentUtil;
 import com.frostwire.gui.searchfield.SearchField;
 import com.frostwire.gui.searchfield.JXSearchField.SearchMode;
+import com.frostwire.text.QueryMatcher;
 import com.limegroup.gnutella.MediaType;
 import com.limegroup.gnutella.gui.GUIMediator;
 import com.limegroup.gnutella.gui.I18n;
@@ -72,10 +73,17 @@ public class LibrarySearch extends JPanel {
 
     private SearchRunnable currentSearchRunnable;
 
+    private static final int SEARCH_PAGE_SIZE = 100;
+
     private int resultsCount;
+    /**
+     * The total of the paged searches once counted, -1 otherwise.
+     */
+    private int totalResults;
     private String status;
 
     public LibrarySearch() {
+        totalResults = -1;
         setupUI();
     }
 
@@ -112,13 +120,28 @@ public class LibrarySearch extends JPanel {
         }
 
         resultsCount += n;
-        setStatus(resultsCount + " " + I18n.tr("search results"));
+        updateResultsStatus();
+    }
+
+    private void setTotalResults(int total) {
+        totalResults = total;
+        updateResultsStatus();
+    }
+
+    private void updateResultsStatus() {
+        if (totalResults < 0) {
+            setStatus(resultsCount + " " + I18n.tr("search results"));
+        } else {
+            String total = totalResults >= Library.MAX_SEARCH_COUNT ? totalResults + "+" : String.valueOf(totalResults);
+            setStatus(resultsCount + "/" + total + " " + I18n.tr("search results"));
+        }
     }
 
     public void clear() {
         setStatus("");
         searchField.setText("");
         resultsCount = 0;
+        totalResults = -1;
     }
 
     public void pushStatus(final String newStatus) {
@@ -301,6 +324,7 @@ public class LibrarySearch extends JPanel {
                             LibraryMediator.instance().updateTableFiles(directoryHolder);
                             setStatus("");
                             resultsCount = 0;
+                            totalResults = -1;
                         }
                     });
                     return;
@@ -311,6 +335,7 @@ public class LibrarySearch extends JPanel {
                         LibraryFilesTableMediator.instance().clearTable();
                         statusLabel.setText("");
                         resultsCount = 0;
+                        totalResults = -1;
                     }
                 });
 
@@ -330,6 +355,11 @@ public class LibrarySearch extends JPanel {
 
                 Set<File> ignore = TorrentUtil.getIgnorableFiles();
 
+                if (LibraryIndexer.instance().isReady()) {
+                    searchIndex(ignore);
+                    return;
+                }
+
                 if (directoryHolder instanceof TorrentDirectoryHolder) {
                     search(((TorrentDirectoryHolder) directoryHolder).getDirectory(), ignore, LibrarySettings.DIRECTORIES_NOT_TO_INCLUDE.getValue());
                     return;
@@ -359,6 +389,55 @@ public class LibrarySearch extends JPanel {
             }
         }
 
+        /**
+         * Same as the disk walk below, but answered from the library index.
+         */
+        private void searchIndex(Set<File> ignore) {
+            LibraryIndexer indexer = LibraryIndexer.instance();
+            Set<File> excludedFolders = LibrarySettings.DIRECTORIES_NOT_TO_INCLUDE.getValue();
+
+            final List<File> results = new ArrayList<File>();
+
+            if (directoryHolder instanceof TorrentDirectoryHolder) {
+                results.addAll(indexer.search(_query, directoryHolder.getDirectory(), MediaType.getTorrentMediaType(), ignore, excludedFolders));
+            } else if (directoryHolder instanceof SavedFilesDirectoryHolder) {
+                results.addAll(indexer.search(_query, directoryHolder.getDirectory(), null, ignore, excludedFolders));
+            } else {
+                MediaType mediaType = null;
+                if (directoryHolder instanceof MediaTypeSavedFilesDirectoryHolder) {
+                    mediaType = ((MediaTypeSavedFilesDirectoryHolder) directoryHolder).getMediaType();
+                }
+
+                Set<File> directories = new HashSet<File>(LibrarySettings.DIRECTORIES_TO_INCLUDE.getValue());
+                directories.removeAll(excludedFolders);
+                for (File dir : directories) {
+                    if (dir == null) {
+                        continue;
+                    }
+
+                    if (dir.equals(LibrarySettings.USER_MUSIC_FOLDER.getValue()) && mediaType != null && !mediaType.equals(MediaType.getAudioMediaType())) {
+                        continue;
+                    }
+
+                    results.addAll(indexer.search(_query, dir, mediaType, new HashSet<File>(), excludedFolders));
+                }
+            }
+
+            if (canceled || !directoryHolder.equals(LibraryMediator.instance().getLibraryExplorer().getSelectedDirectoryHolder())) {
+                return;
+            }
+
+            GUIMediator.safeInvokeLater(new Runnable() {
+                public void run() {
+                    LibraryMediator.instance().addFilesToLibraryTable(results);
+
+                    if (directoryHolder instanceof SavedFilesDirectoryHolder) {
+                        LibraryFilesTableMediator.instance().resetAudioPlayerFileView();
+                    }
+                }
+            });
+        }
+
         /**
          * It searches _query in haystackDir.
          * 
@@ -469,10 +548,11 @@ public class LibrarySearch extends JPanel {
 
     private static final class SearchFileFilter implements FileFilter {
 
-        private final String[] _tokens;
+        private final QueryMatcher _matcher;
 
         public SearchFileFilter(String query) {
-            _tokens = StringUtils.removeDoubleSpaces(normalize(query)).split(" ");
+            String[] tokens = StringUtils.removeDoubleSpaces(QueryMatcher.normalize(query)).split(" ");
+            _matcher = new QueryMatcher(Arrays.asList(tokens), false);
         }
 
         public boolean accept(File pathname) {
@@ -494,40 +574,25 @@ public class LibrarySearch extends JPanel {
                 return true;
             }
 
-            String name = normalize(pathname.getAbsolutePath());
-
-            for (String token : _tokens) {
-                if (!name.contains(token)) {
-                    return false;
-                }
-            }
-
-            return true;
-        }
-
-        private String normalize(String token) {
-            String norm = Normalizer.normalize(token, Normalizer.Form.NFKD);
-            norm = norm.replaceAll("\\p{InCombiningDiacriticalMarks}+", "");
-            norm = norm.toLowerCase(Locale.US);
-
-            return norm;
+            return _matcher.matches(pathname.getAbsolutePath());
         }
     }
 
-    private final class SearchPlaylistItemsRunnable extends SearchRunnable {
+    /**
+     * Adds the full text search results a page at a time, the first page right away and
+     * the next ones as the table is scrolled to its end, and then counts the total.
+     */
+    private abstract class PagedSearchRunnable<T> extends SearchRunnable {
 
-        private final String query;
-        private final Playlist playlist;
+        private final AtomicBoolean fetching;
 
-        public SearchPlaylistItemsRunnable(String query, Playlist playlist) {
-            this.query = query;
-            this.playlist = playlist;
-            canceled = false;
+        // written holding fetching
+        private int nextOffset;
+        private volatile boolean more;
 
-            // weird case
-            if (playlist == null) {
-                canceled = true;
-            }
+        public PagedSearchRunnable() {
+            fetching = new AtomicBoolean(false);
+            more = true;
         }
 
         public void run() {
@@ -538,96 +603,118 @@ public class LibrarySearch extends JPanel {
 
                 GUIMediator.safeInvokeAndWait(new Runnable() {
                     public void run() {
-                        LibraryPlaylistsTableMediator.instance().clearTable();
+                        getTableMediator().clearTable();
                         setStatus("");
                         statusLabel.setText("");
                         resultsCount = 0;
+                        totalResults = -1;
+                    }
+                });
+
+                fetching.set(true);
+                fetchPage();
+
+                if (canceled || !isSelected()) {
+                    return;
+                }
+
+                GUIMediator.safeInvokeLater(new Runnable() {
+                    public void run() {
+                        if (!canceled) {
+                            getTableMediator().setScrolledToEndListener(new Runnable() {
+                                public void run() {
+                                    fetchNextPage();
+                                }
+                            });
+                        }
                     }
                 });
 
-                search();
+                final int total = count();
+
+                GUIMediator.safeInvokeLater(new Runnable() {
+                    public void run() {
+                        if (!canceled) {
+                            setTotalResults(total);
+                        }
+                    }
+                });
             } catch (Throwable e) {
                 e.printStackTrace();
             }
         }
 
-        private void search() {
-            if (canceled || playlist == null) {
-                return;
+        /**
+         * Called in the Swing thread.
+         */
+        private void fetchNextPage() {
+            if (!canceled && more && fetching.compareAndSet(false, true)) {
+                BackgroundExecutorService.schedule(new Runnable() {
+                    public void run() {
+                        fetchPage();
+                    }
+                });
             }
+        }
 
-            String sql = null;
-            List<List<Object>> rows = null;
-
-            //Show everything
-            if (StringUtils.isNullOrEmpty(query, true) || query.equals(".")) {
-                if (playlist.isStarred()) {
-                    LibraryMediator.instance().getLibraryExplorer().selectStarred();
-                } else {
-                    LibraryMediator.instance().getLibraryPlaylists().selectPlaylist(playlist);
-                }
-                return;
-            } else {
-                String luceneQuery = com.frostwire.alexandria.LibraryUtils.wildcardLuceneQuery(query);
-                //Full text search
-                if (!playlist.isStarred()) {
-                    sql = "SELECT T.playlistItemId, T.filePath, T.fileName, T.fileSize, T.fileExtension, T.trackTitle, T.trackDurationInSecs, T.trackArtist, T.trackAlbum, T.coverArtPath, T.trackBitrate, T.trackComment, T.trackGenre, T.trackNumber, T.trackYear, T.starred, T.sortIndex FROM FTL_SEARCH_DATA(?, 0, 0) FT, PLAYLISTITEMS T WHERE FT.TABLE='PLAYLISTITEMS' AND T.playlistItemId = FT.KEYS[0] AND T.playlistId = ?";
-                    rows = LibraryMediator.getLibrary().getLibraryDatabase().query(sql, luceneQuery, playlist.getId());
-                }
-                //Starred playlist search
-                else {
-                    sql = "SELECT T.playlistItemId, T.filePath, T.fileName, T.fileSize, T.fileExtension, T.trackTitle, T.trackDurationInSecs, T.trackArtist, T.trackAlbum, T.coverArtPath, T.trackBitrate, T.trackComment, T.trackGenre, T.trackNumber, T.trackYear, T.starred FROM FTL_SEARCH_DATA(?, 0, 0) FT, PLAYLISTITEMS T WHERE FT.TABLE='PLAYLISTITEMS' AND T.playlistItemId = FT.KEYS[0] AND T.starred = TRUE";
-                    rows = LibraryMediator.getLibrary().getLibraryDatabase().query(sql, luceneQuery);
+        /**
+         * Must be called with fetching set, it's cleared here.
+         */
+        private void fetchPage() {
+            try {
+                if (canceled || !more || !isSelected()) {
+                    return;
                 }
 
-            }
-
-            final List<PlaylistItem> results = new ArrayList<PlaylistItem>();
+                final SearchPage<T> page = search(nextOffset, SEARCH_PAGE_SIZE);
 
-            for (List<Object> row : rows) {
-                if (canceled) {
-                    return;
-                }
+                nextOffset = page.getNextOffset();
+                more = page.hasMore();
 
-                /////
-                //Stop search if the user selected another item in the playlist list
-                Playlist currentPlaylist = LibraryMediator.instance().getLibraryPlaylists().getSelectedPlaylist();
-                if (!playlist.isStarred() && !playlist.equals(currentPlaylist)) {
+                //Stop search if the user selected something else in the library
+                if (canceled || !isSelected()) {
                     return;
                 }
-                /////
-
-                PlaylistItem item = new PlaylistItem(currentPlaylist);
-                PlaylistItemDB.fill(row, item);
-                results.add(item);
 
-                if (results.size() > 100) {
-                    Runnable r = new Runnable() {
-                        public void run() {
-                            LibraryMediator.instance().addItemsToLibraryTable(results);
-                            results.clear();
+                GUIMediator.safeInvokeLater(new Runnable() {
+                    public void run() {
+                        if (!canceled) {
+                            addToTable(page.getItems());
                         }
-                    };
-                    GUIMediator.safeInvokeLater(r);
-                }
+                    }
+                });
+            } catch (Throwable e) {
+                e.printStackTrace();
+            } finally {
+                fetching.set(false);
             }
-
-            Runnable r = new Runnable() {
-                public void run() {
-                    LibraryMediator.instance().addItemsToLibraryTable(results);
-                }
-            };
-            GUIMediator.safeInvokeLater(r);
         }
+
+        protected abstract AbstractLibraryTableMediator<?, ?, ?> getTableMediator();
+
+        protected abstract boolean isSelected();
+
+        protected abstract SearchPage<T> search(int offset, int limit);
+
+        protected abstract int count();
+
+        protected abstract void addToTable(List<T> items);
     }
 
-    private final class SearchInternetRadioStationsRunnable extends SearchRunnable {
+    private final class SearchPlaylistItemsRunnable extends PagedSearchRunnable<PlaylistItem> {
 
         private final String query;
+        private final Playlist playlist;
 
-        public SearchInternetRadioStationsRunnable(String query) {
+        public SearchPlaylistItemsRunnable(String query, Playlist playlist) {
             this.query = query;
+            this.playlist = playlist;
             canceled = false;
+
+            // weird case
+            if (playlist == null) {
+                canceled = true;
+            }
         }
 
         public void run() {
@@ -635,75 +722,95 @@ public class LibrarySearch extends JPanel {
                 return;
             }
 
-            GUIMediator.safeInvokeLater(new Runnable() {
-                public void run() {
-                    LibraryInternetRadioTableMediator.instance().clearTable();
-                    setStatus("");
-                    statusLabel.setText("");
-                    resultsCount = 0;
+            //Show everything
+            if (StringUtils.isNullOrEmpty(query, true) || query.equals(".")) {
+                if (playlist.isStarred()) {
+                    LibraryMediator.instance().getLibraryExplorer().selectStarred();
+                } else {
+                    LibraryMediator.instance().getLibraryPlaylists().selectPlaylist(playlist);
                 }
-            });
+                return;
+            }
+
+            super.run();
+        }
+
+        @Override
+        protected AbstractLibraryTableMediator<?, ?, ?> getTableMediator() {
+            return LibraryPlaylistsTableMediator.instance();
+        }
+
+        @Override
+        protected boolean isSelected() {
+            if (playlist.isStarred()) {
+                return LibraryMediator.instance().getLibraryExplorer().getSelectedDirectoryHolder() instanceof StarredDirectoryHolder;
+            } else {
+                return playlist.equals(LibraryMediator.instance().getLibraryPlaylists().getSelectedPlaylist());
+            }
+        }
 
-            search();
+        @Override
+        protected SearchPage<PlaylistItem> search(int offset, int limit) {
+            return LibraryMediator.getLibrary().searchPlaylistItems(playlist, query, offset, limit);
+        }
+
+        @Override
+        protected int count() {
+            return LibraryMediator.getLibrary().countPlaylistItems(playlist, query);
+        }
+
+        @Override
+        protected void addToTable(List<PlaylistItem> items) {
+            LibraryMediator.instance().addItemsToLibraryTable(items);
+        }
+    }
+
+    private final class SearchInternetRadioStationsRunnable extends PagedSearchRunnable<InternetRadioStation> {
+
+        private final String query;
+
+        public SearchInternetRadioStationsRunnable(String query) {
+            this.query = query;
+            canceled = false;
         }
 
-        private void search() {
+        public void run() {
             if (canceled) {
                 return;
             }
 
-            String sql = null;
-            List<List<Object>> rows = null;
-
             //Show everything
             if (StringUtils.isNullOrEmpty(query, true) || query.equals(".")) {
                 LibraryMediator.instance().getLibraryExplorer().selectRadio();
-                //sql="SELECT T.internetRadioStationId, T.name, T.description, T.url, T.bitrate, T.type, T.website, T.genre, T.pls FROM INTERNETRADIOSTATIONS T";
-                //rows = LibraryMediator.getLibrary().getDB().getDatabase().query(sql);
                 return;
-            } else {
-                String luceneQuery = com.frostwire.alexandria.LibraryUtils.wildcardLuceneQuery(query);
-                //Full text search
-                sql = "SELECT T.internetRadioStationId, T.name, T.description, T.url, T.bitrate, T.type, T.website, T.genre, T.pls, T.bookmarked FROM FTL_SEARCH_DATA(?, 0, 0) FT, INTERNETRADIOSTATIONS T WHERE FT.TABLE='INTERNETRADIOSTATIONS' AND T.internetRadioStationId = FT.KEYS[0]";
-                rows = LibraryMediator.getLibrary().getLibraryDatabase().query(sql, luceneQuery);
             }
 
-            final List<InternetRadioStation> results = new ArrayList<InternetRadioStation>();
+            super.run();
+        }
 
-            for (List<Object> row : rows) {
-                if (canceled) {
-                    return;
-                }
+        @Override
+        protected AbstractLibraryTableMediator<?, ?, ?> getTableMediator() {
+            return LibraryInternetRadioTableMediator.instance();
+        }
 
-                /////
-                //Stop search if the user selected another item in the playlist list
-                //                Playlist currentPlaylist = LibraryMediator.instance().getLibraryPlaylists().getSelectedPlaylist();
-                //                if (!playlist.equals(currentPlaylist)) {
-                //                    return;
-                //                }
-                /////
+        @Override
+        protected boolean isSelected() {
+            return LibraryMediator.instance().getLibraryExplorer().getSelectedDirectoryHolder() instanceof InternetRadioDirectoryHolder;
+        }
 
-                InternetRadioStation item = new InternetRadioStation(LibraryMediator.getLibrary().getLibraryDatabase());
-                InternetRadioStationDB.fill(row, item);
-                results.add(item);
+        @Override
+        protected SearchPage<InternetRadioStation> search(int offset, int limit) {
+            return LibraryMediator.getLibrary().searchInternetRadioStations(query, offset, limit);
+        }
 
-                if (results.size() > 100) {
-                    Runnable r = new Runnable() {
-                        public void run() {
-                            LibraryMediator.instance().addInternetRadioStationsToLibraryTable(results);
-                            results.clear(); // TODO: Fix this error, check for thread issues
-                        }
-                    };
-                    GUIMediator.safeInvokeLater(r);
-                }
-            }
+        @Override
+        protected int count() {
+            return LibraryMediator.getLibrary().countInternetRadioStations(query);
+        }
 
-            Runnable r = new Runnable() {
-                public void run() {
-                    LibraryMediator.instance().addInternetRadioStationsToLibraryTable(results);
-                }
-            };
-            GUIMediator.safeInvokeLater(r);
+        @Override
+        protected void addToTable(List<InternetRadioStation> items) {
+            LibraryMediator.instance().addInternetRadioStationsToLibraryTable(items);
         }
     }
 
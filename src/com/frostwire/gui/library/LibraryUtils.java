@@ -47,8 +47,8 @@ import com.frostwire.alexandria.PlaylistItem;
 import com.frostwire.alexandria.db.LibraryDatabase;
 import com.frostwire.gui.bittorrent.TorrentUtil;
 import com.frostwire.gui.library.LibraryPlaylistsTableTransferable.Item;
+import com.frostwire.gui.library.tags.TagsCache;
 import com.frostwire.gui.library.tags.TagsData;
-import com.frostwire.gui.library.tags.TagsReader;
 import com.frostwire.gui.player.MediaPlayer;
 import com.frostwire.gui.theme.ThemeMediator;
 import com.frostwire.logging.Logger;
@@ -89,33 +89,19 @@ public class LibraryUtils {
     private static void addPlaylistItem(Playlist playlist, File file, boolean starred, int index) {
         try {
             LibraryMediator.instance().getLibrarySearch().pushStatus(I18n.tr("Importing") + " " + file.getName());
-            TagsData mt = new TagsReader(file).parse();
+            TagsData mt = TagsCache.instance().parse(file);
             PlaylistItem item = playlist.newItem(file.getAbsolutePath(), file.getName(), file.length(), FilenameUtils.getExtension(file.getName()), mt.getTitle(), mt.getDuration(), mt.getArtist(), mt.getAlbum(), "",// TODO: cover art path
                     mt.getBitrate(), mt.getComment(), mt.getGenre(), mt.getTrack(), mt.getYear(), starred);
 
             List<PlaylistItem> items = playlist.getItems();
             if (index != -1 && index < items.size()) {
-
-                // insert item
                 items.add(index, item);
-
-                // update all sort indexes from insertion point onwards
-                for (int i = index; i < items.size(); i++) {
-                    PlaylistItem cur_item = items.get(i);
-                    cur_item.setSortIndex(i + 1); //set index 1-based
-                    cur_item.save();
-                }
-
             } else {
                 items.add(item);
-                item.setSortIndex(items.size()); // set sort index to 1-based size
-                item.save();
             }
 
-            if (isPlaylistSelected(playlist)) {
-                // refresh UI
-                LibraryMediator.instance().getLibraryPlaylists().refreshSelection();
-            }
+            // the callers save the playlist once all the files are added, the new items
+            // get sort indexes between their neighbours then, and the table is refreshed
         } finally {
             LibraryMediator.instance().getLibrarySearch().revertStatus();
         }
@@ -321,6 +307,7 @@ public class LibraryUtils {
             public void run() {
                 try {
                     addToPlaylist(playlist, lines);
+                    playlist.saveItems();
                 } finally {
                     asyncAddToPlaylistFinalizer(playlist);
                 }
@@ -506,26 +493,20 @@ public class LibraryUtils {
                 }
             }
 
-            // reupdate sort indexes now that the ordering in the list is correct
-            items = playlist.getItems();
-            for (int i = 0; i < items.size(); i++) {
-                PlaylistItem item = items.get(i);
-                item.setSortIndex(i + 1); // set index 1-based
-                item.save();
-            }
-
+            // sort indexes follow the list order once the playlist is saved
         } else {
             for (int i = 0; i < playlistItems.length && !playlist.isDeleted(); i++) {
 
                 playlistItems[i].setPlaylist(playlist);
                 items.add(playlistItems[i]);
-                playlistItems[i].setSortIndex(items.size()); // set sort index to be at the end (1-based)
 
                 if (starred) {
                     playlistItems[i].setStarred(starred);
+                    playlistItems[i].save();
+                } else {
+                    // a copy in this playlist, inserted when the playlist is saved
+                    playlistItems[i].setId(LibraryDatabase.OBJECT_NOT_SAVED_ID);
                 }
-
-                playlistItems[i].save();
             }
         }
     }
@@ -598,7 +579,7 @@ public class LibraryUtils {
         
         for (File mf : mediaFiles) {
             if (MediaPlayer.isPlayableFile(mf)) {
-                TagsData mt = new TagsReader(mf).parse();
+                TagsData mt = TagsCache.instance().parse(mf);
                 artistNames.update(mt.getArtist());
                 artistsAlbums.update(mt.getArtist() + " - " + mt.getAlbum());
                 albumNames.update(mt.getAlbum());
@@ -682,7 +663,7 @@ public class LibraryUtils {
                         LibraryMediator.instance().getLibrarySearch().pushStatus(I18n.tr("Refreshing") + " " + item.getTrackAlbum() + " - " + item.getTrackTitle());
                         File file = new File(item.getFilePath());
                         if (file.exists()) {
-                            TagsData mt = new TagsReader(file).parse();
+                            TagsData mt = TagsCache.instance().parse(file);
                             LibraryMediator.getLibrary().updatePlaylistItemProperties(item.getFilePath(), mt.getTitle(), mt.getArtist(), mt.getAlbum(), mt.getComment(), mt.getGenre(), mt.getTrack(), mt.getYear());
                         }
                     } catch (Exception e) {
@@ -712,11 +693,6 @@ public class LibraryUtils {
         });
     }
 
-    private static boolean isPlaylistSelected(Playlist playlist) {
-        Playlist selectedPlaylist = LibraryMediator.instance().getLibraryPlaylists().getSelectedPlaylist();
-        return selectedPlaylist != null && selectedPlaylist.equals(playlist);
-    }
-
     public static boolean isRefreshKeyEvent(KeyEvent e) {
         int keyCode = e.getKeyCode();
         boolean ctrlCmdDown = e.isControlDown() || e.isAltGraphDown() || e.isMetaDown();
@@ -859,12 +835,8 @@ public class LibraryUtils {
             }
         }
 
-        // second, generate new indexes based list order
-        for (int i = 0; i < items.size(); i++) {
-            PlaylistItem item = items.get(i);
-            item.setSortIndex(i + 1); // set index (1-based)
-            item.save();
-        }
+        // second, give the moved items indexes between their new neighbours and write only those
+        playlist.saveItems();
 
         // initiate UI refresh
         GUIMediator.safeInvokeLater(new Runnable() {
@@ -0,0 +1,341 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2014, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.frostwire.gui.library;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.limewire.concurrent.ThreadExecutor;
+
+import com.frostwire.gui.Librarian;
+import com.frostwire.gui.bittorrent.TorrentUtil;
+import com.frostwire.logging.Logger;
+import com.limegroup.gnutella.gui.GUIMediator;
+import com.limegroup.gnutella.settings.LibrarySettings;
+
+/**
+ * Watches the library folders and the torrent folders for changes on disk and
+ * applies them incrementally to the share table, the directory holder caches
+ * and the library index.
+ * <p>
+ * Events are coalesced per path and only applied once the folders have been quiet
+ * for {@link #DEBOUNCE_MS}, or every {@link #MAX_BATCH_DELAY_MS} during a long burst
+ * (like a download being written), so a file that is created, written and renamed
+ * is applied once.
+ *
+ * @author gubatron
+ * @author aldenml
+ *
+ */
+public final class LibraryWatcher {
+
+    private static final Logger LOG = Logger.getLogger(LibraryWatcher.class);
+
+    private static final long DEBOUNCE_MS = 1000;
+    private static final long MAX_BATCH_DELAY_MS = 5000;
+
+    private static final LibraryWatcher instance = new LibraryWatcher();
+
+    private final Map<WatchKey, Path> keys;
+    private final Map<Path, WatchEvent.Kind<?>> pending;
+
+    private WatchService watchService;
+    private volatile boolean running;
+
+    public static LibraryWatcher instance() {
+        return instance;
+    }
+
+    private LibraryWatcher() {
+        this.keys = new HashMap<WatchKey, Path>();
+        this.pending = new LinkedHashMap<Path, WatchEvent.Kind<?>>();
+    }
+
+    /**
+     * @return true if the library folders are being watched, in which case there is no
+     * need to clear the directory holder caches after a file lands in them.
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+        } catch (Throwable e) {
+            LOG.warn("File system watch service not available, library changes will be picked up by rescans", e);
+            return;
+        }
+
+        running = true;
+
+        ThreadExecutor.startThread(new Runnable() {
+            @Override
+            public void run() {
+                registerRoots();
+                processEvents();
+            }
+        }, "LibraryWatcher");
+    }
+
+    /**
+     * Re-registers the folders to watch, call it after the library folders change.
+     */
+    public synchronized void updateRoots() {
+        if (!running) {
+            return;
+        }
+
+        synchronized (keys) {
+            for (WatchKey key : keys.keySet()) {
+                key.cancel();
+            }
+            keys.clear();
+        }
+
+        ThreadExecutor.startThread(new Runnable() {
+            @Override
+            public void run() {
+                registerRoots();
+            }
+        }, "LibraryWatcher-Register");
+    }
+
+    private void registerRoots() {
+        Set<File> excluded = LibrarySettings.DIRECTORIES_NOT_TO_INCLUDE.getValue();
+
+        for (File root : LibraryIndexer.getRoots()) {
+            if (root.isDirectory() && !excluded.contains(root)) {
+                registerTree(root.toPath(), excluded);
+            }
+        }
+    }
+
+    private void registerTree(Path start, final Set<File> excluded) {
+        try {
+            Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                    File file = dir.toFile();
+                    if (excluded.contains(file) || file.isHidden()) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    register(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (Throwable e) {
+            LOG.warn("Error registering folder to watch: " + start, e);
+        }
+    }
+
+    private void register(Path dir) throws IOException {
+        WatchKey key = dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+        synchronized (keys) {
+            keys.put(key, dir);
+        }
+    }
+
+    private void processEvents() {
+        long batchStart = 0;
+
+        while (running) {
+            WatchKey key;
+
+            try {
+                if (pending.isEmpty()) {
+                    key = watchService.take();
+                    batchStart = System.currentTimeMillis();
+                } else {
+                    key = watchService.poll(DEBOUNCE_MS, TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (ClosedWatchServiceException e) {
+                return;
+            }
+
+            if (key != null) {
+                collect(key);
+            }
+
+            if (!pending.isEmpty() && (key == null || System.currentTimeMillis() - batchStart > MAX_BATCH_DELAY_MS)) {
+                try {
+                    flush();
+                } catch (Throwable e) {
+                    LOG.error("Error applying library folder changes", e);
+                }
+            }
+        }
+    }
+
+    private void collect(WatchKey key) {
+        Path dir;
+        synchronized (keys) {
+            dir = keys.get(key);
+        }
+
+        if (dir != null) {
+            for (WatchEvent<?> event : key.pollEvents()) {
+                WatchEvent.Kind<?> kind = event.kind();
+
+                if (kind == OVERFLOW) {
+                    // we lost track of what happened, let the index find out
+                    pending.put(dir, OVERFLOW);
+                    continue;
+                }
+
+                coalesce(dir.resolve((Path) event.context()), kind);
+            }
+        }
+
+        if (!key.reset()) {
+            synchronized (keys) {
+                keys.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Keeps a single pending event per path, the result of all the events seen
+     * for it since the last flush.
+     */
+    private void coalesce(Path path, WatchEvent.Kind<?> kind) {
+        WatchEvent.Kind<?> previous = pending.remove(path);
+
+        if (previous == null || previous == OVERFLOW) {
+            pending.put(path, kind);
+        } else if (previous == ENTRY_CREATE && kind == ENTRY_DELETE) {
+            // created and gone within the same batch, nothing to apply
+        } else if (previous == ENTRY_CREATE) {
+            pending.put(path, ENTRY_CREATE);
+        } else if (previous == ENTRY_DELETE && kind == ENTRY_CREATE) {
+            pending.put(path, ENTRY_MODIFY);
+        } else {
+            pending.put(path, kind);
+        }
+    }
+
+    private void flush() {
+        Set<File> ignore = TorrentUtil.getIgnorableFiles();
+        Set<File> excluded = LibrarySettings.DIRECTORIES_NOT_TO_INCLUDE.getValue();
+
+        final List<File> added = new ArrayList<File>();
+        final Set<File> removed = new HashSet<File>();
+        boolean overflow = false;
+
+        Iterator<Map.Entry<Path, WatchEvent.Kind<?>>> it = pending.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Path, WatchEvent.Kind<?>> entry = it.next();
+            it.remove();
+
+            File file = entry.getKey().toFile();
+            WatchEvent.Kind<?> kind = entry.getValue();
+
+            if (kind == OVERFLOW) {
+                overflow = true;
+            } else if (kind == ENTRY_DELETE) {
+                removed.add(file);
+                Librarian.instance().onFileDeleted(file.getAbsolutePath());
+            } else if (ignore.contains(file) || file.isHidden()) {
+                continue;
+            } else if (file.isDirectory()) {
+                if (kind == ENTRY_CREATE && !excluded.contains(file)) {
+                    registerTree(file.toPath(), excluded);
+                    collectFiles(file, added, excluded);
+                }
+            } else if (file.isFile()) {
+                if (kind == ENTRY_CREATE) {
+                    added.add(file);
+                } else {
+                    Librarian.instance().onFileModified(file.getAbsolutePath());
+                }
+            }
+        }
+
+        LibraryIndexer.instance().scan();
+
+        if (overflow) {
+            GUIMediator.safeInvokeLater(new Runnable() {
+                public void run() {
+                    LibraryMediator.instance().getLibraryExplorer().clearDirectoryHolderCaches();
+                }
+            });
+        } else if (!added.isEmpty() || !removed.isEmpty()) {
+            GUIMediator.safeInvokeLater(new Runnable() {
+                public void run() {
+                    LibraryMediator.instance().getLibraryExplorer().applyFileChanges(added, removed);
+                }
+            });
+        }
+    }
+
+    private void collectFiles(File dir, List<File> files, Set<File> excluded) {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+
+        for (File child : children) {
+            if (child.isHidden()) {
+                continue;
+            }
+            if (child.isDirectory()) {
+                if (!excluded.contains(child)) {
+                    collectFiles(child, files, excluded);
+                }
+            } else if (child.isFile()) {
+                files.add(child);
+            }
+        }
+    }
+}
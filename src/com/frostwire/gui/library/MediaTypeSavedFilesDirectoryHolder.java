@@ -19,6 +19,7 @@
 package com.frostwire.gui.library;
 
 import java.io.File;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -90,6 +91,10 @@ public class MediaTypeSavedFilesDirectoryHolder implements DirectoryHolder {
     public void addToCache(List<File> files) {
         cache.addAll(files);
     }
+
+    public void removeFromCache(Collection<File> files) {
+        cache.removeAll(files);
+    }
     
     public void clearCache() {
         cache.clear();
@@ -23,6 +23,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import javax.swing.Icon;
@@ -121,4 +122,12 @@ public class SavedFilesDirectoryHolder extends FileSettingDirectoryHolder {
     public Collection<File> getCache() {
         return cache;
     }
+
+    public void addToCache(List<File> files) {
+        cache.addAll(files);
+    }
+
+    public void removeFromCache(Collection<File> files) {
+        cache.removeAll(files);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,328 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2014, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.frostwire.gui.library.tags;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.io.IOUtils;
+import org.limewire.concurrent.ExecutorsHelper;
+import org.limewire.util.CommonUtils;
+
+import com.frostwire.logging.Logger;
+
+/**
+ * The tags of the media files, by path, kept in a file of the user settings so a file
+ * is only parsed again after it changes, the size and modification time must match.
+ * <p>
+ * Parsing can mean forking mplayer, so the player only takes what's already here with
+ * {@link #get(File)}, asking for the rest in background with {@link #fill(File)}.
+ * Changes are saved in background at most every {@link #SAVE_INTERVAL} ms, and on shutdown.
+ *
+ * @author gubatron
+ * @author aldenml
+ *
+ */
+public final class TagsCache {
+
+    private static final Logger LOG = Logger.getLogger(TagsCache.class);
+
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int MAX_ENTRIES = 50000;
+    private static final long SAVE_INTERVAL = 30000;
+
+    // writeUTF takes up to 64K bytes, 3 per char at most
+    private static final int MAX_STRING_LENGTH = 16 * 1024;
+
+    private static final TagsCache INSTANCE = new TagsCache();
+
+    public static TagsCache instance() {
+        return INSTANCE;
+    }
+
+    private final File file;
+    private final ExecutorService worker;
+
+    /**
+     * Guarded by this.
+     */
+    private final Map<String, Entry> entries;
+    private boolean loaded;
+    private boolean dirty;
+    private long lastSave;
+
+    private final AtomicBoolean saveScheduled;
+
+    private TagsCache() {
+        this.file = new File(CommonUtils.getUserSettingsDir(), "tags.dat");
+        this.worker = ExecutorsHelper.newProcessingQueue("TagsCache");
+        this.entries = new LinkedHashMap<String, Entry>(1024, 0.75f, true) {
+
+            private static final long serialVersionUID = -2651867382941352394L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > MAX_ENTRIES;
+            }
+        };
+        this.saveScheduled = new AtomicBoolean(false);
+        this.lastSave = System.currentTimeMillis();
+
+        worker.execute(new Runnable() {
+            public void run() {
+                synchronized (TagsCache.this) {
+                    ensureLoaded();
+                }
+            }
+        });
+    }
+
+    /**
+     * The tags of the file if they were parsed since its last change, null otherwise.
+     */
+    public TagsData get(File f) {
+        String path = f.getAbsolutePath();
+        long size = f.length();
+        long lastModified = f.lastModified();
+
+        synchronized (this) {
+            ensureLoaded();
+
+            Entry e = entries.get(path);
+            return e != null && e.size == size && e.lastModified == lastModified ? e.data : null;
+        }
+    }
+
+    /**
+     * The tags of the file, parsing it in the calling thread if they are not here.
+     */
+    public TagsData parse(File f) {
+        TagsData data = get(f);
+
+        if (data == null) {
+            long size = f.length();
+            long lastModified = f.lastModified();
+
+            data = new TagsReader(f).parse();
+
+            if (data != null) {
+                put(f.getAbsolutePath(), new Entry(size, lastModified, data));
+            }
+        }
+
+        return data;
+    }
+
+    /**
+     * Parses the file in background, unless its tags are already here. Only audio files
+     * with a parser of their own are taken, the others, videos included, fork mplayer.
+     */
+    public void fill(final File f) {
+        if (!new TagsParserFactory().isNativeAudio(f)) {
+            return;
+        }
+
+        worker.execute(new Runnable() {
+            public void run() {
+                try {
+                    parse(f);
+                } catch (Throwable e) {
+                    LOG.warn("Error parsing tags of " + f, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Writes the changes to disk, in the calling thread.
+     */
+    public void save() {
+        // the background save and the one on shutdown, the snapshot is taken holding the
+        // file too so an older one is never written after a newer one
+        synchronized (file) {
+            List<Map.Entry<String, Entry>> snapshot;
+
+            synchronized (this) {
+                if (!dirty) {
+                    return;
+                }
+                snapshot = new ArrayList<Map.Entry<String, Entry>>(entries.entrySet());
+                dirty = false;
+            }
+
+            write(snapshot);
+        }
+    }
+
+    private void write(List<Map.Entry<String, Entry>> snapshot) {
+        File tmp = new File(file.getAbsolutePath() + ".tmp");
+        DataOutputStream out = null;
+
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(snapshot.size());
+
+            // eldest first, so the order of use survives
+            for (Map.Entry<String, Entry> e : snapshot) {
+                Entry entry = e.getValue();
+                TagsData data = entry.data;
+
+                out.writeUTF(e.getKey());
+                out.writeLong(entry.size);
+                out.writeLong(entry.lastModified);
+                out.writeInt(data.getDuration());
+                writeString(out, data.getBitrate());
+                writeString(out, data.getTitle());
+                writeString(out, data.getArtist());
+                writeString(out, data.getAlbum());
+                writeString(out, data.getComment());
+                writeString(out, data.getGenre());
+                writeString(out, data.getTrack());
+                writeString(out, data.getYear());
+            }
+
+            out.close();
+            out = null;
+
+            if (file.exists() && !file.delete()) {
+                throw new IOException("Unable to replace " + file);
+            }
+            if (!tmp.renameTo(file)) {
+                throw new IOException("Unable to rename " + tmp);
+            }
+        } catch (Throwable e) {
+            LOG.warn("Error saving tags cache", e);
+            tmp.delete();
+        } finally {
+            IOUtils.closeQuietly(out);
+        }
+    }
+
+    private void put(String path, Entry entry) {
+        boolean due;
+
+        synchronized (this) {
+            entries.put(path, entry);
+            dirty = true;
+
+            // the writes of a scan or a playlist import go together
+            long now = System.currentTimeMillis();
+            due = now - lastSave > SAVE_INTERVAL;
+            if (due) {
+                lastSave = now;
+            }
+        }
+
+        if (due && saveScheduled.compareAndSet(false, true)) {
+            worker.execute(new Runnable() {
+                public void run() {
+                    saveScheduled.set(false);
+                    save();
+                }
+            });
+        }
+    }
+
+    /**
+     * Called holding the lock.
+     */
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+
+        if (!file.exists()) {
+            return;
+        }
+
+        DataInputStream in = null;
+
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+            if (in.readInt() != FORMAT_VERSION) {
+                return;
+            }
+
+            int n = in.readInt();
+            for (int i = 0; i < n; i++) {
+                String path = in.readUTF();
+                long size = in.readLong();
+                long lastModified = in.readLong();
+                int duration = in.readInt();
+                String bitrate = readString(in);
+                String title = readString(in);
+                String artist = readString(in);
+                String album = readString(in);
+                String comment = readString(in);
+                String genre = readString(in);
+                String track = readString(in);
+                String year = readString(in);
+
+                TagsData data = new TagsData(duration, bitrate, title, artist, album, comment, genre, track, year);
+                entries.put(path, new Entry(size, lastModified, data));
+            }
+        } catch (Throwable e) {
+            LOG.warn("Error loading tags cache, starting empty", e);
+            entries.clear();
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null) {
+            out.writeUTF(s.length() > MAX_STRING_LENGTH ? s.substring(0, MAX_STRING_LENGTH) : s);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static final class Entry {
+
+        public final long size;
+        public final long lastModified;
+        public final TagsData data;
+
+        public Entry(long size, long lastModified, TagsData data) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.data = data;
+        }
+    }
+}
@@ -57,6 +57,15 @@ class TagsParserFactory {
         }
     }
 
+    /**
+     * True for the audio files read by a parser of their own, without mplayer.
+     */
+    public boolean isNativeAudio(File file) {
+        String ext = FilenameUtils.getExtension(file.getName());
+
+        return isMP3(ext) || isM4A(ext) || isOgg(ext) || isFlac(ext) || isJaudiotagger(ext);
+    }
+
     private boolean isMP3(String ext) {
         return MP3_EXTENSIONS.contains(ext);
     }
@@ -24,11 +24,7 @@ import java.awt.KeyboardFocusManager;
 import java.awt.event.KeyEvent;
 import java.io.File;
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Queue;
-import java.util.Random;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 
@@ -37,29 +33,20 @@ import javax.swing.JTable;
 import javax.swing.JTextField;
 import javax.swing.SwingUtilities;
 
-import org.apache.commons.io.FilenameUtils;
-import org.apache.commons.io.IOUtils;
 import org.limewire.concurrent.ExecutorsHelper;
 import org.limewire.util.FileUtils;
 import org.limewire.util.OSUtils;
 
-import com.coremedia.iso.BoxParser;
-import com.coremedia.iso.IsoFile;
-import com.coremedia.iso.PropertyBoxParserImpl;
-import com.coremedia.iso.boxes.Box;
-import com.coremedia.iso.boxes.Container;
 import com.frostwire.alexandria.Playlist;
 import com.frostwire.alexandria.PlaylistItem;
 import com.frostwire.gui.library.LibraryMediator;
-import com.frostwire.gui.library.tags.TagsReader;
+import com.frostwire.gui.library.tags.TagsCache;
+import com.frostwire.gui.library.tags.TagsData;
 import com.frostwire.gui.mplayer.MPlayer;
 import com.frostwire.mplayer.IcyInfoListener;
 import com.frostwire.mplayer.MediaPlaybackState;
 import com.frostwire.mplayer.PositionListener;
 import com.frostwire.mplayer.StateListener;
-import com.googlecode.mp4parser.AbstractBox;
-import com.googlecode.mp4parser.DataSource;
-import com.googlecode.mp4parser.FileDataSourceImpl;
 import com.limegroup.gnutella.MediaType;
 import com.limegroup.gnutella.gui.GUIMediator;
 import com.limegroup.gnutella.gui.MPlayerMediator;
@@ -86,15 +73,13 @@ public abstract class MediaPlayer implements RefreshListener, MPlayerUIEventList
     private MPlayer mplayer;
     private MediaSource currentMedia;
     private Playlist currentPlaylist;
-    private MediaSource[] playlistFilesView;
+    private volatile PlaybackQueue queue;
     private RepeatMode repeatMode;
     private boolean shuffle;
     private boolean playNextMedia;
 
     private double volume;
 
-    private Queue<MediaSource> lastRandomFiles;
-
     private final ExecutorService playExecutor;
 
     private static MediaPlayer instance;
@@ -118,7 +103,6 @@ public abstract class MediaPlayer implements RefreshListener, MPlayerUIEventList
     }
 
     protected MediaPlayer() {
-        lastRandomFiles = new LinkedList<MediaSource>();
         playExecutor = ExecutorsHelper.newProcessingQueue("AudioPlayer-PlayExecutor");
 
         String playerPath;
@@ -195,7 +179,8 @@ public abstract class MediaPlayer implements RefreshListener, MPlayerUIEventList
     }
 
     public MediaSource[] getPlaylistFilesView() {
-        return playlistFilesView;
+        PlaybackQueue q = queue;
+        return q != null ? q.toArray() : null;
     }
 
     public RepeatMode getRepeatMode() {
@@ -252,10 +237,11 @@ public abstract class MediaPlayer implements RefreshListener, MPlayerUIEventList
             this.playNextMedia = playNextSong;
             this.currentPlaylist = currentPlaylist;
 
-            if (playlistFilesView != null) {
-                this.playlistFilesView = playlistFilesView.toArray(new MediaSource[playlistFilesView.size()]);
-            } else {
-                this.playlistFilesView = null;
+            if (playlistFilesView == null) {
+                queue = null;
+            } else if (queue == null || queue.asList() != playlistFilesView) {
+                // the same list comes back when moving to the next file
+                queue = new PlaybackQueue(playlistFilesView);
             }
 
             if (play && currentMedia != null) {
@@ -287,51 +273,20 @@ public abstract class MediaPlayer implements RefreshListener, MPlayerUIEventList
         }
     }
 
+    /**
+     * Only from the tags cache, no file is parsed while loading, until the file is in
+     * the cache the duration comes from mplayer.
+     */
     private void calculateDurationInSecs(File f) {
-        String ext = FilenameUtils.getExtension(f.getName());
-        if (ext== null || !ext.toLowerCase().endsWith("mp3") || !ext.toLowerCase().endsWith("m4a")) {
-            durationInSeconds = -1;
-            return;
-        }
-
-        if (ext.toLowerCase().endsWith("mp3")) {
-            durationInSeconds = getDurationFromMP3(f);
-        } else if (ext.toLowerCase().endsWith("m4a")) {
-            durationInSeconds = getDurationFromM4A(f);
-        }
-    }
-
-    private long getDurationFromMP3(File f) {
-        try {
-            return new TagsReader(f).parse().getDuration();
-        } catch (Throwable e) {
-            return -1;
-        }
-    }
-
-    private long getDurationFromM4A(File f) {
-        try {
-            BoxParser parser = new PropertyBoxParserImpl() {
-                @Override
-                public Box parseBox(DataSource byteChannel, Container parent) throws IOException {
-                    Box box = super.parseBox(byteChannel, parent);
-
-                    if (box instanceof AbstractBox) {
-                        ((AbstractBox) box).parseDetails();
-                    }
+        TagsData data = TagsCache.instance().get(f);
 
-                    return box;
-                }
-            };
-            IsoFile isoFile = new IsoFile(new FileDataSourceImpl(f), parser);
-
-            try {
-                return isoFile.getMovieBox().getMovieHeaderBox().getDuration() / isoFile.getMovieBox().getMovieHeaderBox().getTimescale();
-            } finally {
-                IOUtils.closeQuietly(isoFile);
+        if (data != null && data.getDuration() > 0) {
+            durationInSeconds = data.getDuration();
+        } else {
+            durationInSeconds = -1;
+            if (data == null) {
+                TagsCache.instance().fill(f);
             }
-        } catch (Throwable e) {
-            return -1;
         }
     }
 
@@ -344,7 +299,8 @@ public abstract class MediaPlayer implements RefreshListener, MPlayerUIEventList
     }
 
     public void loadMedia(MediaSource source, boolean play, boolean playNextSong) {
-        loadMedia(source, play, playNextSong, currentPlaylist, (playlistFilesView != null) ? Arrays.asList(playlistFilesView) : null);
+        PlaybackQueue q = queue;
+        loadMedia(source, play, playNextSong, currentPlaylist, q != null ? q.asList() : null);
     }
 
     public void asyncLoadMedia(final MediaSource source, final boolean play, final boolean playNextSong) {
@@ -652,9 +608,9 @@ public abstract class MediaPlayer implements RefreshListener, MPlayerUIEventList
             media = getNextMedia(currentMedia);
         }
 
-        if (media != null) {
-            //System.out.println(song.getFile());
-            asyncLoadMedia(media, true, true, currentPlaylist, Arrays.asList(playlistFilesView));
+        PlaybackQueue q = queue;
+        if (media != null && q != null) {
+            asyncLoadMedia(media, true, true, currentPlaylist, q.asList());
         }
     }
     
@@ -724,152 +680,33 @@ public abstract class MediaPlayer implements RefreshListener, MPlayerUIEventList
     }
 
     public synchronized void setPlaylistFilesView(List<MediaSource> playlistFilesView) {
-        this.playlistFilesView = playlistFilesView.toArray(new MediaSource[playlistFilesView.size()]);
+        this.queue = new PlaybackQueue(playlistFilesView);
     }
 
     public MediaSource getNextRandomSong(MediaSource currentMedia) {
-        if (playlistFilesView == null) {
-            return null;
-        }
-
-        MediaSource songFile;
-        int count = 4;
-        while ((songFile = findRandomMediaFile(currentMedia)) == null && count-- > 0)
-            ;
-
-        if (songFile != null) {
-            if (count > 0) {
-                lastRandomFiles.add(songFile);
-                if (lastRandomFiles.size() > 3) {
-                    lastRandomFiles.poll();
-                }
-            } else {
-                songFile = currentMedia;
-                lastRandomFiles.clear();
-                lastRandomFiles.add(songFile);
-            }
-        }
-
-        return songFile;
+        PlaybackQueue q = queue;
+        return q != null ? q.nextShuffled(currentMedia) : null;
     }
 
     public MediaSource getNextContinuousMedia(MediaSource currentMedia) {
-        if (playlistFilesView == null) {
-            return null;
-        }
-
-        int n = playlistFilesView.length;
-        if (n == 1) {
-            return playlistFilesView[0];
-        }
-
-        for (int i = 0; i < n; i++) {
-            try {
-                MediaSource f1 = playlistFilesView[i];
-                if (currentMedia.equals(f1)) {
-                    for (int j = 1; j < n; j++) {
-                        MediaSource file = playlistFilesView[(j + i) % n];
-                        if (isPlayableFile(file) || file instanceof DeviceMediaSource) {
-                            return file;
-                        }
-                    }
-                }
-            } catch (Exception e) {
-                return null;
-            }
-        }
-
-        return null;
+        PlaybackQueue q = queue;
+        return q != null ? q.next(currentMedia, true) : null;
     }
 
     public MediaSource getNextMedia(MediaSource currentMedia) {
-        if (playlistFilesView == null) {
-            return null;
-        }
-
-        int n = playlistFilesView.length;
-        //        if (n == 1) {
-        //            return playlistFilesView.get(0);
-        //        }
-
-        //PlaylistFilesView should probably have a HashTable<AudioSource,Integer>
-        //Where the integer is the index of the AudioSource on playlistFilesView.
-        //This way we could easily find the current song and know the index of the
-        //next or previous song.
-        //When you have lots of files, I think the search below might
-        //be too slow.
-
-        for (int i = 0; i < n; i++) {
-            try {
-                MediaSource f1 = playlistFilesView[i];
-                if (currentMedia.equals(f1)) {
-                    for (int j = i + 1; j < n; j++) {
-                        MediaSource file = playlistFilesView[j];
-                        if (isPlayableFile(file)) {
-                            return file;
-                        }
-                    }
-                }
-            } catch (Exception e) {
-                return null;
-            }
-        }
-
-        return null;
+        PlaybackQueue q = queue;
+        return q != null ? q.next(currentMedia, false) : null;
     }
 
+    /**
+     * With shuffle on, the file played before in the shuffle.
+     */
     public MediaSource getPreviousMedia(MediaSource currentMedia) {
-        if (playlistFilesView == null) {
+        PlaybackQueue q = queue;
+        if (q == null) {
             return null;
         }
-
-        int n = playlistFilesView.length;
-        for (int i = 0; i < n; i++) {
-            try {
-                MediaSource f1 = playlistFilesView[i];
-                if (currentMedia.equals(f1)) {
-                    for (int j = i - 1; j >= 0; j--) {
-                        MediaSource file = playlistFilesView[j];
-                        if (isPlayableFile(file)) {
-                            return file;
-                        }
-                    }
-                }
-            } catch (Exception e) {
-                return null;
-            }
-        }
-
-        return null;
-    }
-
-    private MediaSource findRandomMediaFile(MediaSource excludeFile) {
-        if (playlistFilesView == null) {
-            return null;
-        }
-        int n = playlistFilesView.length;
-
-        if (n == 0) {
-            return null;
-        } else if (n == 1) {
-            return playlistFilesView[0];
-        }
-
-        int index = new Random(System.currentTimeMillis()).nextInt(n);
-
-        for (int i = index; i < n; i++) {
-            try {
-                MediaSource file = playlistFilesView[i];
-
-                if (!lastRandomFiles.contains(file) && !file.equals(excludeFile) && isPlayableFile(file)) {
-                    return file;
-                }
-            } catch (Exception e) {
-                return null;
-            }
-        }
-
-        return null;
+        return isShuffle() ? q.previousShuffled(currentMedia) : q.previous(currentMedia);
     }
 
     public boolean canSeek() {
@@ -123,6 +123,18 @@ public class MediaSource {
         }
         return false;
     }
+
+    @Override
+    public int hashCode() {
+        // only one of them is set
+        if (file != null) {
+            return file.hashCode();
+        }
+        if (url != null) {
+            return url.hashCode();
+        }
+        return playlistItem != null ? playlistItem.hashCode() : 0;
+    }
     
     public String getTitleText() {
     	    return titleText;
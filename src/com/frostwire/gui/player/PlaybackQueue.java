@@ -0,0 +1,233 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2014, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.frostwire.gui.player;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * The files the player moves through, in the order of the view they were played from.
+ * <p>
+ * The position of each file is kept in a map, so finding the current file doesn't
+ * depend on the size of the view. Shuffle goes through a random permutation of all
+ * the positions, made the first time it's needed and again once every file was played,
+ * so no file repeats before the others played, and going back retraces the permutation.
+ *
+ * @author gubatron
+ * @author aldenml
+ *
+ */
+final class PlaybackQueue {
+
+    private final MediaSource[] items;
+    private final List<MediaSource> view;
+    private final Map<MediaSource, Integer> positions;
+
+    private final Random random;
+
+    // shuffle state, guarded by this
+    private int[] order;
+    private int[] orderIndex;
+    private int cursor;
+
+    public PlaybackQueue(List<MediaSource> files) {
+        this.items = files.toArray(new MediaSource[files.size()]);
+        this.view = Collections.unmodifiableList(Arrays.asList(items));
+        this.positions = new HashMap<MediaSource, Integer>(items.length * 4 / 3 + 1);
+
+        for (int i = 0; i < items.length; i++) {
+            // the first one wins, like a scan would
+            if (!positions.containsKey(items[i])) {
+                positions.put(items[i], i);
+            }
+        }
+
+        this.random = new Random();
+        this.cursor = -1;
+    }
+
+    public MediaSource[] toArray() {
+        return items;
+    }
+
+    /**
+     * The files as a list, passing it back when loading the next file keeps this queue.
+     */
+    public List<MediaSource> asList() {
+        return view;
+    }
+
+    public int indexOf(MediaSource media) {
+        Integer i = media != null ? positions.get(media) : null;
+        return i != null ? i : -1;
+    }
+
+    /**
+     * The next playable file after <code>current</code>, or null.
+     *
+     * @param wrap continue from the start of the view, device files are taken as playable
+     */
+    public MediaSource next(MediaSource current, boolean wrap) {
+        int n = items.length;
+        if (wrap && n == 1) {
+            return items[0];
+        }
+
+        int p = indexOf(current);
+        if (p == -1) {
+            return null;
+        }
+
+        for (int j = 1; j < n; j++) {
+            int i = p + j;
+            if (i >= n) {
+                if (!wrap) {
+                    break;
+                }
+                i -= n;
+            }
+
+            MediaSource file = items[i];
+            if (MediaPlayer.isPlayableFile(file) || (wrap && file instanceof DeviceMediaSource)) {
+                return file;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * The previous playable file before <code>current</code>, or null.
+     */
+    public MediaSource previous(MediaSource current) {
+        int p = indexOf(current);
+
+        for (int i = p - 1; i >= 0; i--) {
+            MediaSource file = items[i];
+            if (MediaPlayer.isPlayableFile(file)) {
+                return file;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * The next playable file of the shuffle, or null if there's none other than <code>current</code>.
+     */
+    public synchronized MediaSource nextShuffled(MediaSource current) {
+        int n = items.length;
+        if (n == 0) {
+            return null;
+        } else if (n == 1) {
+            return items[0];
+        }
+
+        if (order == null) {
+            shuffle(-1);
+        }
+
+        int p = indexOf(current);
+        if (p != -1 && orderIndex[p] > cursor) {
+            // picked by hand, it counts as played from now
+            swap(cursor + 1, orderIndex[p]);
+            cursor++;
+        }
+
+        for (int visited = 0; visited < n; visited++) {
+            if (cursor + 1 >= n) {
+                shuffle(p);
+            }
+            cursor++;
+
+            MediaSource file = items[order[cursor]];
+            if (order[cursor] != p && MediaPlayer.isPlayableFile(file)) {
+                return file;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * The playable file played before <code>current</code> in the shuffle, or null.
+     */
+    public synchronized MediaSource previousShuffled(MediaSource current) {
+        if (order == null) {
+            return null;
+        }
+
+        int p = indexOf(current);
+        int k = p != -1 && orderIndex[p] <= cursor ? orderIndex[p] : cursor + 1;
+
+        for (k = k - 1; k >= 0; k--) {
+            MediaSource file = items[order[k]];
+            if (MediaPlayer.isPlayableFile(file)) {
+                cursor = k;
+                return file;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Fisher-Yates over all the positions, <code>last</code> is kept out of the first place.
+     */
+    private void shuffle(int last) {
+        int n = items.length;
+
+        if (order == null) {
+            order = new int[n];
+            orderIndex = new int[n];
+            for (int i = 0; i < n; i++) {
+                order[i] = i;
+            }
+        }
+
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int t = order[i];
+            order[i] = order[j];
+            order[j] = t;
+        }
+
+        for (int i = 0; i < n; i++) {
+            orderIndex[order[i]] = i;
+        }
+
+        if (last != -1 && order[0] == last && n > 1) {
+            swap(0, 1 + random.nextInt(n - 1));
+        }
+
+        cursor = -1;
+    }
+
+    private void swap(int a, int b) {
+        int t = order[a];
+        order[a] = order[b];
+        order[b] = t;
+        orderIndex[order[a]] = a;
+        orderIndex[order[b]] = b;
+    }
+}
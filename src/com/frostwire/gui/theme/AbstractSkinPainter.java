@@ -19,17 +19,31 @@
 package com.frostwire.gui.theme;
 
 import java.awt.Color;
+import java.awt.Graphics2D;
 import java.awt.Image;
 import java.awt.LinearGradientPaint;
 import java.awt.Paint;
+import java.awt.RenderingHints;
 import java.awt.Shape;
+import java.awt.geom.AffineTransform;
 import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 
 import javax.imageio.ImageIO;
+import javax.swing.JComponent;
 import javax.swing.plaf.nimbus.AbstractRegionPainter;
 
 /**
+ * Base of the skin painters.
+ * <p>
+ * What a painter paints depends only on its state, fixed at construction, and the size,
+ * so it's painted once to an image and the image drawn after that. The images of all
+ * the painters share a cache, bounded by number of pixels, the least recently used
+ * are dropped first. Nimbus' own cache only takes images of icon size.
  * 
  * @author gubatron
  * @author aldenml
@@ -39,6 +53,15 @@ public abstract class AbstractSkinPainter extends AbstractRegionPainter {
 
     private static final String IMAGES_PATH = "org/limewire/gui/images/skin_";
 
+    private static final int MAX_IMAGE_PIXELS = 128 * 1024;
+    private static final int MAX_CACHE_PIXELS = 2 * 1024 * 1024;
+
+    /**
+     * Painted images of all the painters, guarded by itself, like cachePixels.
+     */
+    private static final LinkedHashMap<CacheKey, BufferedImage> CACHE = new LinkedHashMap<CacheKey, BufferedImage>(64, 0.75f, true);
+    private static int cachePixels;
+
     protected final ShapeGenerator shapeGenerator;
 
     public AbstractSkinPainter() {
@@ -50,6 +73,80 @@ public abstract class AbstractSkinPainter extends AbstractRegionPainter {
         return null;
     }
 
+    /**
+     * Paints from the cache, see {@link #paintSkin(Graphics2D, JComponent, int, int, Object[])}.
+     */
+    @Override
+    protected final void doPaint(Graphics2D g, JComponent c, int width, int height, Object[] extendedCacheKeys) {
+        AffineTransform tx = g.getTransform();
+
+        // only plain scales, the image is drawn pixel to pixel
+        if (!isCached() || tx.getShearX() != 0 || tx.getShearY() != 0 || tx.getScaleX() <= 0 || tx.getScaleY() <= 0) {
+            paintSkin(g, c, width, height, extendedCacheKeys);
+            return;
+        }
+
+        double scaleX = tx.getScaleX();
+        double scaleY = tx.getScaleY();
+        int imageWidth = (int) Math.ceil(width * scaleX);
+        int imageHeight = (int) Math.ceil(height * scaleY);
+
+        if (imageWidth <= 0 || imageHeight <= 0 || imageWidth * imageHeight > MAX_IMAGE_PIXELS) {
+            paintSkin(g, c, width, height, extendedCacheKeys);
+            return;
+        }
+
+        CacheKey key = new CacheKey(this, width, height, scaleX, scaleY, extendedCacheKeys);
+
+        BufferedImage image;
+        synchronized (CACHE) {
+            image = CACHE.get(key);
+        }
+
+        if (image == null) {
+            image = new BufferedImage(imageWidth, imageHeight, BufferedImage.TYPE_INT_ARGB_PRE);
+
+            Graphics2D ig = image.createGraphics();
+            ig.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            ig.scale(scaleX, scaleY);
+            paintSkin(ig, c, width, height, extendedCacheKeys);
+            ig.dispose();
+
+            putCached(key, image);
+        }
+
+        g.drawImage(image, 0, 0, width, height, null);
+    }
+
+    /**
+     * Paints the skin, always the same for a given size.
+     */
+    protected abstract void paintSkin(Graphics2D g, JComponent c, int width, int height, Object[] extendedCacheKeys);
+
+    /**
+     * False for painters not worth caching, the ones painting images or nothing.
+     */
+    protected boolean isCached() {
+        return true;
+    }
+
+    private static void putCached(CacheKey key, BufferedImage image) {
+        synchronized (CACHE) {
+            BufferedImage previous = CACHE.put(key, image);
+            if (previous != null) {
+                cachePixels -= previous.getWidth() * previous.getHeight();
+            }
+            cachePixels += image.getWidth() * image.getHeight();
+
+            Iterator<BufferedImage> it = CACHE.values().iterator();
+            while (cachePixels > MAX_CACHE_PIXELS && it.hasNext()) {
+                BufferedImage eldest = it.next();
+                cachePixels -= eldest.getWidth() * eldest.getHeight();
+                it.remove();
+            }
+        }
+    }
+
     /**
      * Creates a simple vertical gradient using the shape for bounds and the
      * colors for top and bottom colors.
@@ -121,4 +218,46 @@ public abstract class AbstractSkinPainter extends AbstractRegionPainter {
             throw new RuntimeException("Error loading skin image", e);
         }
     }
+
+    private static final class CacheKey {
+
+        private final AbstractSkinPainter painter;
+        private final int width;
+        private final int height;
+        private final double scaleX;
+        private final double scaleY;
+        private final Object[] extendedCacheKeys;
+        private final int hash;
+
+        public CacheKey(AbstractSkinPainter painter, int width, int height, double scaleX, double scaleY, Object[] extendedCacheKeys) {
+            this.painter = painter;
+            this.width = width;
+            this.height = height;
+            this.scaleX = scaleX;
+            this.scaleY = scaleY;
+            this.extendedCacheKeys = extendedCacheKeys;
+
+            int h = System.identityHashCode(painter);
+            h = 31 * h + width;
+            h = 31 * h + height;
+            h = 31 * h + Double.valueOf(scaleX).hashCode();
+            h = 31 * h + Double.valueOf(scaleY).hashCode();
+            h = 31 * h + Arrays.hashCode(extendedCacheKeys);
+            this.hash = h;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof CacheKey)) {
+                return false;
+            }
+            CacheKey k = (CacheKey) obj;
+            return painter == k.painter && width == k.width && height == k.height && scaleX == k.scaleX && scaleY == k.scaleY && Arrays.equals(extendedCacheKeys, k.extendedCacheKeys);
+        }
+    }
 }
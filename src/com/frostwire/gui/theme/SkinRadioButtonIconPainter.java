@@ -38,7 +38,13 @@ public final class SkinRadioButtonIconPainter extends AbstractSkinPainter {
     }
 
     @Override
-    protected void doPaint(Graphics2D g, JComponent c, int width, int height, Object[] extendedCacheKeys) {
+    protected boolean isCached() {
+        // already an image
+        return false;
+    }
+
+    @Override
+    protected void paintSkin(Graphics2D g, JComponent c, int width, int height, Object[] extendedCacheKeys) {
         g.drawImage(image, 0, 0, null);
     }
 
@@ -39,7 +39,7 @@ public final class SkinScrollBarTrackPainter extends AbstractSkinPainter {
     }
 
     @Override
-    protected void doPaint(Graphics2D g, JComponent c, int width, int height, Object[] extendedCacheKeys) {
+    protected void paintSkin(Graphics2D g, JComponent c, int width, int height, Object[] extendedCacheKeys) {
         if (testValid(0, 0, width, height)) {
             Shape s = shapeGenerator.createRectangle(0, 0, width, height);
             g.setPaint(getScrollBarTrackPaint(s));
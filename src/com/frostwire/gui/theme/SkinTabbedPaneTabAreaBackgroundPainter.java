@@ -37,7 +37,7 @@ public final class SkinTabbedPaneTabAreaBackgroundPainter extends AbstractSkinPa
     }
 
     @Override
-    protected void doPaint(Graphics2D g, JComponent c, int width, int height, Object[] extendedCacheKeys) {
+    protected void paintSkin(Graphics2D g, JComponent c, int width, int height, Object[] extendedCacheKeys) {
         switch (state) {
         case Disabled:
         case EnableMouseOver:
@@ -40,7 +40,7 @@ public final class SkinTableHeaderPainter extends AbstractSkinPainter {
     }
 
     @Override
-    protected void doPaint(Graphics2D g, JComponent c, int width, int height, Object[] extendedCacheKeys) {
+    protected void paintSkin(Graphics2D g, JComponent c, int width, int height, Object[] extendedCacheKeys) {
         if (testValid(0, 0, width - 1, height - 1)) {
             Shape s = shapeGenerator.createRectangle(0, 0, width, height);
             g.setPaint(getTableHeaderPaint(s));
@@ -52,7 +52,7 @@ public final class CrawlCacheDB {
 
     private static final String DATABASE_NAME = "crawldb";
 
-    private static final int DATABASE_VERSION = 1;
+    private static final int DATABASE_VERSION = 2;
 
     private static final String TABLE_NAME = "CacheData";
 
@@ -92,6 +92,27 @@ public final class CrawlCacheDB {
         return c;
     }
 
+    /**
+     * Number of rows, with a single COUNT query instead of walking a cursor over all the ids.
+     */
+    public long count() {
+        SQLiteQueryBuilder qb = new SQLiteQueryBuilder();
+
+        qb.setTables(TABLE_NAME);
+
+        SQLiteDatabase db = databaseHelper.getReadableDatabase();
+
+        Cursor c = qb.query(db, new String[] { "COUNT(" + Columns.ID + ")" }, null, null, null, null, null);
+
+        try {
+            return c != null && c.moveToNext() ? c.getLong(1) : 0;
+        } finally {
+            if (c != null) {
+                c.close();
+            }
+        }
+    }
+
     public long insert(ContentValues initialValues) {
         ContentValues values;
 
@@ -165,7 +186,8 @@ public final class CrawlCacheDB {
             db.execSQL("CREATE TABLE " + TABLE_NAME + " (" + Columns.ID + " INTEGER IDENTITY," + Columns.KEY + " VARCHAR," + Columns.DATA + " BINARY," + Columns.DATE_ADDED + " BIGINT" + ");");
 
             db.execSQL("CREATE INDEX idx_" + TABLE_NAME + "_" + Columns.ID + " ON " + TABLE_NAME + " (" + Columns.ID + ")");
-            db.execSQL("CREATE INDEX idx_" + TABLE_NAME + "_" + Columns.KEY + " ON " + TABLE_NAME + " (" + Columns.KEY + ")");
+            db.execSQL("CREATE UNIQUE INDEX idx_" + TABLE_NAME + "_" + Columns.KEY + " ON " + TABLE_NAME + " (" + Columns.KEY + ")");
+            db.execSQL("CREATE INDEX idx_" + TABLE_NAME + "_" + Columns.DATE_ADDED + " ON " + TABLE_NAME + " (" + Columns.DATE_ADDED + ")");
         }
 
         @Override
@@ -17,6 +17,15 @@
 
 package com.frostwire.search;
 
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.limewire.concurrent.ExecutorsHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -26,6 +35,13 @@ import com.frostwire.search.CrawlCacheDB.Columns;
 import com.limegroup.gnutella.settings.SearchSettings;
 
 /**
+ * Crawl cache backed by {@link CrawlCacheDB}, with a small LRU in memory in front
+ * of it, bounded both by number of entries and by bytes, so that repeated crawls
+ * of the same torrents don't hit the database.
+ * <p>
+ * Entries expire {@link #TTL_SECONDS} after they were added, a background job
+ * deletes the expired rows. The number of rows is counted once and tracked from
+ * then on.
  * 
  * @author gubatron
  * @author aldenml
@@ -35,27 +51,69 @@ public class DatabaseCrawlCache implements CrawlCache {
 
     private static final Logger LOG = LoggerFactory.getLogger(DatabaseCrawlCache.class);
 
-    private CrawlCacheDB db;
+    private static final int MAX_MEMORY_ENTRIES = 512;
+    private static final long MAX_MEMORY_BYTES = 16 * 1024 * 1024;
+
+    private static final long TTL_SECONDS = TimeUnit.DAYS.toSeconds(7);
+    private static final long EVICTION_INTERVAL_MINUTES = 30;
+
+    private final CrawlCacheDB db;
+
+    /**
+     * Access ordered, guarded by itself.
+     */
+    private final LinkedHashMap<String, Entry> memory;
+    private long memoryBytes;
+
+    private final AtomicLong size;
+    private volatile boolean sizeLoaded;
+
+    private final ScheduledExecutorService evictionExec;
 
     public DatabaseCrawlCache() {
         db = CrawlCacheDB.instance();
+
+        memory = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+        size = new AtomicLong();
+
+        evictionExec = Executors.newSingleThreadScheduledExecutor(ExecutorsHelper.daemonThreadFactory("CrawlCacheEviction"));
+        evictionExec.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                evictExpired();
+            }
+        }, 1, EVICTION_INTERVAL_MINUTES, TimeUnit.MINUTES);
     }
 
     @Override
     public byte[] get(String key) {
+        long now = now();
+
+        synchronized (memory) {
+            Entry e = memory.get(key);
+            if (e != null) {
+                if (!isExpired(e.dateAdded, now)) {
+                    return e.data;
+                }
+                removeFromMemory(key);
+            }
+        }
+
         byte[] data = null;
+        long dateAdded = 0;
 
         Cursor c = null;
 
         try {
-            String[] columns = new String[] { Columns.DATA };
-            String where = Columns.KEY + " = ?";
-            String[] whereArgs = new String[] { key };
+            String[] columns = new String[] { Columns.DATA, Columns.DATE_ADDED };
+            String where = Columns.KEY + " = ? AND " + Columns.DATE_ADDED + " > ?";
+            String[] whereArgs = new String[] { key, String.valueOf(now - TTL_SECONDS) };
 
             c = db.query(columns, where, whereArgs, null);
 
             if (c.moveToNext()) {
                 data = c.getBytes(c.getColumnIndex(Columns.DATA));
+                dateAdded = c.getLong(c.getColumnIndex(Columns.DATE_ADDED));
             }
 
         } catch (Throwable e) {
@@ -66,19 +124,40 @@ public class DatabaseCrawlCache implements CrawlCache {
             }
         }
 
+        if (data != null) {
+            putInMemory(key, data, dateAdded);
+        }
+
         return data;
     }
 
+    /**
+     * Inserts or replaces the data for <code>key</code>, there is a unique index on it.
+     */
     @Override
     public void put(String key, byte[] data) {
         if (SearchSettings.SMART_SEARCH_ENABLED.getValue()) {
             try {
+                long now = now();
+
                 ContentValues values = new ContentValues();
 
-                values.put(Columns.KEY, key);
                 values.put(Columns.DATA, data);
+                values.put(Columns.DATE_ADDED, now);
+
+                String where = Columns.KEY + " = ?";
+                String[] whereArgs = new String[] { key };
 
-                db.insert(values);
+                synchronized (size) {
+                    if (db.update(values, where, whereArgs) <= 0) {
+                        values.put(Columns.KEY, key);
+                        if (db.insert(values) > 0) {
+                            size.incrementAndGet();
+                        }
+                    }
+                }
+
+                putInMemory(key, data, now);
             } catch (Throwable e) {
                 LOG.warn("Error putting value to crawl cache: " + e.getMessage());
             }
@@ -87,11 +166,20 @@ public class DatabaseCrawlCache implements CrawlCache {
 
     @Override
     public void remove(String key) {
+        synchronized (memory) {
+            removeFromMemory(key);
+        }
+
         try {
             String where = Columns.KEY + " = ?";
             String[] whereArgs = new String[] { key };
 
-            db.delete(where, whereArgs);
+            synchronized (size) {
+                int count = db.delete(where, whereArgs);
+                if (count > 0) {
+                    size.addAndGet(-count);
+                }
+            }
         } catch (Throwable e) {
             LOG.warn("Error deleting value from crawl cache: " + e.getMessage());
         }
@@ -99,8 +187,17 @@ public class DatabaseCrawlCache implements CrawlCache {
 
     @Override
     public synchronized void clear() {
+        synchronized (memory) {
+            memory.clear();
+            memoryBytes = 0;
+        }
+
         try {
-            db.delete("", new String[] {});
+            synchronized (size) {
+                db.delete("", new String[] {});
+                size.set(0);
+                sizeLoaded = true;
+            }
         } catch (Throwable e) {
             LOG.warn("Error deleting crawl cache: " + e.getMessage());
         }
@@ -108,30 +205,101 @@ public class DatabaseCrawlCache implements CrawlCache {
 
     @Override
     public long size() {
-        long size = 0;
+        if (!sizeLoaded) {
+            synchronized (size) {
+                if (!sizeLoaded) {
+                    try {
+                        size.set(db.count());
+                        sizeLoaded = true;
+                    } catch (Throwable e) {
+                        LOG.warn("Failed to count crawl cache entries", e);
+                    }
+                }
+            }
+        }
 
-        Cursor c = null;
+        return size.get();
+    }
 
-        try {
+    private void evictExpired() {
+        long limit = now() - TTL_SECONDS;
 
-            String[] columns = new String[] { Columns.ID };
-            String where = "";
-            String[] whereArgs = new String[] {};
+        synchronized (memory) {
+            Iterator<Map.Entry<String, Entry>> it = memory.entrySet().iterator();
+            while (it.hasNext()) {
+                Entry e = it.next().getValue();
+                if (e.dateAdded <= limit) {
+                    memoryBytes -= e.data.length;
+                    it.remove();
+                }
+            }
+        }
 
-            c = db.query(columns, where, whereArgs, null);
+        try {
+            String where = Columns.DATE_ADDED + " <= ?";
+            String[] whereArgs = new String[] { String.valueOf(limit) };
 
-            if (c != null) {
-                size = c.getCount();
+            synchronized (size) {
+                int count = db.delete(where, whereArgs);
+                if (count > 0) {
+                    size.addAndGet(-count);
+                    LOG.info("Evicted " + count + " expired crawl cache entries");
+                }
             }
+        } catch (Throwable e) {
+            LOG.warn("Error evicting expired crawl cache entries", e);
+        }
+    }
 
-        } catch (Exception e) {
-            LOG.warn("Failed to get num of shared files", e);
-        } finally {
-            if (c != null) {
-                c.close();
+    private void putInMemory(String key, byte[] data, long dateAdded) {
+        if (data.length > MAX_MEMORY_BYTES / 4) {
+            // don't let a single big entry flush the whole memory cache
+            return;
+        }
+
+        synchronized (memory) {
+            removeFromMemory(key);
+
+            memory.put(key, new Entry(data, dateAdded));
+            memoryBytes += data.length;
+
+            Iterator<Entry> it = memory.values().iterator();
+            while (it.hasNext() && (memory.size() > MAX_MEMORY_ENTRIES || memoryBytes > MAX_MEMORY_BYTES)) {
+                memoryBytes -= it.next().data.length;
+                it.remove();
             }
         }
+    }
+
+    /**
+     * Must be called holding the <code>memory</code> lock.
+     */
+    private void removeFromMemory(String key) {
+        Entry e = memory.remove(key);
+        if (e != null) {
+            memoryBytes -= e.data.length;
+        }
+    }
 
-        return size;
+    private static boolean isExpired(long dateAdded, long now) {
+        return dateAdded <= now - TTL_SECONDS;
+    }
+
+    /**
+     * In seconds, like the {@link Columns#DATE_ADDED} column.
+     */
+    private static long now() {
+        return System.currentTimeMillis() / 1000;
+    }
+
+    private static final class Entry {
+
+        public final byte[] data;
+        public final long dateAdded;
+
+        public Entry(byte[] data, long dateAdded) {
+            this.data = data;
+            this.dateAdded = dateAdded;
+        }
     }
 }
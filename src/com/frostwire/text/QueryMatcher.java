@@ -0,0 +1,407 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2014, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.frostwire.text;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Tells if a text contains all the tokens of a query, after removing accents and
+ * lower casing it, the same way the tokens were normalized.
+ * <p>
+ * Built once per query, it can be used from any thread. The text is folded one char
+ * at a time, with a precomputed table for the latin ranges, and fed to an Aho-Corasick
+ * automaton of the tokens, so each text is scanned once, whatever the number of tokens,
+ * without creating intermediate strings.
+ * <p>
+ * When built to sanitize, html tags and entities are skipped and the separators
+ * removed by the search query sanitizer (punctuation, <code>.torrent</code>, <code>www.</code>,
+ * <code>.com</code>, <code>.net</code>) are read as spaces, tokens never contain spaces.
+ *
+ * @author gubatron
+ * @author aldenml
+ *
+ */
+public final class QueryMatcher {
+
+    private static final int FOLD_TABLE_SIZE = 0x0250;
+
+    /**
+     * Folded form of each char up to the end of Latin Extended-B.
+     */
+    private static final String[] FOLD_TABLE = buildFoldTable();
+
+    private static final String SEPARATORS = "\\/%_;-.()[]\n\r\u00D0&~{}*@^'=!,\u00A1|#\u00C0\u00C1";
+
+    private final boolean sanitize;
+
+    private final int numTokens;
+    private final int words;
+
+    // automaton, state 0 is the root
+    private final char[][] keys;
+    private final int[][] next;
+    private final int[] fail;
+    private final long[][] out;
+
+    /**
+     * @param tokens tokens normalized with {@link #normalize(String)}, empty ones are ignored
+     * @param sanitize if the text should be read like the search query sanitizer does
+     */
+    public QueryMatcher(Collection<String> tokens, boolean sanitize) {
+        this.sanitize = sanitize;
+
+        Set<String> unique = new LinkedHashSet<String>();
+        for (String token : tokens) {
+            if (token != null && token.length() > 0) {
+                unique.add(token);
+            }
+        }
+
+        this.numTokens = unique.size();
+        this.words = Math.max(1, (numTokens + 63) / 64);
+
+        Builder b = new Builder();
+        int i = 0;
+        for (String token : unique) {
+            b.add(token, i++);
+        }
+        b.link();
+
+        int n = b.keys.size();
+        this.keys = new char[n][];
+        this.next = new int[n][];
+        this.fail = new int[n];
+        this.out = new long[n][];
+        for (int s = 0; s < n; s++) {
+            keys[s] = b.keys.get(s);
+            next[s] = b.next.get(s);
+            fail[s] = b.fail.get(s);
+            out[s] = b.out.get(s);
+        }
+    }
+
+    /**
+     * @return true if the text contains all the tokens, always true without tokens
+     */
+    public boolean matches(CharSequence text) {
+        if (numTokens == 0) {
+            return true;
+        }
+
+        long[] found = new long[words];
+        int remaining = numTokens;
+        int state = 0;
+
+        int len = text.length();
+        int i = 0;
+        while (i < len) {
+            char c = text.charAt(i);
+
+            if (sanitize) {
+                int skip = skipHtml(text, i, c);
+                if (skip > i) {
+                    i = skip;
+                    continue;
+                }
+                skip = skipSeparator(text, i, c);
+                if (skip > i) {
+                    state = 0;
+                    i = skip;
+                    continue;
+                }
+            }
+
+            i++;
+
+            if (c < 0x80) {
+                if (c >= 'A' && c <= 'Z') {
+                    c = (char) (c + ('a' - 'A'));
+                }
+                state = step(state, c);
+                remaining = collect(state, found, remaining);
+            } else {
+                String folded = fold(c);
+                for (int k = 0; k < folded.length(); k++) {
+                    state = step(state, folded.charAt(k));
+                    remaining = collect(state, found, remaining);
+                }
+            }
+
+            if (remaining == 0) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * The normalization {@link #matches(CharSequence)} applies to the text, without
+     * sanitizing, for the tokens of a query.
+     */
+    public static String normalize(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                sb.append(c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c);
+            } else {
+                sb.append(fold(c));
+            }
+        }
+        return sb.toString();
+    }
+
+    private int step(int state, char c) {
+        while (true) {
+            int k = Arrays.binarySearch(keys[state], c);
+            if (k >= 0) {
+                return next[state][k];
+            }
+            if (state == 0) {
+                return 0;
+            }
+            state = fail[state];
+        }
+    }
+
+    private int collect(int state, long[] found, int remaining) {
+        long[] mask = out[state];
+        if (mask != null) {
+            for (int w = 0; w < words; w++) {
+                long added = mask[w] & ~found[w];
+                if (added != 0) {
+                    found[w] |= added;
+                    remaining -= Long.bitCount(added);
+                }
+            }
+        }
+        return remaining;
+    }
+
+    /**
+     * @return the index after the html tag or entity starting at <code>i</code>, or <code>i</code>
+     */
+    private static int skipHtml(CharSequence text, int i, char c) {
+        char end;
+        if (c == '<') {
+            end = '>';
+        } else if (c == '&') {
+            end = ';';
+        } else {
+            return i;
+        }
+
+        int j = i + 1;
+        while (j < text.length()) {
+            char d = text.charAt(j);
+            if (d == end) {
+                return j + 1;
+            }
+            if (d == '\n' || d == '\r' || d == '\u0085' || d == '\u2028' || d == '\u2029') {
+                break;
+            }
+            // tags are stripped before entities
+            int skip = end == ';' && d == '<' ? skipHtml(text, j, d) : j;
+            j = skip > j ? skip : j + 1;
+        }
+        return i;
+    }
+
+    /**
+     * @return the index after the separator starting at <code>i</code>, or <code>i</code>
+     */
+    private static int skipSeparator(CharSequence text, int i, char c) {
+        if (c == '.') {
+            if (regionMatches(text, i + 1, "torrent")) {
+                return i + 8;
+            }
+            if (regionMatches(text, i + 1, "com") || regionMatches(text, i + 1, "net")) {
+                return i + 4;
+            }
+            return i + 1;
+        }
+        if (c == 'w' && regionMatches(text, i + 1, "ww.")) {
+            return i + 4;
+        }
+        return SEPARATORS.indexOf(c) != -1 ? i + 1 : i;
+    }
+
+    private static boolean regionMatches(CharSequence text, int offset, String s) {
+        if (offset + s.length() > text.length()) {
+            return false;
+        }
+        for (int k = 0; k < s.length(); k++) {
+            if (text.charAt(offset + k) != s.charAt(k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String fold(char c) {
+        return c < FOLD_TABLE_SIZE ? FOLD_TABLE[c] : computeFold(c);
+    }
+
+    private static String[] buildFoldTable() {
+        String[] table = new String[FOLD_TABLE_SIZE];
+        for (int c = 0; c < FOLD_TABLE_SIZE; c++) {
+            table[c] = computeFold((char) c);
+        }
+        return table;
+    }
+
+    private static String computeFold(char c) {
+        String norm = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFKD);
+
+        StringBuilder sb = new StringBuilder(norm.length());
+        for (int i = 0; i < norm.length(); i++) {
+            char d = norm.charAt(i);
+            if (Character.UnicodeBlock.of(d) != Character.UnicodeBlock.COMBINING_DIACRITICAL_MARKS) {
+                sb.append(d);
+            }
+        }
+
+        return sb.toString().toLowerCase(Locale.US);
+    }
+
+    /**
+     * Trie of the tokens, with the failure links and outputs of the automaton.
+     */
+    private final class Builder {
+
+        final List<char[]> keys = new ArrayList<char[]>();
+        final List<int[]> next = new ArrayList<int[]>();
+        final List<Integer> fail = new ArrayList<Integer>();
+        final List<long[]> out = new ArrayList<long[]>();
+
+        Builder() {
+            newState();
+        }
+
+        void add(String token, int index) {
+            int state = 0;
+            for (int i = 0; i < token.length(); i++) {
+                char c = token.charAt(i);
+                int k = Arrays.binarySearch(keys.get(state), c);
+                if (k >= 0) {
+                    state = next.get(state)[k];
+                } else {
+                    int child = newState();
+                    insert(state, -(k + 1), c, child);
+                    state = child;
+                }
+            }
+
+            long[] mask = out.get(state);
+            if (mask == null) {
+                mask = new long[words];
+                out.set(state, mask);
+            }
+            mask[index / 64] |= 1L << (index % 64);
+        }
+
+        /**
+         * Breadth first, so the failure state of a state is always linked before it.
+         */
+        void link() {
+            LinkedList<Integer> queue = new LinkedList<Integer>();
+
+            for (int child : next.get(0)) {
+                fail.set(child, 0);
+                queue.add(child);
+            }
+
+            while (!queue.isEmpty()) {
+                int state = queue.poll();
+                char[] stateKeys = keys.get(state);
+                int[] stateNext = next.get(state);
+
+                for (int k = 0; k < stateKeys.length; k++) {
+                    int child = stateNext[k];
+
+                    int f = fail.get(state);
+                    int target;
+                    while (true) {
+                        int j = Arrays.binarySearch(keys.get(f), stateKeys[k]);
+                        if (j >= 0) {
+                            target = next.get(f)[j];
+                            break;
+                        }
+                        if (f == 0) {
+                            target = 0;
+                            break;
+                        }
+                        f = fail.get(f);
+                    }
+                    fail.set(child, target);
+
+                    // a token ending at the failure state also ends here
+                    long[] inherited = out.get(target);
+                    if (inherited != null) {
+                        long[] mask = out.get(child);
+                        if (mask == null) {
+                            mask = new long[words];
+                            out.set(child, mask);
+                        }
+                        for (int w = 0; w < words; w++) {
+                            mask[w] |= inherited[w];
+                        }
+                    }
+
+                    queue.add(child);
+                }
+            }
+        }
+
+        private int newState() {
+            keys.add(new char[0]);
+            next.add(new int[0]);
+            fail.add(0);
+            out.add(null);
+            return keys.size() - 1;
+        }
+
+        private void insert(int state, int pos, char c, int child) {
+            char[] oldKeys = keys.get(state);
+            int[] oldNext = next.get(state);
+
+            char[] newKeys = new char[oldKeys.length + 1];
+            int[] newNext = new int[oldNext.length + 1];
+
+            System.arraycopy(oldKeys, 0, newKeys, 0, pos);
+            System.arraycopy(oldNext, 0, newNext, 0, pos);
+            newKeys[pos] = c;
+            newNext[pos] = child;
+            System.arraycopy(oldKeys, pos, newKeys, pos + 1, oldKeys.length - pos);
+            System.arraycopy(oldNext, pos, newNext, pos + 1, oldNext.length - pos);
+
+            keys.set(state, newKeys);
+            next.set(state, newNext);
+        }
+    }
+}
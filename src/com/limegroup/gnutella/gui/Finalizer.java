@@ -1,6 +1,8 @@
 package com.limegroup.gnutella.gui;
 
+import com.frostwire.gui.Librarian;
 import com.frostwire.gui.library.LibraryMediator;
+import com.frostwire.gui.library.tags.TagsCache;
 import com.frostwire.gui.player.MediaPlayer;
 import com.frostwire.uxstats.UXStats;
 import com.limegroup.gnutella.gui.bugs.BugManager;
@@ -64,6 +66,9 @@ final class Finalizer {
 
         MediaPlayer.instance().stop();
 
+        // no new scans while shutting down
+        Librarian.instance().cancelPendingShares();
+
         // TODO: This line of code must be refactored in a better workflow of
         // LifecycleManager -> ActivityCallback
         //LibraryMediator.instance().getLibrary().close();
@@ -85,6 +90,7 @@ final class Finalizer {
         Thread shutdown = new Thread("Shutdown Thread") {
             public void run() {
                 try {
+                    TagsCache.instance().save();
                     BugManager.instance().shutdown();
                     GuiCoreMediator.getLifecycleManager().shutdown(toExecute);
                     System.exit(0);
@@ -37,9 +37,7 @@ import java.lang.reflect.InvocationTargetException;
 import java.net.NetworkInterface;
 import java.net.URL;
 import java.net.URLEncoder;
-import java.util.ArrayList;
 import java.util.Enumeration;
-import java.util.List;
 import java.util.Locale;
 
 import javax.swing.Action;
@@ -255,12 +253,6 @@ public final class GUIMediator {
      */
     private static PopupMenu TRAY_MENU;
 
-    /**
-     * <tt>List</tt> of <tt>RefreshListener</tt> classes to notify of UI refresh
-     * events.
-     */
-    private static final List<RefreshListener> REFRESH_LIST = new ArrayList<RefreshListener>();
-
     /**
      * String to be displayed in title bar of LW client.
      */
@@ -364,8 +356,13 @@ public final class GUIMediator {
     }
 
     private final void startTimer() {
-        RefreshTimer timer = new RefreshTimer();
-        timer.startTimer();
+        RefreshScheduler scheduler = RefreshScheduler.instance();
+        scheduler.add(new RefreshListener() {
+            public void refresh() {
+                refreshGUI();
+            }
+        });
+        scheduler.start();
     }
 
     /**
@@ -586,19 +583,10 @@ public final class GUIMediator {
     }
 
     /**
-     * Refreshes the various gui components that require refreshing.
+     * Refreshes the connection status, the other gui components are refreshed
+     * by the {@link RefreshScheduler}.
      */
     public final void refreshGUI() {
-        for (int i = 0; i < REFRESH_LIST.size(); i++) {
-            try {
-                REFRESH_LIST.get(i).refresh();
-            } catch (Throwable t) {
-                // Show the error for each RefreshListener individually
-                // so that we continue refreshing the other items.
-                ErrorService.error(t);
-            }
-        }
-
         // update the status panel
         int quality = getConnectionQuality();
 
@@ -1453,10 +1441,10 @@ public final class GUIMediator {
      * listeners to be notified when a UI refresh event occurs.
      *
      * @param the new <tt>RefreshListener</tt> to add
+     * @see RefreshScheduler
      */
     public static void addRefreshListener(RefreshListener listener) {
-        if (!REFRESH_LIST.contains(listener))
-            REFRESH_LIST.add(listener);
+        RefreshScheduler.instance().add(listener);
     }
 
     /**
@@ -1466,7 +1454,7 @@ public final class GUIMediator {
      * @param the <tt>RefreshListener</tt> to remove
      */
     public static void removeRefreshListener(RefreshListener listener) {
-        REFRESH_LIST.remove(listener);
+        RefreshScheduler.instance().remove(listener);
     }
 
     /**
@@ -17,6 +17,7 @@ package com.limegroup.gnutella.gui;
 
 import com.frostwire.bittorrent.BTContext;
 import com.frostwire.bittorrent.BTEngine;
+import com.frostwire.gui.Librarian;
 import com.frostwire.logging.Logger;
 import com.frostwire.util.UserAgentGenerator;
 import com.limegroup.gnutella.ExternalControl;
@@ -112,6 +113,9 @@ public final class Initializer {
         startSetupManager(setupManager);
         validateSaveDirectory();
 
+        // Read the shared files in background, before the library tables ask for them.
+        Librarian.instance();
+
         startBittorrentCore();
 
         // Load the UI, system tray & notification handlers,
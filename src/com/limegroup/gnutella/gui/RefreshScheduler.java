@@ -0,0 +1,137 @@
+package com.limegroup.gnutella.gui;
+
+import java.awt.Frame;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.swing.Timer;
+
+import org.limewire.service.ErrorService;
+
+import com.limegroup.gnutella.settings.ApplicationSettings;
+
+/**
+ * Refreshes the gui elements, each one at its own pace.
+ * <p>
+ * Plain <tt>RefreshListener</tt>s are refreshed once a second, and not at all while
+ * the main window is hidden or minimized. A {@link ScheduledRefreshListener} sets its
+ * own interval and is asked before each refresh if there's anything to do.
+ */
+public final class RefreshScheduler {
+
+    /**
+     * The resolution of the timer, in milliseconds.
+     */
+    private static final int TICK = 250;
+
+    /**
+     * The interval of the plain listeners, in milliseconds.
+     */
+    private static final long DEFAULT_INTERVAL = 1000;
+
+    private static final RefreshScheduler INSTANCE = new RefreshScheduler();
+
+    public static RefreshScheduler instance() {
+        return INSTANCE;
+    }
+
+    private final List<Entry> entries;
+    private final Timer timer;
+
+    private long uptimeMillis;
+    private long lastTick;
+
+    private RefreshScheduler() {
+        this.entries = new CopyOnWriteArrayList<Entry>();
+        this.timer = new Timer(TICK, new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                tick();
+            }
+        });
+        this.timer.setCoalesce(true);
+    }
+
+    public void start() {
+        lastTick = System.currentTimeMillis();
+        timer.start();
+    }
+
+    public void add(RefreshListener listener) {
+        for (Entry e : entries) {
+            if (e.listener == listener) {
+                return;
+            }
+        }
+        entries.add(new Entry(listener));
+    }
+
+    public void remove(RefreshListener listener) {
+        for (Entry e : entries) {
+            if (e.listener == listener) {
+                entries.remove(e);
+            }
+        }
+    }
+
+    private void tick() {
+        long now = System.currentTimeMillis();
+
+        updateUptime(now);
+
+        boolean appShowing = isAppShowing();
+
+        for (Entry e : entries) {
+            if (now < e.nextRefresh) {
+                continue;
+            }
+
+            try {
+                if (e.listener instanceof ScheduledRefreshListener) {
+                    ScheduledRefreshListener l = (ScheduledRefreshListener) e.listener;
+                    e.nextRefresh = now + l.getRefreshInterval();
+                    if (l.needsRefresh()) {
+                        l.refresh();
+                    }
+                } else if (appShowing) {
+                    e.nextRefresh = now + DEFAULT_INTERVAL;
+                    e.listener.refresh();
+                }
+            } catch (Throwable t) {
+                // Show the error for each RefreshListener individually
+                // so that we continue refreshing the other items.
+                ErrorService.error(t);
+            }
+        }
+    }
+
+    private void updateUptime(long now) {
+        uptimeMillis += Math.max(0, now - lastTick);
+        lastTick = now;
+
+        if (uptimeMillis >= 1000) {
+            int seconds = (int) (uptimeMillis / 1000);
+            uptimeMillis -= seconds * 1000L;
+
+            int totalUptime = ApplicationSettings.TOTAL_UPTIME.getValue() + seconds;
+            ApplicationSettings.TOTAL_UPTIME.setValue(totalUptime);
+            ApplicationSettings.AVERAGE_UPTIME.setValue(totalUptime / ApplicationSettings.SESSIONS.getValue());
+        }
+    }
+
+    private static boolean isAppShowing() {
+        Frame frame = GUIMediator.getAppFrame();
+        return frame.isShowing() && (frame.getExtendedState() & Frame.ICONIFIED) == 0;
+    }
+
+    private static final class Entry {
+
+        public final RefreshListener listener;
+        public long nextRefresh;
+
+        public Entry(RefreshListener listener) {
+            this.listener = listener;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.limegroup.gnutella.gui;
+
+/**
+ * A <tt>RefreshListener</tt> that tells how often it should be refreshed, and
+ * if there's anything to refresh at all.
+ * <p>
+ * Plain <tt>RefreshListener</tt>s are refreshed every second while the main
+ * window is showing. These are refreshed whenever they say so, even with the
+ * window hidden or minimized.
+ */
+public interface ScheduledRefreshListener extends RefreshListener {
+
+    /**
+     * The time between refreshes, in milliseconds.
+     */
+    long getRefreshInterval();
+
+    /**
+     * Called when the refresh is due, in the Swing thread.
+     * 
+     * @return false to skip this refresh, when nothing changed or nothing is showing
+     */
+    boolean needsRefresh();
+}
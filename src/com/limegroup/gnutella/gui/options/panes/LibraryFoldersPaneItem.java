@@ -21,6 +21,7 @@ import org.limewire.util.FileUtils;
 import com.frostwire.gui.Librarian;
 import com.frostwire.gui.library.AddLibraryDirectoryAction;
 import com.frostwire.gui.library.LibraryMediator;
+import com.frostwire.gui.library.LibraryWatcher;
 import com.frostwire.gui.library.RecursiveLibraryDirectoryPanel;
 import com.frostwire.gui.library.RemoveLibraryDirectoryAction;
 import com.limegroup.gnutella.gui.I18n;
@@ -181,6 +182,7 @@ public final class LibraryFoldersPaneItem extends AbstractPaneItem {
 	    
 	    if (isDirty()) {
 	        updateSharedTable();
+	        LibraryWatcher.instance().updateRoots();
 	    }
 	    
 	    LibraryMediator.instance().clearDirectoryHolderCaches();
@@ -16,11 +16,13 @@
 package com.limegroup.gnutella.gui.search;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import com.limegroup.gnutella.gui.tables.AbstractTableMediator;
 import com.limegroup.gnutella.gui.tables.BasicDataLineModel;
 import com.limegroup.gnutella.gui.tables.LimeTableColumn;
+import com.limegroup.gnutella.gui.tables.RankedList;
 import com.limegroup.gnutella.settings.SearchSettings;
 
 /** 
@@ -43,17 +45,30 @@ class ResultPanelModel extends BasicDataLineModel<SearchResultDataLine, UISearch
     protected final SearchTableColumns COLUMNS = new SearchTableColumns();
 
     /**
-     * HashMap for quick access to indexes based on SHA1 info.
+     * The lines, indexed by position, so inserting a row or finding the row
+     * of a line don't depend on the number of results.
      */
-    private final Map<String, Integer> _indexes = new HashMap<String, Integer>();
+    private final RankedList<SearchResultDataLine> _rankedList = new RankedList<SearchResultDataLine>();
+
+    /**
+     * HashMap for quick access to lines based on SHA1 info, the row is
+     * looked up in the ranked list.
+     */
+    private final Map<String, SearchResultDataLine> _lines = new HashMap<String, SearchResultDataLine>();
 
     private int _numResults;
 
+    /**
+     * True while adding a batch, rows are inserted without table events.
+     */
+    private boolean _batching;
+
     /**
      * Constructs a new ResultPanelModel with the given MetadataModel.
      */
     ResultPanelModel() {
         super(SearchResultDataLine.class);
+        _list = _rankedList;
     }
 
     /**
@@ -99,17 +114,16 @@ class ResultPanelModel extends BasicDataLineModel<SearchResultDataLine, UISearch
     }
 
     /** 
-     * Overrides the default remove to remove the index from the hashmap.
+     * Overrides the default remove to remove the line from the hashmap.
      *
      * @param row  the index of the row to remove.
      */
     public void remove(int row) {
         String sha1 = getHash(row);
         if (sha1 != null)
-            _indexes.remove(sha1);
+            _lines.remove(sha1);
         super.remove(row);
         _numResults -= 1;
-        remapIndexes(row);
     }
 
     /**
@@ -135,16 +149,60 @@ class ResultPanelModel extends BasicDataLineModel<SearchResultDataLine, UISearch
     }
 
     /**
-     * Maintains the indexes HashMap & MetadataModel.
+     * Maintains the lines HashMap & MetadataModel.
      */
     public int add(SearchResultDataLine tl, int row) {
         _numResults += 1;
         String sha1 = tl.getHash();
         if (sha1 != null)
-            _indexes.put(sha1, new Integer(row));
-        int addedAt = super.add(tl, row);
-        remapIndexes(addedAt + 1);
-        return addedAt;
+            _lines.put(sha1, tl);
+        if (_batching) {
+            _list.add(row, tl);
+            return row;
+        }
+        return super.add(tl, row);
+    }
+
+    /**
+     * Adds all the results, sorted or at the end, firing a single event: rows
+     * inserted if all of them ended up at the end, otherwise table data changed.
+     *
+     * @return true if the rows were only appended
+     */
+    boolean addAll(List<UISearchResult> results, boolean sorted) {
+        int before = getRowCount();
+        boolean appended = true;
+
+        _batching = true;
+        try {
+            for (UISearchResult o : results) {
+                SearchResultDataLine dl = getNewDataLine(o);
+                if (dl == null)
+                    continue;
+                int addedAt = add(dl, sorted ? getSortedPosition(dl) : getRowCount());
+                if (addedAt != -1 && addedAt != getRowCount() - 1)
+                    appended = false;
+            }
+        } finally {
+            _batching = false;
+        }
+
+        int after = getRowCount();
+        if (after > before) {
+            if (appended)
+                fireTableRowsInserted(before, after - 1);
+            else
+                fireTableDataChanged();
+        }
+
+        return appended;
+    }
+
+    /**
+     * Descends the ranked list instead of a binary search over it.
+     */
+    public int getSortedPosition(SearchResultDataLine dl) {
+        return _rankedList.insertionPoint(dl, this);
     }
 
     /**
@@ -158,16 +216,6 @@ class ResultPanelModel extends BasicDataLineModel<SearchResultDataLine, UISearch
             return super.getRow(tl);
     }
 
-    /** 
-     * Overrides the default sort to maintain the indexes HashMap,
-     * according to the current sort column and order.
-     */
-    protected void doResort() {
-        super.doResort();
-        _indexes.clear(); // it's easier & quicker to just clear & re-input
-        remapIndexes(0);
-    }
-
     /**
      * Does nothing -- lines need no cleanup.
      */
@@ -180,31 +228,10 @@ class ResultPanelModel extends BasicDataLineModel<SearchResultDataLine, UISearch
      */
     protected void simpleClear() {
         _numResults = 0;
-        _indexes.clear();
+        _lines.clear();
         super.clear();
     }
 
-    /**
-     * Remaps the indexes, starting at 'start' and going to the end of
-     * the list.  This is needed for when rows are added to the middle of
-     * the list to maintain the correct rows per objects.
-     */
-    private void remapIndexes(int start) {
-        remapIndexes(start, getRowCount());
-    }
-
-    /**
-     * Remaps the indexes, starting at 'start' and going to 'end'.
-     * This is useful for when we move a row from end to start or vice versa.
-     */
-    private void remapIndexes(int start, int end) {
-        for (int i = start; i < end; i++) {
-            String sha1 = getHash(i);
-            if (sha1 != null)
-                _indexes.put(sha1, new Integer(i));
-        }
-    }
-
     /**
      * Gets the SHA1 URN for a row.
      */
@@ -249,11 +276,11 @@ class ResultPanelModel extends BasicDataLineModel<SearchResultDataLine, UISearch
      * Fast match -- lookup in the table.
      */
     private int fastMatch(String sha1) {
-        Integer idx = _indexes.get(sha1);
-        if (idx == null)
+        SearchResultDataLine line = _lines.get(sha1);
+        if (line == null)
             return -1;
         else
-            return idx.intValue();
+            return _rankedList.indexOf(line);
     }
 
     public int getTotalResults() {
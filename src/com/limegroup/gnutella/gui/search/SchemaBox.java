@@ -301,7 +301,7 @@ final class SchemaBox extends JPanel {
         private static final Color[] BACKGROUND = new Color[] { LIGHT, DARK };
 
         @Override
-        protected void doPaint(Graphics2D g, JComponent c, int width, int height, Object[] extendedCacheKeys) {
+        protected void paintSkin(Graphics2D g, JComponent c, int width, int height, Object[] extendedCacheKeys) {
             int w = width - 2;
             int h = height - 1;
             if (testValid(0, 0, w, h)) {
@@ -329,7 +329,7 @@ final class SchemaBox extends JPanel {
         @Override
         protected void paint(SynthContext context, Graphics g) {
             if (button.isSelected()) {
-                backgroundPainter.doPaint((Graphics2D) g, button, button.getWidth(), button.getHeight(), null);
+                backgroundPainter.paint((Graphics2D) g, button, button.getWidth(), button.getHeight());
             }
             super.paint(context, g);
         }
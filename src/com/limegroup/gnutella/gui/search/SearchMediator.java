@@ -16,16 +16,14 @@
 package com.limegroup.gnutella.gui.search;
 
 import java.io.File;
-import java.text.Normalizer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Locale;
 import java.util.Set;
+import java.util.regex.Pattern;
 
 import javax.swing.JComponent;
 import javax.swing.SwingUtilities;
@@ -38,13 +36,13 @@ import org.limewire.util.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.frostwire.gui.filters.SearchFilter;
 import com.frostwire.gui.filters.SearchFilterFactory;
 import com.frostwire.gui.filters.SearchFilterFactoryImpl;
 import com.frostwire.search.archiveorg.ArchiveorgCrawledSearchResult;
 import com.frostwire.search.soundcloud.SoundcloudSearchResult;
 import com.frostwire.search.torrent.TorrentSearchResult;
 import com.frostwire.search.youtube.YouTubeCrawledSearchResult;
+import com.frostwire.text.QueryMatcher;
 import com.limegroup.gnutella.MediaType;
 import com.limegroup.gnutella.gui.ApplicationHeader;
 import com.limegroup.gnutella.gui.GUIMediator;
@@ -102,8 +100,14 @@ public final class SearchMediator {
 
     private static final int SEARCH_MANAGER_NUM_THREADS = 6;
 
+    private static final Pattern HTML_TAG_PATTERN = Pattern.compile("\\<.*?>");
+    private static final Pattern HTML_ENTITY_PATTERN = Pattern.compile("\\&.*?\\;");
+    private static final Pattern SEPARATORS_PATTERN = Pattern.compile("\\.torrent|www\\.|\\.com|\\.net|[\\\\\\/%_;\\-\\.\\(\\)\\[\\]\\n\\rÐ&~{}\\*@\\^'=!,¡|#ÀÁ]");
+
     private final SearchManager manager;
 
+    private final SearchResultIngestor ingestor = new SearchResultIngestor();
+
     /**
      * This instance handles the display of all search results.
      * TODO: Changed to package-protected for testing to add special results
@@ -257,19 +261,19 @@ public final class SearchMediator {
         }
     }
 
-    private List<SearchResult> filter(SearchPerformer performer, List<SearchResult> results, List<String> searchTokens) {
+    private List<SearchResult> filter(SearchPerformer performer, List<SearchResult> results, List<String> searchTokens, QueryMatcher matcher) {
         List<SearchResult> list;
 
-        if (searchTokens == null || searchTokens.isEmpty()) {
+        if (searchTokens == null || searchTokens.isEmpty() || matcher == null) {
             list = Collections.emptyList();
         } else {
-            list = filter(results, searchTokens);
+            list = filter(results, matcher);
         }
 
         return list;
     }
 
-    private List<SearchResult> filter(List<? extends SearchResult> results, List<String> searchTokens) {
+    private List<SearchResult> filter(List<? extends SearchResult> results, QueryMatcher matcher) {
         List<SearchResult> list = new LinkedList<SearchResult>();
 
         try {
@@ -278,7 +282,7 @@ public final class SearchMediator {
                     // special case for youtube
                     if (sr instanceof YouTubeCrawledSearchResult) {
                         list.add(sr);
-                    } else if (filter(new LinkedList<String>(searchTokens), sr)) {
+                    } else if (filter(matcher, sr)) {
                         list.add(sr);
                     }
                 } else {
@@ -293,7 +297,7 @@ public final class SearchMediator {
         return list;
     }
 
-    private boolean filter(List<String> tokens, SearchResult sr) {
+    private boolean filter(QueryMatcher matcher, SearchResult sr) {
         StringBuilder sb = new StringBuilder();
 
         sb.append(sr.getDisplayName());
@@ -305,29 +309,19 @@ public final class SearchMediator {
             sb.append(((FileSearchResult) sr).getFilename());
         }
 
-        String str = sanitize(sb.toString());
-        str = normalize(str);
-
-        Iterator<String> it = tokens.iterator();
-        while (it.hasNext()) {
-            String token = it.next();
-            if (str.contains(token)) {
-                it.remove();
-            }
-        }
-
-        return tokens.isEmpty();
+        // sanitized and normalized by the matcher as it reads it
+        return matcher.matches(sb);
     }
 
     private static String stripHtml(String str) {
-        str = str.replaceAll("\\<.*?>", "");
-        str = str.replaceAll("\\&.*?\\;", "");
+        str = HTML_TAG_PATTERN.matcher(str).replaceAll("");
+        str = HTML_ENTITY_PATTERN.matcher(str).replaceAll("");
         return str;
     }
 
     private String sanitize(String str) {
         str = stripHtml(str);
-        str = str.replaceAll("\\.torrent|www\\.|\\.com|\\.net|[\\\\\\/%_;\\-\\.\\(\\)\\[\\]\\n\\rÐ&~{}\\*@\\^'=!,¡|#ÀÁ]", " ");
+        str = SEPARATORS_PATTERN.matcher(str).replaceAll(" ");
         str = StringUtils.removeDoubleSpaces(str);
 
         return str.trim();
@@ -336,7 +330,7 @@ public final class SearchMediator {
     private List<String> tokenize(String keywords) {
         keywords = sanitize(keywords);
 
-        Set<String> tokens = new HashSet<String>(Arrays.asList(keywords.toLowerCase(Locale.US).split(" ")));
+        Set<String> tokens = new HashSet<String>(Arrays.asList(keywords.split(" ")));
 
         return new ArrayList<String>(normalizeTokens(tokens));
     }
@@ -345,21 +339,13 @@ public final class SearchMediator {
         Set<String> normalizedTokens = new HashSet<String>();
 
         for (String token : tokens) {
-            String norm = normalize(token);
-            normalizedTokens.add(norm);
+            // folded like the text the matcher reads, a char at a time
+            normalizedTokens.add(QueryMatcher.normalize(token));
         }
 
         return normalizedTokens;
     }
 
-    private String normalize(String token) {
-        String norm = Normalizer.normalize(token, Normalizer.Form.NFKD);
-        norm = norm.replaceAll("\\p{InCombiningDiacriticalMarks}+", "");
-        norm = norm.toLowerCase(Locale.US);
-
-        return norm;
-    }
-
     private static void updateSearchIcon(final long token, final boolean active) {
         GUIMediator.safeInvokeAndWait(new Runnable() {
             public void run() {
@@ -486,6 +472,7 @@ public final class SearchMediator {
 
     void stopSearch(long token) {
         manager.stop(token);
+        ingestor.stop(token);
     }
 
     public void shutdown() {
@@ -529,6 +516,7 @@ public final class SearchMediator {
     }
 
     private void onFinished(long token) {
+        ingestor.finish(token);
         SearchResultMediator rp = getResultPanelForGUID(token);
         updateSearchIcon(token, false);
         rp.setToken(0); // to identify that the search is stopped (needs refactor)
@@ -546,7 +534,7 @@ public final class SearchMediator {
 
                 if (rp != null && !rp.isStopped()) {
                     @SuppressWarnings("unchecked")
-                    List<SearchResult> filtered = filter(performer, (List<SearchResult>) results, rp.getSearchTokens());
+                    List<SearchResult> filtered = filter(performer, (List<SearchResult>) results, rp.getSearchTokens(), rp.getSearchMatcher());
 
                     if (filtered != null && !filtered.isEmpty()) {
 
@@ -555,23 +543,9 @@ public final class SearchMediator {
                             return;
                         }
 
-                        final List<UISearchResult> uiResults = convertResults(filtered, se, rp.getQuery());
-
-                        GUIMediator.safeInvokeAndWait(new Runnable() {
-                            public void run() {
-                                try {
-                                    SearchFilter filter = getSearchFilterFactory().createFilter();
-                                    for (UISearchResult sr : uiResults) {
-                                        if (filter.allow(sr)) {
-                                            getSearchResultDisplayer().addQueryResult(token, sr, rp);
-                                        }
-                                    }
-                                } catch (Exception e) {
-                                    e.printStackTrace();
-                                }
-                            }
-
-                        });
+                        List<UISearchResult> uiResults = convertResults(filtered, se, rp.getQuery());
+
+                        ingestor.offer(token, rp, uiResults, getSearchFilterFactory().createFilter());
                     }
                 }
             }
@@ -365,6 +365,30 @@ public final class SearchResultDisplayer implements RefreshListener {
         tabbedPane.setTitleAt(resultPanelIndex, titleOf(rp));
     }
 
+    /**
+     * Same as {@link #addQueryResult(long, UISearchResult, SearchResultMediator)} for
+     * a batch of results, which are added to the table with a single table event.
+     * 
+     * @requires this is called from Swing thread
+     */
+    void addQueryResults(long token, List<UISearchResult> lines, SearchResultMediator rp) {
+        if (rp.isStopped()) {
+            return;
+        }
+
+        if (!rp.matches(token))
+            throw new IllegalArgumentException("guids don't match");
+
+        rp.addAll(lines);
+
+        int resultPanelIndex = entries.indexOf(rp);
+
+        if (resultPanelIndex == -1)
+            return;
+
+        tabbedPane.setTitleAt(resultPanelIndex, titleOf(rp));
+    }
+
     void updateSearchIcon(SearchResultMediator rp, boolean active) {
         int resultPanelIndex = -1;
         // Search for the ResultPanel to verify it exists.
@@ -0,0 +1,217 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.limegroup.gnutella.gui.search;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.limewire.concurrent.ExecutorsHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.frostwire.gui.filters.SearchFilter;
+import com.limegroup.gnutella.gui.GUIMediator;
+
+/**
+ * Staging area between the search performers and the result tables.
+ * <p>
+ * Results are filtered and de-duplicated in the performer threads, which never
+ * wait for the Swing thread, and accumulated per search. The Swing thread takes
+ * everything staged at most once every {@link #FLUSH_INTERVAL_MS} and adds it to
+ * each table as a single batch.
+ */
+final class SearchResultIngestor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SearchResultIngestor.class);
+
+    private static final long FLUSH_INTERVAL_MS = 125;
+
+    /**
+     * Finished and stopped searches remembered, results still in flight for them are
+     * dropped. Older ones have no performers left.
+     */
+    private static final int MAX_RETIRED = 256;
+
+    private final ScheduledExecutorService flushExec;
+
+    /**
+     * All guarded by this.
+     */
+    private final Map<Long, Staged> staged;
+    private final Map<Long, Set<String>> seen;
+    private final Set<Long> retired;
+    private boolean flushScheduled;
+    private long lastFlush;
+
+    public SearchResultIngestor() {
+        this.flushExec = Executors.newSingleThreadScheduledExecutor(ExecutorsHelper.daemonThreadFactory("SearchResultIngestor"));
+        this.staged = new LinkedHashMap<Long, Staged>();
+        this.seen = new HashMap<Long, Set<String>>();
+        this.retired = Collections.newSetFromMap(new LinkedHashMap<Long, Boolean>() {
+
+            private static final long serialVersionUID = 4521364129830735518L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest) {
+                return size() > MAX_RETIRED;
+            }
+        });
+    }
+
+    /**
+     * Called from the performer threads.
+     */
+    public void offer(long token, SearchResultMediator rp, List<UISearchResult> results, SearchFilter filter) {
+        List<UISearchResult> allowed = new ArrayList<UISearchResult>(results.size());
+        for (UISearchResult sr : results) {
+            if (filter.allow(sr)) {
+                allowed.add(sr);
+            }
+        }
+
+        if (allowed.isEmpty()) {
+            return;
+        }
+
+        synchronized (this) {
+            // stopped, finished or repeated with another token while filtering
+            if (retired.contains(token) || rp.getToken() != token) {
+                return;
+            }
+
+            Set<String> keys = seen.get(token);
+            if (keys == null) {
+                keys = new HashSet<String>();
+                seen.put(token, keys);
+            }
+
+            Staged s = staged.get(token);
+            if (s == null) {
+                s = new Staged(rp);
+                staged.put(token, s);
+            }
+
+            for (UISearchResult sr : allowed) {
+                if (keys.add(keyOf(sr))) {
+                    s.results.add(sr);
+                }
+            }
+
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * Adds everything staged so far to the tables, waiting for it, and stops
+     * tracking duplicates for the search. Called when a search finishes.
+     */
+    public void finish(long token) {
+        GUIMediator.safeInvokeAndWait(new Runnable() {
+            public void run() {
+                flush();
+            }
+        });
+
+        synchronized (this) {
+            retired.add(token);
+            seen.remove(token);
+        }
+    }
+
+    /**
+     * Drops what's staged and stops tracking duplicates for the search. Called when
+     * a search is stopped before it finishes, or its tab is closed.
+     */
+    public synchronized void stop(long token) {
+        retired.add(token);
+        staged.remove(token);
+        seen.remove(token);
+    }
+
+    /**
+     * Must be called holding the lock.
+     */
+    private void scheduleFlush() {
+        if (flushScheduled) {
+            return;
+        }
+        flushScheduled = true;
+
+        long delay = Math.max(0, lastFlush + FLUSH_INTERVAL_MS - System.currentTimeMillis());
+
+        flushExec.schedule(new Runnable() {
+            public void run() {
+                GUIMediator.safeInvokeLater(new Runnable() {
+                    public void run() {
+                        flush();
+                    }
+                });
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Runs in the Swing thread.
+     */
+    private void flush() {
+        List<Map.Entry<Long, Staged>> batches;
+
+        synchronized (this) {
+            flushScheduled = false;
+            lastFlush = System.currentTimeMillis();
+
+            if (staged.isEmpty()) {
+                return;
+            }
+
+            batches = new ArrayList<Map.Entry<Long, Staged>>(staged.entrySet());
+            staged.clear();
+        }
+
+        for (Map.Entry<Long, Staged> batch : batches) {
+            try {
+                Staged s = batch.getValue();
+                SearchMediator.getSearchResultDisplayer().addQueryResults(batch.getKey(), s.results, s.rp);
+            } catch (Throwable e) {
+                LOG.error("Error adding search results to table", e);
+            }
+        }
+    }
+
+    private static String keyOf(UISearchResult sr) {
+        return sr.getSource() + ":" + sr.getDetailsUrl() + ":" + sr.getFilename();
+    }
+
+    private static final class Staged {
+
+        public final SearchResultMediator rp;
+        public final List<UISearchResult> results;
+
+        public Staged(SearchResultMediator rp) {
+            this.rp = rp;
+            this.results = new ArrayList<UISearchResult>();
+        }
+    }
+}
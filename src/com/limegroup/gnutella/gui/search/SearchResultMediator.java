@@ -58,6 +58,7 @@ import com.frostwire.gui.theme.SkinMenuItem;
 import com.frostwire.gui.theme.SkinPopupMenu;
 import com.frostwire.gui.theme.ThemeMediator;
 import com.frostwire.search.torrent.TorrentSearchResult;
+import com.frostwire.text.QueryMatcher;
 import com.frostwire.uxstats.UXAction;
 import com.frostwire.uxstats.UXStats;
 import com.limegroup.gnutella.MediaType;
@@ -105,6 +106,11 @@ public final class SearchResultMediator extends AbstractTableMediator<TableRowFi
 
     private final List<String> searchTokens;
 
+    /**
+     * Built once for the search, used to filter the results of every engine.
+     */
+    private final QueryMatcher searchMatcher;
+
     /**
      * The CompositeFilter for this ResultPanel.
      */
@@ -151,6 +157,7 @@ public final class SearchResultMediator extends AbstractTableMediator<TableRowFi
         FILTER = null;
         this.token = 0;
         this.searchTokens = null;
+        this.searchMatcher = null;
         setButtonEnabled(SearchButtons.TORRENT_DETAILS_BUTTON_INDEX, false);
         // disable dnd for overlay panel
         TABLE.setDragEnabled(false);
@@ -170,6 +177,7 @@ public final class SearchResultMediator extends AbstractTableMediator<TableRowFi
         SEARCH_INFO = info;
         this.token = token;
         this.searchTokens = searchTokens;
+        this.searchMatcher = searchTokens != null ? new QueryMatcher(searchTokens, true) : null;
         setupRealTable();
         resetFilters();
     }
@@ -868,6 +876,10 @@ public final class SearchResultMediator extends AbstractTableMediator<TableRowFi
         return searchTokens;
     }
 
+    QueryMatcher getSearchMatcher() {
+        return searchMatcher;
+    }
+
     public void updateFiltersPanel() {
         schemaBox.applyFilters();
         searchOptionsPanel.updateFiltersPanel();
@@ -879,6 +891,34 @@ public final class SearchResultMediator extends AbstractTableMediator<TableRowFi
         searchOptionsPanel.updateFiltersPanel();
     }
 
+    /**
+     * Adds a batch of results with a single table event, sorted if the table
+     * is sorted, keeping the selected lines selected.
+     */
+    void addAll(List<UISearchResult> results) {
+        if (TABLE.isEditing()) {
+            TABLE.getCellEditor().cancelCellEditing();
+        }
+
+        SearchResultDataLine[] selected = getAllSelectedLines();
+
+        boolean sorted = SETTINGS.REAL_TIME_SORT.getValue() && DATA_MODEL.isSorted();
+
+        if (!DATA_MODEL.addAll(results, sorted)) {
+            // the table data changed as a whole, which clears the selection
+            for (SearchResultDataLine line : selected) {
+                int row = DATA_MODEL.getRow(line);
+                if (row != -1) {
+                    TABLE.addRowSelectionInterval(row, row);
+                }
+            }
+        }
+
+        for (UISearchResult o : results) {
+            schemaBox.updateCounters(o);
+        }
+    }
+
     @Override
     public void add(UISearchResult o, int index) {
         super.add(o, index);
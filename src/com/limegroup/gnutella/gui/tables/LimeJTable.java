@@ -38,6 +38,7 @@ import javax.swing.SwingUtilities;
 import javax.swing.UIDefaults;
 import javax.swing.UIManager;
 import javax.swing.border.Border;
+import javax.swing.event.TableModelEvent;
 import javax.swing.plaf.FontUIResource;
 import javax.swing.table.TableCellRenderer;
 import javax.swing.table.TableColumn;
@@ -201,6 +202,22 @@ public class LimeJTable extends JTable implements JSortTable {
             return false;
     }
 
+    /**
+     * Updates of all the rows, fired by the periodic refresh of some models, only
+     * repaint the rows in view, and nothing at all if the table isn't showing.
+     */
+    @Override
+    public void tableChanged(TableModelEvent e) {
+        if (e != null && e.getType() == TableModelEvent.UPDATE && e.getColumn() == TableModelEvent.ALL_COLUMNS && e.getFirstRow() == 0 && e.getLastRow() != Integer.MAX_VALUE && e.getLastRow() >= getRowCount() - 1 && getRowSorter() == null) {
+            if (isShowing()) {
+                repaint(getVisibleRect());
+            }
+            return;
+        }
+
+        super.tableChanged(e);
+    }
+
     /**
      * Access the ColumnPreferenceHandler.
      */
@@ -0,0 +1,275 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.limegroup.gnutella.gui.tables;
+
+import java.util.AbstractList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.RandomAccess;
+
+/**
+ * A list backed by a treap ordered by position, where every node knows the
+ * size of its subtree. Inserting or removing at any row, getting a row and
+ * finding the row of an element are all O(log n), instead of the O(n) shifting
+ * of an ArrayList, which matters for tables that get thousands of rows inserted
+ * in sorted order.
+ * <p>
+ * Elements are located by identity, so the same instance can't be in the list
+ * twice. Not thread safe, like the rest of the table models.
+ */
+public class RankedList<E> extends AbstractList<E> implements RandomAccess {
+
+    private final Map<E, Node<E>> nodes = new IdentityHashMap<E, Node<E>>();
+    private final Random random = new Random();
+
+    private Node<E> root;
+
+    @Override
+    public int size() {
+        return size(root);
+    }
+
+    @Override
+    public E get(int index) {
+        return nodeAt(index).value;
+    }
+
+    @Override
+    public E set(int index, E element) {
+        Node<E> node = nodeAt(index);
+        E old = node.value;
+        // while sorting, the old value could already be at another node
+        if (nodes.get(old) == node) {
+            nodes.remove(old);
+        }
+        node.value = element;
+        nodes.put(element, node);
+        return old;
+    }
+
+    @Override
+    public void add(int index, E element) {
+        if (index < 0 || index > size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        if (nodes.containsKey(element)) {
+            throw new IllegalArgumentException("Element already in the list");
+        }
+
+        Node<E> node = new Node<E>(element, random.nextInt());
+        nodes.put(element, node);
+
+        root = insert(root, index, node);
+        root.parent = null;
+        modCount++;
+    }
+
+    @Override
+    public E remove(int index) {
+        Node<E> node = nodeAt(index);
+        nodes.remove(node.value);
+
+        root = remove(root, index);
+        if (root != null) {
+            root.parent = null;
+        }
+        modCount++;
+
+        return node.value;
+    }
+
+    @Override
+    public void clear() {
+        nodes.clear();
+        root = null;
+        modCount++;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return nodes.containsKey(o);
+    }
+
+    /**
+     * O(log n), by identity.
+     */
+    @Override
+    public int indexOf(Object o) {
+        Node<E> node = nodes.get(o);
+        if (node == null) {
+            return -1;
+        }
+
+        int rank = size(node.left);
+        while (node.parent != null) {
+            if (node.parent.right == node) {
+                rank += size(node.parent.left) + 1;
+            }
+            node = node.parent;
+        }
+        return rank;
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        return indexOf(o);
+    }
+
+    /**
+     * The row where <code>key</code> should be inserted to keep the list sorted
+     * according to <code>comparator</code>, after any equal elements.
+     * The list must already be sorted with the same comparator.
+     */
+    public int insertionPoint(E key, Comparator<? super E> comparator) {
+        int position = 0;
+        Node<E> node = root;
+        while (node != null) {
+            if (comparator.compare(key, node.value) < 0) {
+                node = node.left;
+            } else {
+                position += size(node.left) + 1;
+                node = node.right;
+            }
+        }
+        return position;
+    }
+
+    private Node<E> nodeAt(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+
+        Node<E> node = root;
+        while (true) {
+            int leftSize = size(node.left);
+            if (index < leftSize) {
+                node = node.left;
+            } else if (index > leftSize) {
+                index -= leftSize + 1;
+                node = node.right;
+            } else {
+                return node;
+            }
+        }
+    }
+
+    private Node<E> insert(Node<E> t, int index, Node<E> node) {
+        if (t == null) {
+            return node;
+        }
+
+        int leftSize = size(t.left);
+        if (index <= leftSize) {
+            t.left = insert(t.left, index, node);
+            update(t);
+            if (t.left.priority > t.priority) {
+                t = rotateRight(t);
+            }
+        } else {
+            t.right = insert(t.right, index - leftSize - 1, node);
+            update(t);
+            if (t.right.priority > t.priority) {
+                t = rotateLeft(t);
+            }
+        }
+        return t;
+    }
+
+    private Node<E> remove(Node<E> t, int index) {
+        int leftSize = size(t.left);
+        if (index < leftSize) {
+            t.left = remove(t.left, index);
+        } else if (index > leftSize) {
+            t.right = remove(t.right, index - leftSize - 1);
+        } else {
+            return merge(t.left, t.right);
+        }
+        update(t);
+        return t;
+    }
+
+    private Node<E> merge(Node<E> a, Node<E> b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        if (a.priority > b.priority) {
+            a.right = merge(a.right, b);
+            update(a);
+            return a;
+        } else {
+            b.left = merge(a, b.left);
+            update(b);
+            return b;
+        }
+    }
+
+    private Node<E> rotateRight(Node<E> t) {
+        Node<E> l = t.left;
+        t.left = l.right;
+        l.right = t;
+        update(t);
+        update(l);
+        return l;
+    }
+
+    private Node<E> rotateLeft(Node<E> t) {
+        Node<E> r = t.right;
+        t.right = r.left;
+        r.left = t;
+        update(t);
+        update(r);
+        return r;
+    }
+
+    /**
+     * Fixes the size of the node and the parent of its children.
+     */
+    private static <E> void update(Node<E> t) {
+        t.size = size(t.left) + size(t.right) + 1;
+        if (t.left != null) {
+            t.left.parent = t;
+        }
+        if (t.right != null) {
+            t.right.parent = t;
+        }
+    }
+
+    private static int size(Node<?> t) {
+        return t != null ? t.size : 0;
+    }
+
+    private static final class Node<E> {
+
+        E value;
+        final int priority;
+
+        int size;
+        Node<E> left;
+        Node<E> right;
+        Node<E> parent;
+
+        Node(E value, int priority) {
+            this.value = value;
+            this.priority = priority;
+            this.size = 1;
+        }
+    }
+}
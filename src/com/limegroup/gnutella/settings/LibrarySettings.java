@@ -23,6 +23,7 @@ import com.limegroup.gnutella.util.FrostWireUtils;
 import org.limewire.setting.BooleanSetting;
 import org.limewire.setting.FileSetSetting;
 import org.limewire.setting.FileSetting;
+import org.limewire.setting.IntSetting;
 import org.limewire.util.CommonUtils;
 
 import java.io.File;
@@ -59,6 +60,16 @@ public class LibrarySettings extends LimeProps {
 
     public static final BooleanSetting LIBRARY_WIFI_SHARING_ENABLED = FACTORY.createBooleanSetting("LIBRARY_WIFI_SHARING_ENABLED", true);
 
+    /**
+     * Number of threads extracting metadata from the files being shared.
+     */
+    public static final IntSetting LIBRARY_SCAN_WORKERS = FACTORY.createIntSetting("LIBRARY_SCAN_WORKERS", Math.max(2, Runtime.getRuntime().availableProcessors() / 2));
+
+    /**
+     * Number of files downloaded at the same time from a Wi-Fi device.
+     */
+    public static final IntSetting LIBRARY_DEVICE_DOWNLOAD_CONNECTIONS = FACTORY.createIntSetting("LIBRARY_DEVICE_DOWNLOAD_CONNECTIONS", 3);
+
 
     public static void setupInitialLibraryFolders() {
         SharingSettings.initTorrentDataDirSetting();